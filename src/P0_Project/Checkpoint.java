@@ -0,0 +1,93 @@
+package P0_Project;
+
+import PX_Data.JSONIOWrapper;
+import PY_Helper.LogPrint;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Class recording the modules completed during a run, so an interrupted run can be resumed from where it stopped.
+ * <br>
+ * The list of completed modules is saved in the checkpoints directory, next to the checkpoints saved by the modules
+ * themselves (topic model states and inferred documents). A module's own checkpoints are deleted once it is recorded
+ * as completed, and when starting a new run (not resuming), previous checkpoints are deleted.
+ *
+ * @author P. Le Bras
+ * @version 2
+ */
+public class Checkpoint {
+
+    /** Name of the file listing the completed modules, saved in the checkpoints directory. */
+    private final static String STAGES_FILENAME = "stages.json";
+
+    /** Filename of the file listing the completed modules. */
+    private final String stagesFile;
+    /** List of completed modules. */
+    private final JSONArray completed;
+
+    /**
+     * Constructor, loads the list of completed modules if resuming, deletes the previous checkpoints otherwise.
+     * @param checkpointDir Checkpoints directory.
+     * @param resume Flag for resuming from the last checkpoints.
+     */
+    public Checkpoint(String checkpointDir, boolean resume){
+        stagesFile = checkpointDir + STAGES_FILENAME;
+        File dir = new File(checkpointDir);
+        if(resume && new File(stagesFile).exists()){
+            completed = (JSONArray) JSONIOWrapper.LoadJSON(stagesFile, 0).getOrDefault("completed", new JSONArray());
+        } else {
+            completed = new JSONArray();
+            File[] previous = dir.listFiles();
+            if(previous != null){
+                for(File f: previous){
+                    if(f.isFile() && !f.delete()){
+                        LogPrint.printNoteError("Could not delete previous checkpoint "+f.getPath());
+                    }
+                }
+            }
+        }
+        dir.mkdirs();
+    }
+
+    /**
+     * Method checking if a module was completed before the run was interrupted.
+     * @param name Module name.
+     * @return True if the module was completed, false otherwise.
+     */
+    public synchronized boolean isCompleted(String name){
+        return completed.contains(name);
+    }
+
+    /**
+     * Method recording a module as completed, saving the list of completed modules, then deleting the module's own
+     * checkpoints, which are no longer needed to resume it.
+     * @param name Module name.
+     * @param checkpointFiles Module's checkpoint files, see {@link StageSpecs#getCheckpointFiles()}.
+     */
+    public synchronized void markCompleted(String name, List<String> checkpointFiles){
+        if(!completed.contains(name)) completed.add(name);
+        JSONObject root = new JSONObject();
+        root.put("completed", completed);
+        // written directly, so it is on disk whatever happens to the rest of the run
+        try {
+            JSONIOWrapper.SaveJSONAtomic(root, stagesFile);
+        } catch (IOException e){
+            LogPrint.printNoteError("Error while saving "+stagesFile);
+            e.printStackTrace();
+            // the module's checkpoints are kept, as it would be run again on resume
+            return;
+        }
+        for(String checkpointFile: checkpointFiles){
+            File file = new File(checkpointFile);
+            File[] files = file.getAbsoluteFile().getParentFile().listFiles();
+            if(files == null) continue;
+            for(File f: files){
+                if(f.getName().equals(file.getName()) || f.getName().startsWith(file.getName()+".")) f.delete();
+            }
+        }
+    }
+}
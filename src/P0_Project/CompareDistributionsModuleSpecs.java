@@ -5,6 +5,9 @@ import PY_Helper.LogPrint;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Class reading and validating parameters for the Compare Distribution module
  * ({@link P4_Analysis.TopicDistribution.CompareDistributions}).
@@ -12,7 +15,7 @@ import org.json.simple.JSONObject;
  * @author P. Le Bras
  * @version 1
  */
-public class CompareDistributionsModuleSpecs {
+public class CompareDistributionsModuleSpecs implements StageSpecs {
 
     /** Filename for main topics, containing the distribution to compare
      * (from {@link P4_Analysis.TopicDistribution.TopicDistribution}). */
@@ -90,4 +93,33 @@ public class CompareDistributionsModuleSpecs {
             numWordId = 1;
         }
     }
+
+    /**
+     * Method listing the files read by the module.
+     * @return List of input file names.
+     */
+    @Override
+    public List<String> getInputFiles(){
+        List<String> files = new ArrayList<>();
+        files.add(mainTopics);
+        files.add(previousMainTopics);
+        if(compareSubTopics){
+            files.add(subTopics);
+            files.add(previousSubTopics);
+        }
+        return files;
+    }
+
+    /**
+     * Method listing the files written by the module.
+     * @return List of output file names.
+     */
+    @Override
+    public List<String> getOutputFiles(){
+        List<String> files = new ArrayList<>();
+        if(outputMain) files.add(mainOutput);
+        if(outputSub) files.add(subOutput);
+        if(outputAll) files.add(output);
+        return files;
+    }
 }
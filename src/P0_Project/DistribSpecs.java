@@ -42,6 +42,8 @@ public class DistribSpecs {
     public String domainDataId;
     /** In the domain data file, which field to read and save as data, optional. */
     public HashMap<String, String> domainDataFields;
+    /** Number of threads parsing the domain data file (set from meta-parameters resources). */
+    public int threads;
 
     /**
      * Constructor: reads the specification from a JSON object passed from TopicDistribModuleSpecs.
@@ -62,6 +64,7 @@ public class DistribSpecs {
             domainDataFile = metaSpecs.getSourceDir() + domainDataFile;
             domainDataId = (String) specs.getOrDefault("domainDataId", "id");
             domainDataFields = JSONIOWrapper.getStringMap((JSONObject) specs.get("domainDataFields"));
+            threads = metaSpecs.getResources().getInputThreads();
 
         }
 
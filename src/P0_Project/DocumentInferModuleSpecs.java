@@ -5,13 +5,16 @@ import PY_Helper.LogPrint;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Class reading and validating parameters for the Infer Documents module ({@link P3_TopicModelling.InferDocuments}).
  *
  * @author P. Le Bras
- * @version 2
+ * @version 3
  */
-public class DocumentInferModuleSpecs {
+public class DocumentInferModuleSpecs implements StageSpecs {
 
     // INPUT
     /** Filename to lemma data to infer (from {@link P2_Lemmatise.Lemmatise}). */
@@ -62,6 +65,13 @@ public class DocumentInferModuleSpecs {
     /** Flag for merging sub topic data from model and inferred data, defaults to false if subTopicsOutput = "". */
     public boolean mergeSubTopics = false;
 
+    /** Filename where to save the inferred documents checkpoints, "" if not saved (set from meta-parameters). */
+    public String checkpointFile = "";
+    /** Number of inferred documents between checkpoints (set from meta-parameters). */
+    public int checkpointDocuments;
+    /** Flag for resuming the inference from the last checkpoint (set from meta-parameters). */
+    public boolean resume;
+
     /**
      * Constructor: parses and validates the given JSON object to set parameters.
      * @param specs JSON object attached to "inferDocuments" in project file.
@@ -122,10 +132,57 @@ public class DocumentInferModuleSpecs {
             subTopics = modelDir + specs.get("subTopics");
         }
 
+        if(metaSpecs.useCheckpoints()){
+            checkpointFile = metaSpecs.getCheckpointDir() + "inferredDocuments.jsonl";
+        }
+        checkpointDocuments = metaSpecs.getCheckpointDocuments();
+        resume = metaSpecs.doResume();
+
         // validations
         if(iterations < 1){
             LogPrint.printNote("Infer Document module: iterations must be greater than 0, parameter was set to "+iterations+", will be set to default: 100");
             iterations = 100;
         }
     }
+
+    /**
+     * Method listing the files read by the module.
+     * @return List of input file names.
+     */
+    @Override
+    public List<String> getInputFiles(){
+        List<String> files = new ArrayList<>();
+        files.add(lemmas);
+        files.add(mainModel);
+        if(inferFromSubModel) files.add(subModel);
+        if(mergeDocuments) files.add(documents);
+        if(mergeMainTopics) files.add(mainTopics);
+        if(mergeSubTopics && inferFromSubModel) files.add(subTopics);
+        return files;
+    }
+
+    /**
+     * Method listing the files written by the module.
+     * @return List of output file names.
+     */
+    @Override
+    public List<String> getOutputFiles(){
+        List<String> files = new ArrayList<>();
+        if(exportCSV) files.add(csvOutput);
+        if(mergeDocuments) files.add(documentsOutput);
+        if(mergeMainTopics) files.add(mainTopicsOutput);
+        if(mergeSubTopics && inferFromSubModel) files.add(subTopicsOutput);
+        return files;
+    }
+
+    /**
+     * Method listing the checkpoint files saved by the module: the documents inferred so far.
+     * @return List of checkpoint file names.
+     */
+    @Override
+    public List<String> getCheckpointFiles(){
+        List<String> files = new ArrayList<>();
+        if(checkpointFile.length() > 0) files.add(checkpointFile);
+        return files;
+    }
 }
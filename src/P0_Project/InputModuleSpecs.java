@@ -2,17 +2,20 @@ package P0_Project;
 
 import PX_Data.JSONIOWrapper;
 import PY_Helper.LogPrint;
+import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 
 import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Class reading and validating parameters for the Input modules ({@link P1_Input}).
  *
  * @author P. Le Bras
- * @version 1
+ * @version 2
  */
-public class InputModuleSpecs{
+public class InputModuleSpecs implements StageSpecs {
 
     /** Which module to run: CSV, PDF, HTML, GTR or TXT. */
     public String module;
@@ -21,6 +24,10 @@ public class InputModuleSpecs{
     /** Fields to keep as docData, only works if data from CSV, HTML or GTR.
      * Eg: ("t", "Title") will lookup "Title" in source and save it has "t" in the docData. */
     public HashMap<String, String> fields;
+    /** Filters on the source columns (equality, set membership, numeric or date range, see {@link P1_Input.RowFilter}),
+     * by column name, rows not passing all filters are left out as soon as they are read, only works if data from CSV
+     * or GTR, optional, defaults to null (all rows kept). */
+    public JSONObject filters = null;
     /** Fields to lookup in external source (eg server API), only works if data from GTR,
      * optional, defaults to empty list.
      * Eg: ("t", "Title") will lookup "Title" (as implemented in the input module) and save it has "t" in the docData. */
@@ -29,6 +36,9 @@ public class InputModuleSpecs{
      * optional, defaults to 'ProjectId'.
      * Will be automatically added to the docData. */
     public String GTR_PID = "ProjectId";
+    /** Base URL of the GtR API, only works if data from GtR,
+     * optional, defaults to 'https://gtr.ukri.org/gtr/api/' (e.g. a local server replaying recorded responses). */
+    public String GTR_API = "https://gtr.ukri.org/gtr/api/";
     /** Field name containing the HTML urls, only works if data from HTML,
      * optional, defaults to 'URL'.
      * Will be automatically added to the docData. */
@@ -36,6 +46,20 @@ public class InputModuleSpecs{
     /** Selector from which to parse HTML text, only works if data from HTML,
      * optional, defaults to 'body'. */
     public String HTML_selector = "body";
+    /** Maximum number of requests in flight per host, only works if data from HTML or GTR,
+     * optional, defaults to 4. */
+    public int CRAWL_hostConnections = 4;
+    /** Number of retries of a failed request, with exponential backoff, only works if data from HTML or GTR,
+     * optional, defaults to 3. */
+    public int CRAWL_retries = 3;
+    /** Flag for caching fetched pages in the data directory, cached pages are not fetched again on re-runs,
+     * only works if data from HTML or GTR, optional, defaults to true. */
+    public boolean CRAWL_cache = true;
+    /** Flag for checking cached pages with the server (by ETag) before re-using them, only works if data from HTML or GTR,
+     * optional, defaults to false. */
+    public boolean CRAWL_revalidate = false;
+    /** Directory of the cache of fetched pages, in the data directory. */
+    public String CRAWL_cacheDir;
     /** Filename for the JSON corpus file generated. */
     public String output;
     /** Number of words limit before splitting a document, only works for PDF or TXT input,
@@ -44,6 +68,49 @@ public class InputModuleSpecs{
     /** Flag for splitting TXT input with every empty line,
      * optional, defaults to false. */
     public boolean TXT_splitEmptyLines = false;
+    /** Flag for streaming CSV rows straight to the corpus file, with constant memory use, only works for CSV input,
+     * optional, defaults to false (documents are kept in memory, and handed over in memory if the meta-parameter
+     * inMemory is set). */
+    public boolean CSV_stream = false;
+    /** Maximum size, in MB, of the cache of text extracted from PDFs, only works for PDF input,
+     * optional, defaults to 1024 if the meta-parameter cache is set, 0 (no cache) otherwise. */
+    public long PDF_cacheSize = 0;
+    /** Directory of the cache of text extracted from PDFs, in the data directory. */
+    public String PDF_cacheDir;
+    /** Flag for updating the existing corpus rather than rebuilding it: only new or changed sources are read, removed
+     * sources are dropped, and document ids are kept (see {@link P1_Input.SourceManifest}),
+     * only works for PDF, TXT or CSV input (not in streaming mode), optional, defaults to false. */
+    public boolean incremental = false;
+    /** Handling of near-duplicate documents (see {@link P1_Input.NearDuplicates}): "none", "mark" (kept in the corpus
+     * but excluded from the model) or "drop" (not with incremental), only works for PDF, TXT or CSV input (not in
+     * streaming mode), optional, defaults to "none". */
+    public String dedup = "none";
+    /** Minimum estimated similarity (Jaccard similarity of word shingles) for a document to be a near-duplicate,
+     * between 0 and 1, optional, defaults to 0.9. */
+    public double dedup_threshold = 0.9;
+    /** Document data fields compared for near-duplicates,
+     * optional, defaults to 'text' for PDF or TXT input, all fields for CSV input. */
+    public String[] dedup_fields;
+    /** Number of words per shingle when comparing documents for near-duplicates,
+     * optional, defaults to 3. */
+    public int dedup_shingleSize = 3;
+    /** Size of a random sample of the source to keep in the corpus (see {@link P1_Input.CorpusSampler}): rows for CSV
+     * input, files for PDF or TXT input, optional, defaults to 0 (no sample, unless sample_fraction is set). */
+    public long sample_size = 0;
+    /** Fraction of the source to keep in the corpus as a random sample, between 0 and 1, only used if sample_size is
+     * not set, optional, defaults to 1 (no sample). */
+    public double sample_fraction = 1;
+    /** Field stratifying the sample, in proportion to the number of rows (or files) with each value: a corpus field
+     * for CSV input, 'dataset' for PDF or TXT input, optional, defaults to null (not stratified). */
+    public String sample_stratify = null;
+    /** Seed of the random sample, optional, defaults to 0. */
+    public long sample_seed = 0;
+    /** Number of threads parsing files (set from meta-parameters resources). */
+    public int threads;
+    /** Memory budget for parsing files, in MB, only works for PDF input (set from meta-parameters resources). */
+    public int memory;
+    /** Number of threads fetching remote data, only works if data from HTML or GTR (set from meta-parameters resources). */
+    public int crawlThreads;
 
     /**
      * Constructor: parses and validates the given JSON object to set parameters.
@@ -54,6 +121,9 @@ public class InputModuleSpecs{
         module = (String) specs.get("module");
         source = metaSpecs.getSourceDir() + specs.get("source");
         output = metaSpecs.getDataDir() + specs.get("output");
+        threads = metaSpecs.getResources().getInputThreads();
+        crawlThreads = metaSpecs.getResources().getCrawlThreads();
+        memory = metaSpecs.getResources().getInputMemory();
         if(module.equals("PDF") || module.equals("TXT")) {
             wordsPerDoc = Math.toIntExact((long) specs.getOrDefault("wordsPerDoc", (long) -1));
             if(wordsPerDoc < -1){
@@ -61,19 +131,140 @@ public class InputModuleSpecs{
                 wordsPerDoc = -1;
             }
         }
+        if(module.equals("PDF") || module.equals("TXT") || module.equals("CSV")) {
+            incremental = (boolean) specs.getOrDefault("incremental", false);
+            sample_size = (long) specs.getOrDefault("sample_size", (long) 0);
+            if(sample_size < 0){
+                LogPrint.printNote("Input module: sample_size must be positive, parameter was set to "+sample_size+", will be set to default: 0 (no sample)");
+                sample_size = 0;
+            }
+            sample_fraction = ((Number) specs.getOrDefault("sample_fraction", 1.0)).doubleValue();
+            if(sample_fraction <= 0 || sample_fraction > 1){
+                LogPrint.printNote("Input module: sample_fraction must be greater than 0 and at most 1, parameter was set to "+sample_fraction+", will be set to default: 1 (no sample)");
+                sample_fraction = 1;
+            }
+            if(sample_size > 0 && sample_fraction < 1){
+                LogPrint.printNote("Input module: sample_size and sample_fraction cannot be both set, sample_fraction will be set to default: 1");
+                sample_fraction = 1;
+            }
+            sample_stratify = (String) specs.getOrDefault("sample_stratify", null);
+            if(sample_stratify != null && !module.equals("CSV") && !sample_stratify.equals("dataset")){
+                LogPrint.printNote("Input module: sample_stratify must be 'dataset' for PDF or TXT input, parameter was set to "+sample_stratify+", will be set to default: null (not stratified)");
+                sample_stratify = null;
+            }
+            sample_seed = (long) specs.getOrDefault("sample_seed", (long) 0);
+            if(incremental && isSampled()){
+                LogPrint.printNote("Input module: incremental cannot be used with a sample, parameter will be set to: false");
+                incremental = false;
+            }
+            dedup = (String) specs.getOrDefault("dedup", "none");
+            if(!dedup.equals("none") && !dedup.equals("mark") && !dedup.equals("drop")){
+                LogPrint.printNote("Input module: dedup must be one of none, mark or drop, parameter was set to "+dedup+", will be set to default: none");
+                dedup = "none";
+            }
+            dedup_threshold = ((Number) specs.getOrDefault("dedup_threshold", 0.9)).doubleValue();
+            if(dedup_threshold <= 0 || dedup_threshold > 1){
+                LogPrint.printNote("Input module: dedup_threshold must be greater than 0 and at most 1, parameter was set to "+dedup_threshold+", will be set to default: 0.9");
+                dedup_threshold = 0.9;
+            }
+            dedup_shingleSize = Math.toIntExact((long) specs.getOrDefault("dedup_shingleSize", (long) 3));
+            if(dedup_shingleSize < 1){
+                LogPrint.printNote("Input module: dedup_shingleSize must be greater than 0, parameter was set to "+dedup_shingleSize+", will be set to default: 3");
+                dedup_shingleSize = 3;
+            }
+            JSONArray dedupFields = (JSONArray) specs.get("dedup_fields");
+            if(dedupFields != null) dedup_fields = JSONIOWrapper.getStringArray(dedupFields);
+            else if(module.equals("CSV")) dedup_fields = JSONIOWrapper.getStringMap((JSONObject) specs.get("fields")).keySet().toArray(new String[0]);
+            else dedup_fields = new String[]{"text"};
+            if(incremental && dedup.equals("drop")){
+                // dropped documents are not in the corpus, their sources would be read again on every update
+                LogPrint.printNote("Input module: dedup cannot be drop with incremental, parameter will be set to: mark");
+                dedup = "mark";
+            }
+        }
+        if(module.equals("PDF")) {
+            PDF_cacheSize = (long) specs.getOrDefault("pdf_cacheSize", metaSpecs.useCache() ? (long) 1024 : (long) 0);
+            if(PDF_cacheSize < 0){
+                LogPrint.printNote("Input module: pdf_cacheSize must be positive, parameter was set to "+PDF_cacheSize+", will be set to default: 0 (no cache)");
+                PDF_cacheSize = 0;
+            }
+            PDF_cacheDir = metaSpecs.getDataDir() + "pdfCache/";
+        }
         if(module.equals("CSV") || module.equals("HTML") || module.equals("GTR")) {
             fields = JSONIOWrapper.getStringMap((JSONObject) specs.get("fields"));
         }
+        if(module.equals("CSV") || module.equals("GTR")) {
+            JSONObject filterSpecs = (JSONObject) specs.get("filters");
+            if(filterSpecs != null && !filterSpecs.isEmpty()) filters = filterSpecs;
+        }
         if(module.equals("GTR")) {
             GTR_fields = JSONIOWrapper.getStringMap((JSONObject) specs.getOrDefault("GtR_fields", new JSONObject()));
             GTR_PID = (String) specs.getOrDefault("GtR_id", "ProjectId");
+            GTR_API = (String) specs.getOrDefault("GtR_api", "https://gtr.ukri.org/gtr/api/");
+            if(!GTR_API.endsWith("/")) GTR_API += "/";
         }
         if(module.equals("HTML")) {
             HTML_URL = (String) specs.getOrDefault("url", "URL");
             HTML_selector = (String) specs.getOrDefault("dom_selector", "body");
         }
+        if(module.equals("HTML") || module.equals("GTR")) {
+            CRAWL_hostConnections = Math.toIntExact((long) specs.getOrDefault("crawl_hostConnections", (long) 4));
+            if(CRAWL_hostConnections < 1){
+                LogPrint.printNote("Input module: crawl_hostConnections must be greater than 0, parameter was set to "+CRAWL_hostConnections+", will be set to default: 4");
+                CRAWL_hostConnections = 4;
+            }
+            CRAWL_retries = Math.toIntExact((long) specs.getOrDefault("crawl_retries", (long) 3));
+            if(CRAWL_retries < 0){
+                LogPrint.printNote("Input module: crawl_retries must be positive, parameter was set to "+CRAWL_retries+", will be set to default: 3");
+                CRAWL_retries = 3;
+            }
+            CRAWL_cache = (boolean) specs.getOrDefault("crawl_cache", true);
+            CRAWL_revalidate = (boolean) specs.getOrDefault("crawl_revalidate", false);
+            CRAWL_cacheDir = metaSpecs.getDataDir() + "crawlCache/";
+        }
+        if(module.equals("CSV")) {
+            CSV_stream = (boolean) specs.getOrDefault("csv_stream", false);
+            if(CSV_stream && incremental){
+                LogPrint.printNote("Input module: incremental cannot be used with csv_stream, parameter will be set to: false");
+                incremental = false;
+            }
+            if(CSV_stream && !dedup.equals("none")){
+                LogPrint.printNote("Input module: dedup cannot be used with csv_stream, parameter will be set to: none");
+                dedup = "none";
+            }
+        }
         if(module.equals("TXT")) {
             TXT_splitEmptyLines = (boolean) specs.getOrDefault("txt_splitEmptyLines", false);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Method checking if the corpus is a random sample of the source.
+     * @return True if either sample_size or sample_fraction is set.
+     */
+    public boolean isSampled(){
+        return sample_size > 0 || sample_fraction < 1;
+    }
+
+    /**
+     * Method listing the files read by the module.
+     * @return List of input file names.
+     */
+    @Override
+    public List<String> getInputFiles(){
+        List<String> files = new ArrayList<>();
+        files.add(source);
+        return files;
+    }
+
+    /**
+     * Method listing the files written by the module.
+     * @return List of output file names.
+     */
+    @Override
+    public List<String> getOutputFiles(){
+        List<String> files = new ArrayList<>();
+        files.add(output);
+        return files;
+    }
+}
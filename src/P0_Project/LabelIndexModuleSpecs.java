@@ -2,13 +2,16 @@ package P0_Project;
 
 import org.json.simple.JSONObject;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Class reading and validating parameters for the Label Indexing module ({@link P4_Analysis.LabelIndex.LabelIndexing}).
  *
  * @author P. Le Bras
  * @version 1
  */
-public class LabelIndexModuleSpecs {
+public class LabelIndexModuleSpecs implements StageSpecs {
 
     /** Filename of document JSON file
      * (from {@link P3_TopicModelling.TopicModelling} or {@link P3_TopicModelling.InferDocuments}),
@@ -53,4 +56,28 @@ public class LabelIndexModuleSpecs {
             subTopics = metaSpecs.getDataDir() + subTopics;
         }
     }
+
+    /**
+     * Method listing the files read by the module.
+     * @return List of input file names.
+     */
+    @Override
+    public List<String> getInputFiles(){
+        List<String> files = new ArrayList<>();
+        if(indexDocuments) files.add(documents);
+        files.add(mainTopics);
+        if(indexSubTopics) files.add(subTopics);
+        return files;
+    }
+
+    /**
+     * Method listing the files written by the module.
+     * @return List of output file names.
+     */
+    @Override
+    public List<String> getOutputFiles(){
+        List<String> files = new ArrayList<>();
+        files.add(indexOutput);
+        return files;
+    }
 }
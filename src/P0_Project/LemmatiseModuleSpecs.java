@@ -5,13 +5,16 @@ import PY_Helper.LogPrint;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Class reading and validating parameters for the Lemmatise module ({@link P2_Lemmatise.Lemmatise}).
  *
  * @author P. Le Bras
  * @version 1
  */
-public class LemmatiseModuleSpecs {
+public class LemmatiseModuleSpecs implements StageSpecs {
 
     /** Filename of corpus JSON file (from {@link P1_Input} modules). */
     public String corpus;
@@ -37,6 +40,8 @@ public class LemmatiseModuleSpecs {
     public int minLemmaCount;
     /** Filename for the JSON lemma file generated. */
     public String output;
+    /** Number of threads lemmatising documents (set from meta-parameters resources). */
+    public int threads;
 
     /**
      * Constructor: parses and validates the given JSON object to set parameters.
@@ -55,6 +60,7 @@ public class LemmatiseModuleSpecs {
         minDocLemmas = Math.toIntExact((long) specs.getOrDefault("minDocLemmas", specs.getOrDefault("minLemmas", (long) 1)));
         minLemmaCount = Math.toIntExact((long) specs.getOrDefault("minLemmaCount", (long) 0));
         output = metaSpecs.getDataDir() + specs.get("output");
+        threads = metaSpecs.getResources().getLemmatiseThreads();
 
         if(minDocLemmas < 1){
             LogPrint.printNote("Lemmatise module: minDocLemmas must be greater than 0, parameter was set to "+minDocLemmas+", will be set to default: 1");
@@ -65,4 +71,26 @@ public class LemmatiseModuleSpecs {
             minLemmaCount = 0;
         }
     }
+
+    /**
+     * Method listing the files read by the module.
+     * @return List of input file names.
+     */
+    @Override
+    public List<String> getInputFiles(){
+        List<String> files = new ArrayList<>();
+        files.add(corpus);
+        return files;
+    }
+
+    /**
+     * Method listing the files written by the module.
+     * @return List of output file names.
+     */
+    @Override
+    public List<String> getOutputFiles(){
+        List<String> files = new ArrayList<>();
+        files.add(output);
+        return files;
+    }
 }
@@ -1,6 +1,7 @@
 package P0_Project;
 
 import PX_Data.JSONIOWrapper;
+import PY_Helper.LogPrint;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 
@@ -36,6 +37,42 @@ public class MetaSpecs {
      *  optional, defaults to null, i.e. use module level spec */
     private String[] docFields;
 
+    /** Flag for handing data over between modules in memory, files are then written in the background,
+     *  optional, defaults to false */
+    private boolean inMemory;
+
+    /** Flag for skipping modules whose inputs and parameters have not changed since their last run,
+     *  optional, defaults to false */
+    private boolean useCache;
+
+    /** Maximum number of independent modules running concurrently,
+     *  optional, defaults to 1, i.e. modules run one after the other */
+    private int maxParallelModules;
+
+    /** Flag for saving a performance report of the modules (performanceReport.json) in the output directory,
+     *  optional, defaults to false */
+    private boolean performanceReport;
+
+    /** Flag for saving checkpoints (completed modules, topic model states and inferred documents) in the
+     *  "checkpoints" sub-directory of the data directory, to resume an interrupted run, optional, defaults to false */
+    private boolean checkpoint;
+
+    /** Number of sampling iterations between topic model checkpoints,
+     *  optional, defaults to 100 */
+    private int checkpointIterations;
+
+    /** Number of inferred documents between inference checkpoints,
+     *  optional, defaults to 500 */
+    private int checkpointDocuments;
+
+    /** Flag for resuming the run from the last checkpoints, set from the command line,
+     *  defaults to false */
+    private boolean resume = false;
+
+    /** Resource profile: number of threads per stage,
+     *  optional, every stage defaults to the number of available processors */
+    private ResourceSpecs resources;
+
     /**
      * Constructor, parses the given JSON object to set parameters
      * @param specs JSON specifications
@@ -48,6 +85,26 @@ public class MetaSpecs {
         modelType = (String) specs.getOrDefault("modelType", null);
         JSONArray fields = (JSONArray) specs.getOrDefault("docFields", null);
         docFields = fields == null ? null : JSONIOWrapper.getStringArray(fields);
+        inMemory = (boolean) specs.getOrDefault("inMemory", false);
+        useCache = (boolean) specs.getOrDefault("cache", false);
+        performanceReport = (boolean) specs.getOrDefault("performanceReport", false);
+        checkpoint = (boolean) specs.getOrDefault("checkpoint", false);
+        checkpointIterations = Math.toIntExact((long) specs.getOrDefault("checkpointIterations", (long) 100));
+        checkpointDocuments = Math.toIntExact((long) specs.getOrDefault("checkpointDocuments", (long) 500));
+        if(checkpointIterations < 1){
+            LogPrint.printNote("Meta parameters: checkpointIterations must be greater than 0, parameter was set to "+checkpointIterations+", will be set to default: 100");
+            checkpointIterations = 100;
+        }
+        if(checkpointDocuments < 1){
+            LogPrint.printNote("Meta parameters: checkpointDocuments must be greater than 0, parameter was set to "+checkpointDocuments+", will be set to default: 500");
+            checkpointDocuments = 500;
+        }
+        resources = new ResourceSpecs((JSONObject) specs.getOrDefault("resources", new JSONObject()));
+        maxParallelModules = Math.toIntExact((long) specs.getOrDefault("maxParallelModules", (long) 1));
+        if(maxParallelModules < 1){
+            LogPrint.printNote("Meta parameters: maxParallelModules must be greater than 0, parameter was set to "+maxParallelModules+", will be set to default: 1");
+            maxParallelModules = 1;
+        }
     }
 
     /**
@@ -124,4 +181,92 @@ public class MetaSpecs {
     public String[] getDocFields(){
         return docFields;
     }
+
+    /**
+     * Method indicating if data should be handed over between modules in memory rather than through files
+     * @return Flag for using the in-memory mode (true) or reading every module input from file (false)
+     */
+    public boolean useInMemory(){
+        return inMemory;
+    }
+
+    /**
+     * Method indicating if modules whose inputs and parameters have not changed since their last run should be skipped
+     * @return Flag for using the module run cache (true) or running every module (false)
+     */
+    public boolean useCache(){
+        return useCache;
+    }
+
+    /**
+     * Getter method for the maximum number of independent modules running concurrently
+     * @return Maximum number of modules running at once, 1 if modules run one after the other
+     */
+    public int getMaxParallelModules(){
+        return maxParallelModules;
+    }
+
+    /**
+     * Getter method for the resource profile
+     * @return Number of threads per stage
+     */
+    public ResourceSpecs getResources(){
+        return resources;
+    }
+
+    /**
+     * Method indicating if a performance report of the modules should be saved
+     * @return Flag for measuring and saving the modules' performance (true) or not (false)
+     */
+    public boolean doPerformanceReport(){
+        return performanceReport;
+    }
+
+    /**
+     * Method indicating if checkpoints should be saved, to resume an interrupted run
+     * @return Flag for saving checkpoints (true) or not (false)
+     */
+    public boolean useCheckpoints(){
+        return checkpoint;
+    }
+
+    /**
+     * Getter method for the checkpoints directory
+     * @return Path to the checkpoints directory, "" if checkpoints are not saved
+     */
+    public String getCheckpointDir(){
+        return checkpoint ? getDataDir() + "checkpoints/" : "";
+    }
+
+    /**
+     * Getter method for the number of sampling iterations between topic model checkpoints
+     * @return Number of iterations, 0 if checkpoints are not saved
+     */
+    public int getCheckpointIterations(){
+        return checkpoint ? checkpointIterations : 0;
+    }
+
+    /**
+     * Getter method for the number of inferred documents between inference checkpoints
+     * @return Number of documents, 0 if checkpoints are not saved
+     */
+    public int getCheckpointDocuments(){
+        return checkpoint ? checkpointDocuments : 0;
+    }
+
+    /**
+     * Setter method for resuming the run from the last checkpoints
+     * @param resume Flag for resuming the run (true) or starting afresh (false)
+     */
+    public void setResume(boolean resume){
+        this.resume = resume;
+    }
+
+    /**
+     * Method indicating if the run should resume from the last checkpoints
+     * @return Flag for resuming the run (true) or starting afresh (false), false if checkpoints are not saved
+     */
+    public boolean doResume(){
+        return checkpoint && resume;
+    }
 }
@@ -3,6 +3,9 @@ package P0_Project;
 import PY_Helper.LogPrint;
 import org.json.simple.JSONObject;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Class reading and validating parameters for one topic model.
  *
@@ -171,4 +174,18 @@ public class ModelSpecs {
             System.exit(1);
         }
     }
+
+    /**
+     * Method listing the files written for this topic model.
+     * @return List of output file names.
+     */
+    public List<String> getOutputFiles(){
+        List<String> files = new ArrayList<>();
+        files.add(topicOutput);
+        if(serialise) files.add(serialiseFile);
+        if(outputSimilarity) files.add(similarityOutput);
+        if(outputLL) files.add(llOutput);
+        if(outputTopicLog) files.add(topicLogOutput);
+        return files;
+    }
 }
@@ -2,13 +2,16 @@ package P0_Project;
 
 import org.json.simple.JSONObject;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Class reading and validating parameters for the Overwrite Map module ({@link P5_TopicMapping.OverwriteMap}).
  *
  * @author P. Le Bras
  * @version 1
  */
-public class OverwriteMapModuleSpecs {
+public class OverwriteMapModuleSpecs implements StageSpecs {
 
     /** Filename of the main topic JSON file
      * (from {@link P3_TopicModelling.TopicModelling} or {@link P3_TopicModelling.InferDocuments}),
@@ -57,4 +60,32 @@ public class OverwriteMapModuleSpecs {
         overwriteSize = sizeName.length() > 0;
         overwriteLabels = (boolean) specs.getOrDefault("overwriteLabels", false);
     }
+
+    /**
+     * Method listing the files read by the module.
+     * @return List of input file names.
+     */
+    @Override
+    public List<String> getInputFiles(){
+        List<String> files = new ArrayList<>();
+        files.add(mainDistribFile);
+        files.add(mainMapFile);
+        if(overwriteSubMaps){
+            files.add(subDistribFile);
+            files.add(subMapsFile);
+        }
+        return files;
+    }
+
+    /**
+     * Method listing the files written by the module.
+     * @return List of output file names.
+     */
+    @Override
+    public List<String> getOutputFiles(){
+        List<String> files = new ArrayList<>();
+        files.add(mainMapOutput);
+        if(overwriteSubMaps) files.add(subMapsOutput);
+        return files;
+    }
 }
@@ -14,6 +14,10 @@ public class ProjectManager {
 
     /** Project meta-parameters. */
     public MetaSpecs metaSpecs;
+    /** Cache of module runs, null if not used. */
+    public StageCache stageCache;
+    /** Record of completed modules, to resume interrupted runs, null if not used. */
+    public Checkpoint checkpoint;
 
     /** Flag for running the Input module. */
     public boolean runInput;
@@ -66,9 +70,18 @@ public class ProjectManager {
      * @param projectFile Filename for the project file.
      */
     public ProjectManager(String projectFile){
+        this(projectFile, false);
+    }
+
+    /**
+     * Constructor, also triggers reading the project file and setting up the specs.
+     * @param projectFile Filename for the project file.
+     * @param resume Flag for resuming an interrupted run from its last checkpoints.
+     */
+    public ProjectManager(String projectFile, boolean resume){
         JSONObject projectSpec = JSONIOWrapper.LoadJSON(projectFile, 0);
         getRuns((JSONObject) projectSpec.get("run"));
-        getMetaSpecs((JSONObject) projectSpec.getOrDefault("metaParameters", new JSONObject()));
+        getMetaSpecs((JSONObject) projectSpec.getOrDefault("metaParameters", new JSONObject()), resume);
         getSpecs(projectSpec);
     }
 
@@ -95,11 +108,27 @@ public class ProjectManager {
     /**
      * Method getting the meta-parameters specifications.
      * @param specs JSON object attached to "metaParameters" in project file.
+     * @param resume Flag for resuming an interrupted run from its last checkpoints.
      */
-    private void getMetaSpecs(JSONObject specs){
+    private void getMetaSpecs(JSONObject specs, boolean resume){
         LogPrint.printNewStep("Getting project's meta-parameters", 0);
         metaSpecs = new MetaSpecs(specs);
+        metaSpecs.setResume(resume);
         LogPrint.printCompleteStep();
+        if(metaSpecs.useInMemory()){
+            LogPrint.printNote("Handing data over between modules in memory");
+            JSONIOWrapper.EnableInMemory();
+        }
+        if(metaSpecs.useCache()){
+            LogPrint.printNote("Skipping modules with unchanged inputs and parameters");
+            stageCache = new StageCache(metaSpecs.getDataDir());
+        }
+        if(metaSpecs.useCheckpoints()){
+            LogPrint.printNote(metaSpecs.doResume() ? "Resuming from last checkpoints" : "Saving checkpoints");
+            checkpoint = new Checkpoint(metaSpecs.getCheckpointDir(), metaSpecs.doResume());
+        } else if(resume){
+            LogPrint.printNote("Cannot resume: checkpoints are not enabled in meta-parameters, running from the start");
+        }
     }
 
     /**
@@ -0,0 +1,101 @@
+package P0_Project;
+
+import PY_Helper.LogPrint;
+import org.json.simple.JSONObject;
+
+/**
+ * Class reading and validating the project's resource profile, the "resources" block of the meta-parameters:
+ * the number of threads each stage may use. Every count defaults to the number of available processors.
+ * It also sets the memory budget, in MB, for parsing input files, which defaults to a quarter of the maximum heap size.
+ * <br>
+ * E.g.: {@code "resources": {"input": 8, "crawl": 16, "lemmatise": 32, "model": 64, "inputMemory": 4096}}
+ *
+ * @author P. Le Bras
+ * @version 2
+ */
+public class ResourceSpecs {
+
+    /** Number of threads for parsing input files (PDF and TXT input modules). */
+    private int inputThreads;
+    /** Number of threads for fetching remote data (GtR and HTML input modules), mostly waiting on the network. */
+    private int crawlThreads;
+    /** Number of threads for the lemmatisation. */
+    private int lemmatiseThreads;
+    /** Number of threads for the topic model sampler, also the default thread budget of parameter sweeps. */
+    private int modelThreads;
+    /** Memory budget for parsing input files (PDF input module), in MB. */
+    private int inputMemory;
+
+    /**
+     * Constructor, parses the given JSON object to set parameters.
+     * @param specs JSON object attached to "resources" in the meta-parameters.
+     */
+    public ResourceSpecs(JSONObject specs){
+        inputThreads = getThreads(specs, "input");
+        crawlThreads = getThreads(specs, "crawl");
+        lemmatiseThreads = getThreads(specs, "lemmatise");
+        modelThreads = getThreads(specs, "model");
+        int defaultMemory = (int) Math.max(1, (Runtime.getRuntime().maxMemory() >> 20) / 4);
+        inputMemory = Math.toIntExact((long) specs.getOrDefault("inputMemory", (long) defaultMemory));
+        if(inputMemory < 1){
+            LogPrint.printNote("Meta parameters: resources inputMemory must be greater than 0, parameter was set to "+inputMemory+", will be set to default: "+defaultMemory);
+            inputMemory = defaultMemory;
+        }
+    }
+
+    /**
+     * Method reading and validating a stage's number of threads.
+     * @param specs JSON object attached to "resources" in the meta-parameters.
+     * @param stage Stage name.
+     * @return Number of threads.
+     */
+    private static int getThreads(JSONObject specs, String stage){
+        int cores = Runtime.getRuntime().availableProcessors();
+        int threads = Math.toIntExact((long) specs.getOrDefault(stage, (long) cores));
+        if(threads < 1){
+            LogPrint.printNote("Meta parameters: resources "+stage+" must be greater than 0, parameter was set to "+threads+", will be set to default: "+cores);
+            threads = cores;
+        }
+        return threads;
+    }
+
+    /**
+     * Getter method for the number of threads parsing input files.
+     * @return Number of threads.
+     */
+    public int getInputThreads(){
+        return inputThreads;
+    }
+
+    /**
+     * Getter method for the number of threads fetching remote data.
+     * @return Number of threads.
+     */
+    public int getCrawlThreads(){
+        return crawlThreads;
+    }
+
+    /**
+     * Getter method for the number of threads lemmatising documents.
+     * @return Number of threads.
+     */
+    public int getLemmatiseThreads(){
+        return lemmatiseThreads;
+    }
+
+    /**
+     * Getter method for the number of threads of the topic model sampler.
+     * @return Number of threads.
+     */
+    public int getModelThreads(){
+        return modelThreads;
+    }
+
+    /**
+     * Getter method for the memory budget for parsing input files.
+     * @return Memory budget, in MB.
+     */
+    public int getInputMemory(){
+        return inputMemory;
+    }
+}
@@ -0,0 +1,245 @@
+package P0_Project;
+
+import PX_Data.JSONIOWrapper;
+import PY_Helper.LogPrint;
+import org.json.simple.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Class implementing a cache of module runs, to skip modules whose inputs and parameters have not changed.
+ * <br>
+ * Each module run is fingerprinted with its name, its specifications values and the content hash of its input files
+ * (which includes the outputs of upstream modules). After a module runs, the fingerprint and the hashes of its output
+ * files are recorded in the data directory. On the next run, the module is skipped if its fingerprint matches the
+ * recorded one and all its recorded outputs are still on disk, unchanged.
+ * <br>
+ * File hashes are recorded with the file size and last modification time, and are only recomputed when these change.
+ *
+ * @author P. Le Bras
+ * @version 1
+ */
+public class StageCache {
+
+    /** Name of the cache file, saved in the data directory. */
+    private final static String CACHE_FILENAME = "stageCache.json";
+    /** Size of the buffer used to read files when hashing. */
+    private final static int BUFFER_SIZE = 1 << 20;
+
+    /** Filename of the cache file. */
+    private final String cacheFile;
+    /** Recorded module runs: module name -> {"fingerprint": ..., "outputs": {filename: hash}}. */
+    private final JSONObject stages;
+    /** Recorded file snapshots: filename -> {"hash": ..., "size": ..., "modified": ...}. */
+    private final JSONObject files;
+
+    /**
+     * Constructor, loads the existing cache file from the data directory if there is one.
+     * @param dataDir Project's data directory.
+     */
+    public StageCache(String dataDir){
+        cacheFile = dataDir + CACHE_FILENAME;
+        JSONObject root = new File(cacheFile).exists() ? JSONIOWrapper.LoadJSON(cacheFile, 0) : new JSONObject();
+        stages = (JSONObject) root.getOrDefault("stages", new JSONObject());
+        files = (JSONObject) root.getOrDefault("files", new JSONObject());
+    }
+
+    /**
+     * Method computing the fingerprint of a module run.
+     * @param name Module name.
+     * @param specs Module specifications.
+     * @return The fingerprint, as a hexadecimal SHA-256 hash.
+     */
+    public String fingerprint(String name, StageSpecs specs){
+        StringBuilder description = new StringBuilder(name).append('\n');
+        describe(specs, description);
+        for(String input: specs.getInputFiles()){
+            description.append('\n').append(input).append('=').append(hashPath(input));
+        }
+        return toHex(newDigest().digest(description.toString().getBytes()));
+    }
+
+    /**
+     * Method checking if a module run, with the given fingerprint, has been recorded and its outputs are unchanged.
+     * @param name Module name.
+     * @param fingerprint Fingerprint of the module run.
+     * @return True if the module can be skipped, false otherwise.
+     */
+    public synchronized boolean isUpToDate(String name, String fingerprint){
+        JSONObject stage = (JSONObject) stages.get(name);
+        if(stage == null || !fingerprint.equals(stage.get("fingerprint"))) return false;
+        JSONObject outputs = (JSONObject) stage.get("outputs");
+        for(Map.Entry<String, String> output: ((Map<String, String>) outputs).entrySet()){
+            if(!output.getValue().equals(hashPath(output.getKey()))) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Method recording a completed module run and saving the cache file.
+     * @param name Module name.
+     * @param fingerprint Fingerprint of the module run, computed before it ran.
+     * @param specs Module specifications.
+     */
+    public synchronized void record(String name, String fingerprint, StageSpecs specs){
+        JSONObject outputs = new JSONObject();
+        for(String output: specs.getOutputFiles()){
+            outputs.put(output, hashPath(output));
+        }
+        JSONObject stage = new JSONObject();
+        stage.put("fingerprint", fingerprint);
+        stage.put("outputs", outputs);
+        stages.put(name, stage);
+        JSONObject root = new JSONObject();
+        root.put("stages", stages);
+        root.put("files", files);
+        // written directly, as the cache keeps being updated during the run
+        try {
+            JSONIOWrapper.SaveJSONAtomic(root, cacheFile);
+        } catch (IOException e){
+            LogPrint.printNoteError("Error while saving "+cacheFile);
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Method describing the values of an object's public fields, in a stable order, recursively for specifications
+     * objects nested in it (e.g. {@link ModelSpecs} or lists of {@link DistribSpecs}).
+     * @param obj Object to describe.
+     * @param res Description to append to.
+     */
+    private static void describe(Object obj, StringBuilder res){
+        if(obj == null || obj instanceof String || obj instanceof Number || obj instanceof Boolean){
+            res.append(obj);
+        } else if(obj instanceof Object[]){
+            res.append('[');
+            for(Object o: (Object[]) obj){
+                describe(o, res);
+                res.append(',');
+            }
+            res.append(']');
+        } else if(obj.getClass().isArray()){
+            // primitive arrays
+            res.append(Arrays.deepToString(new Object[]{obj}));
+        } else if(obj instanceof Collection){
+            describe(((Collection<?>) obj).toArray(), res);
+        } else if(obj instanceof Map){
+            res.append(new TreeMap<>((Map<?, ?>) obj));
+        } else {
+            Field[] fields = obj.getClass().getFields();
+            Arrays.sort(fields, Comparator.comparing(Field::getName));
+            res.append('{');
+            for(Field field: fields){
+                if(Modifier.isStatic(field.getModifiers())) continue;
+                res.append(field.getName()).append(':');
+                try {
+                    describe(field.get(obj), res);
+                } catch (IllegalAccessException e){
+                    res.append('?');
+                }
+                res.append(';');
+            }
+            res.append('}');
+        }
+    }
+
+    /**
+     * Method getting the content hash of a file, or of all the files in a directory (e.g. PDF or TXT sources).
+     * @param path File or directory name.
+     * @return The hash, or "missing" if the file does not exist.
+     */
+    private synchronized String hashPath(String path){
+        // files handed over in memory might not be written yet
+        JSONIOWrapper.FlushWrite(path);
+        File file = new File(path);
+        if(!file.exists()) return "missing";
+        if(!file.isDirectory()) return hashFile(file);
+        List<File> content = new ArrayList<>();
+        listFiles(file, content);
+        content.sort(Comparator.comparing(File::getPath));
+        StringBuilder description = new StringBuilder();
+        for(File f: content){
+            description.append(f.getPath()).append('=').append(hashFile(f)).append('\n');
+        }
+        return toHex(newDigest().digest(description.toString().getBytes()));
+    }
+
+    /**
+     * Method recursively listing the files in a directory.
+     * @param directory Directory to explore.
+     * @param content List to add the files to.
+     */
+    private static void listFiles(File directory, List<File> content){
+        File[] children = directory.listFiles();
+        if(children == null) return;
+        for(File f: children){
+            if(f.isDirectory()) listFiles(f, content);
+            else content.add(f);
+        }
+    }
+
+    /**
+     * Method getting the content hash of a single file, re-using the recorded hash if the file size and
+     * modification time have not changed.
+     * @param file File to hash.
+     * @return The hash, or "missing" if the file cannot be read.
+     */
+    private String hashFile(File file){
+        String key = file.getPath();
+        long size = file.length();
+        long modified = file.lastModified();
+        JSONObject snapshot = (JSONObject) files.get(key);
+        if(snapshot != null && (long) snapshot.get("size") == size && (long) snapshot.get("modified") == modified){
+            return (String) snapshot.get("hash");
+        }
+        MessageDigest digest = newDigest();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try(InputStream in = new FileInputStream(file)){
+            int read;
+            while((read = in.read(buffer)) > 0){
+                digest.update(buffer, 0, read);
+            }
+        } catch (IOException e){
+            LogPrint.printNoteError("Error while hashing "+key);
+            return "missing";
+        }
+        String hash = toHex(digest.digest());
+        snapshot = new JSONObject();
+        snapshot.put("hash", hash);
+        snapshot.put("size", size);
+        snapshot.put("modified", modified);
+        files.put(key, snapshot);
+        return hash;
+    }
+
+    /**
+     * Method creating a new SHA-256 message digest.
+     * @return The message digest.
+     */
+    private static MessageDigest newDigest(){
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e){
+            // SHA-256 is required on every Java platform
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Method formatting a hash as a hexadecimal string.
+     * @param hash Hash bytes.
+     * @return The hexadecimal string.
+     */
+    private static String toHex(byte[] hash){
+        return String.format("%064x", new BigInteger(1, hash));
+    }
+}
@@ -0,0 +1,151 @@
+package P0_Project;
+
+import PY_Helper.LogPrint;
+
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+/**
+ * Class scheduling the pipeline modules, running modules which do not depend on each other concurrently.
+ * Also used to schedule whole projects when running several of them in the same process.
+ * <br>
+ * Modules are added in the pipeline order. A module depends on an earlier module if it reads a file the earlier module
+ * writes, or if it writes a file the earlier module reads or writes. A module starts once all the modules it depends on
+ * are completed, with at most a given number of modules running at once.
+ *
+ * @author P. Le Bras
+ * @version 1
+ */
+public class StageScheduler {
+
+    /**
+     * Class holding a module to schedule.
+     */
+    private static class Stage {
+        /** Module name. */
+        final String name;
+        /** Module run, returning the module's time log. */
+        final Supplier<String> run;
+        /** Normalised names of the files read by the module. */
+        final List<String> inputs = new ArrayList<>();
+        /** Normalised names of the files written by the module. */
+        final List<String> outputs = new ArrayList<>();
+        /** Indices of the modules this module depends on. */
+        final Set<Integer> dependencies = new HashSet<>();
+
+        Stage(String name, StageSpecs specs, Supplier<String> run){
+            this.name = name;
+            this.run = run;
+            for(String file: specs.getInputFiles()) inputs.add(normalise(file));
+            for(String file: specs.getOutputFiles()) outputs.add(normalise(file));
+        }
+    }
+
+    /** Maximum number of modules running at once. */
+    private final int maxParallel;
+    /** List of modules, in pipeline order. */
+    private final List<Stage> stages = new ArrayList<>();
+
+    /**
+     * Constructor.
+     * @param maxParallel Maximum number of modules running at once.
+     */
+    public StageScheduler(int maxParallel){
+        this.maxParallel = Math.max(1, maxParallel);
+    }
+
+    /**
+     * Method adding a module to schedule, after the modules already added.
+     * @param name Module name.
+     * @param specs Module specifications, listing the module's input and output files.
+     * @param run Module run, returning the module's time log.
+     */
+    public void addStage(String name, StageSpecs specs, Supplier<String> run){
+        Stage stage = new Stage(name, specs, run);
+        for(int i = 0; i < stages.size(); i++){
+            Stage previous = stages.get(i);
+            if(overlap(stage.inputs, previous.outputs) || overlap(stage.outputs, previous.inputs)
+                    || overlap(stage.outputs, previous.outputs)){
+                stage.dependencies.add(i);
+            }
+        }
+        stages.add(stage);
+    }
+
+    /**
+     * Method running all the modules added, waiting for them to complete.
+     * @return The modules' time logs, in pipeline order.
+     */
+    public List<String> run(){
+        String[] results = new String[stages.size()];
+        if(maxParallel == 1){
+            for(int i = 0; i < stages.size(); i++){
+                results[i] = stages.get(i).run.get();
+            }
+            return Arrays.asList(results);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(maxParallel);
+        CompletionService<Integer> completion = new ExecutorCompletionService<>(executor);
+        Set<Integer> pending = new TreeSet<>();
+        Set<Integer> completed = new HashSet<>();
+        for(int i = 0; i < stages.size(); i++) pending.add(i);
+        int running = 0;
+        try {
+            while(!pending.isEmpty() || running > 0){
+                // starting every module whose dependencies are completed
+                Iterator<Integer> it = pending.iterator();
+                while(it.hasNext()){
+                    int i = it.next();
+                    if(completed.containsAll(stages.get(i).dependencies)){
+                        it.remove();
+                        running++;
+                        completion.submit(() -> {
+                            results[i] = stages.get(i).run.get();
+                            return i;
+                        });
+                    }
+                }
+                completed.add(completion.take().get());
+                running--;
+            }
+        } catch (ExecutionException e){
+            LogPrint.printNoteError("Error while running the pipeline modules");
+            e.getCause().printStackTrace();
+            System.exit(1);
+        } catch (InterruptedException e){
+            LogPrint.printNoteError("Pipeline interrupted while running the modules");
+            Thread.currentThread().interrupt();
+            System.exit(1);
+        } finally {
+            executor.shutdown();
+        }
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Method checking if any file in one list is, or is inside, a file in the other list (or vice versa).
+     * @param files1 First list of normalised file names.
+     * @param files2 Second list of normalised file names.
+     * @return True if the lists share a file, false otherwise.
+     */
+    private static boolean overlap(List<String> files1, List<String> files2){
+        for(String f1: files1){
+            for(String f2: files2){
+                if(f1.equals(f2) || f1.startsWith(f2+"/") || f2.startsWith(f1+"/")) return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Method normalising a file name, so the same file is recognised across modules.
+     * @param file File name.
+     * @return The normalised absolute file name.
+     */
+    private static String normalise(String file){
+        String res = Paths.get(file).toAbsolutePath().normalize().toString();
+        return res.endsWith("/") ? res.substring(0, res.length()-1) : res;
+    }
+}
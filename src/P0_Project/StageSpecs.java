@@ -0,0 +1,35 @@
+package P0_Project;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Interface implemented by module specifications, listing the files a module reads and writes.
+ * Used to fingerprint a module's run and to order modules by their data dependencies.
+ *
+ * @author P. Le Bras
+ * @version 2
+ */
+public interface StageSpecs {
+
+    /**
+     * Method listing the files (or source directories) the module reads.
+     * @return List of input file names.
+     */
+    List<String> getInputFiles();
+
+    /**
+     * Method listing the files the module writes.
+     * @return List of output file names.
+     */
+    List<String> getOutputFiles();
+
+    /**
+     * Method listing the checkpoint files the module saves to resume an interrupted run, deleted once the module is
+     * recorded as completed (see {@link Checkpoint}), along with the files named after them (name followed by '.').
+     * @return List of checkpoint file names, empty by default.
+     */
+    default List<String> getCheckpointFiles(){
+        return Collections.emptyList();
+    }
+}
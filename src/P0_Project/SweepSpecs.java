@@ -0,0 +1,99 @@
+package P0_Project;
+
+import PY_Helper.LogPrint;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+/**
+ * Class reading and validating parameters for a topic model parameter sweep: a model is trained for each combination
+ * of the listed parameter values, other parameters are taken from the main model specifications.
+ *
+ * @author P. Le Bras
+ * @version 1
+ */
+public class SweepSpecs {
+
+    /** List of numbers of topics to try, optional, defaults to the main model's number of topics. */
+    public int[] topics;
+    /** List of alpha sums to try, optional, defaults to the main model's alpha sum. */
+    public double[] alphaSum;
+    /** List of beta values to try, optional, defaults to the main model's beta. */
+    public double[] beta;
+    /** List of random seed indices to try (between 0-99), optional, defaults to the main model's seed index. */
+    public int[] seedIndex;
+    /** Total number of threads shared by the models trained concurrently,
+     * optional, defaults to the model threads of the resource profile. */
+    public int threads;
+    /** Filename for the CSV comparison table of the models trained, optional, defaults to "sweep.csv". */
+    public String output;
+
+    /**
+     * Constructor: reads the specification from a JSON object passed from TopicModelModuleSpecs.
+     * @param specs JSON object where the sweep specifications are written.
+     * @param mainModel Specifications of the main model, giving the default and other parameters.
+     * @param dataDir Output directory name to attach to filenames.
+     * @param defaultThreads Default number of threads, from the resource profile.
+     */
+    public SweepSpecs(JSONObject specs, ModelSpecs mainModel, String dataDir, int defaultThreads){
+        JSONArray values = (JSONArray) specs.getOrDefault("topics", new JSONArray());
+        topics = new int[values.size()];
+        for(int i = 0; i < values.size(); i++) topics[i] = Math.toIntExact((long) values.get(i));
+        if(topics.length == 0) topics = new int[]{mainModel.topics};
+
+        values = (JSONArray) specs.getOrDefault("alphaSum", new JSONArray());
+        alphaSum = new double[values.size()];
+        for(int i = 0; i < values.size(); i++) alphaSum[i] = ((Number) values.get(i)).doubleValue();
+        if(alphaSum.length == 0) alphaSum = new double[]{mainModel.alphaSum};
+
+        values = (JSONArray) specs.getOrDefault("beta", new JSONArray());
+        beta = new double[values.size()];
+        for(int i = 0; i < values.size(); i++) beta[i] = ((Number) values.get(i)).doubleValue();
+        if(beta.length == 0) beta = new double[]{mainModel.beta};
+
+        values = (JSONArray) specs.getOrDefault("seed", new JSONArray());
+        seedIndex = new int[values.size()];
+        for(int i = 0; i < values.size(); i++) seedIndex[i] = Math.toIntExact((long) values.get(i));
+        if(seedIndex.length == 0) seedIndex = new int[]{mainModel.seedIndex};
+
+        threads = Math.toIntExact((long) specs.getOrDefault("threads", (long) defaultThreads));
+        output = dataDir + specs.getOrDefault("output", "sweep.csv");
+
+        // validations
+        for(int t: topics){
+            if(t < 1){
+                LogPrint.printNoteError("Topic Model module: sweep topics must be greater than 0, parameter was set to "+t);
+                System.exit(1);
+            }
+        }
+        for(double a: alphaSum){
+            if(a <= 0){
+                LogPrint.printNoteError("Topic Model module: sweep alphaSum must be greater than 0, parameter was set to "+a);
+                System.exit(1);
+            }
+        }
+        for(double b: beta){
+            if(b <= 0){
+                LogPrint.printNoteError("Topic Model module: sweep beta must be greater than 0, parameter was set to "+b);
+                System.exit(1);
+            }
+        }
+        for(int s: seedIndex){
+            if(s < 0 || s > 99){
+                LogPrint.printNoteError("Topic Model module: sweep seed must be greater than -1 and less than 100, parameter was set to "+s);
+                System.exit(1);
+            }
+        }
+        if(threads < 1){
+            LogPrint.printNote("Topic Model module: sweep threads must be greater than 0, parameter was set to "+threads+", will be set to 1");
+            threads = 1;
+        }
+    }
+
+    /**
+     * Method getting the number of models to train, one per combination of parameter values.
+     * @return The number of models.
+     */
+    public int getNumRuns(){
+        return topics.length * alphaSum.length * beta.length * seedIndex.length;
+    }
+}
@@ -3,6 +3,9 @@ package P0_Project;
 import PY_Helper.LogPrint;
 import org.json.simple.JSONObject;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Class reading and validating parameters for the Topic Clustering module
  * ({@link P4_Analysis.TopicClustering.TopicClustering}).
@@ -10,7 +13,7 @@ import org.json.simple.JSONObject;
  * @author P. Le Bras
  * @version 1
  */
-public class TopicClusterModuleSpecs {
+public class TopicClusterModuleSpecs implements StageSpecs {
 
     /** Filename of main topic JSON file
      * (from {@link P3_TopicModelling.TopicModelling} or {@link P3_TopicModelling.InferDocuments}). */
@@ -57,4 +60,28 @@ public class TopicClusterModuleSpecs {
             clusters = 1;
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Method listing the files read by the module.
+     * @return List of input file names.
+     */
+    @Override
+    public List<String> getInputFiles(){
+        List<String> files = new ArrayList<>();
+        files.add(mainTopics);
+        if(groupingSubTopics) files.add(subTopics);
+        return files;
+    }
+
+    /**
+     * Method listing the files written by the module.
+     * @return List of output file names.
+     */
+    @Override
+    public List<String> getOutputFiles(){
+        List<String> files = new ArrayList<>();
+        files.add(mainOutput);
+        if(groupingSubTopics) files.add(subOutput);
+        return files;
+    }
+}
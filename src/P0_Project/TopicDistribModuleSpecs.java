@@ -15,7 +15,7 @@ import java.util.List;
  * @author P. Le Bras
  * @version 1
  */
-public class TopicDistribModuleSpecs {
+public class TopicDistribModuleSpecs implements StageSpecs {
 
     /** Filename of document JSON file
      * (from {@link P3_TopicModelling.TopicModelling} or {@link P3_TopicModelling.InferDocuments}). */
@@ -57,4 +57,34 @@ public class TopicDistribModuleSpecs {
         };
     }
 
+    /**
+     * Method listing the files read by the module.
+     * @return List of input file names.
+     */
+    @Override
+    public List<String> getInputFiles(){
+        List<String> files = new ArrayList<>();
+        files.add(documents);
+        files.add(mainTopics);
+        if(distributeSubTopics) files.add(subTopics);
+        for(DistribSpecs field: fields){
+            if(field.includeDomainData) files.add(field.domainDataFile);
+        }
+        return files;
+    }
+
+    /**
+     * Method listing the files written by the module.
+     * @return List of output file names.
+     */
+    @Override
+    public List<String> getOutputFiles(){
+        List<String> files = new ArrayList<>();
+        files.add(mainOutput);
+        if(distributeSubTopics) files.add(subOutput);
+        for(DistribSpecs field: fields){
+            if(field.output.length() > 0) files.add(field.output);
+        }
+        return files;
+    }
 }
@@ -5,13 +5,16 @@ import PY_Helper.LogPrint;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Class reading and validating parameters for the Topic Mapping module ({@link P5_TopicMapping.BubbleMapping.BubbleMap}).
  *
  * @author P. Le Bras
  * @version 1
  */
-public class TopicMappingModuleSpecs {
+public class TopicMappingModuleSpecs implements StageSpecs {
 
     /** Filename of the main topic JSON file
      * (from {@link P3_TopicModelling.TopicModelling} or {@link P3_TopicModelling.InferDocuments})
@@ -109,4 +112,28 @@ public class TopicMappingModuleSpecs {
             mapType = "bubble";
         }
     }
+
+    /**
+     * Method listing the files read by the module.
+     * @return List of input file names.
+     */
+    @Override
+    public List<String> getInputFiles(){
+        List<String> files = new ArrayList<>();
+        files.add(mainTopics);
+        if(mapSubTopics) files.add(subTopics);
+        return files;
+    }
+
+    /**
+     * Method listing the files written by the module.
+     * @return List of output file names.
+     */
+    @Override
+    public List<String> getOutputFiles(){
+        List<String> files = new ArrayList<>();
+        files.add(mainOutput);
+        if(mapSubTopics) files.add(subOutput);
+        return files;
+    }
 }
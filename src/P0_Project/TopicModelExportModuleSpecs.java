@@ -5,13 +5,16 @@ import PY_Helper.LogPrint;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Class reading and validating parameters for the Model Export module ({@link P3_TopicModelling.ExportTopicModel}).
  *
  * @author P. Le Bras
  * @version 1
  */
-public class TopicModelExportModuleSpecs {
+public class TopicModelExportModuleSpecs implements StageSpecs {
 
     /** Filename of the main topic JSON file
      * (from {@link P3_TopicModelling.TopicModelling} or {@link P3_TopicModelling.InferDocuments}). */
@@ -101,4 +104,32 @@ public class TopicModelExportModuleSpecs {
             numWordId = 1;
         }
     }
+
+    /**
+     * Method listing the files read by the module.
+     * @return List of input file names.
+     */
+    @Override
+    public List<String> getInputFiles(){
+        List<String> files = new ArrayList<>();
+        files.add(mainTopics);
+        if(exportSubTopics) files.add(subTopics);
+        files.add(documents);
+        return files;
+    }
+
+    /**
+     * Method listing the files written by the module.
+     * @return List of output file names.
+     */
+    @Override
+    public List<String> getOutputFiles(){
+        List<String> files = new ArrayList<>();
+        if(exportMainTopicsJSON) files.add(mainOutput);
+        if(exportMainTopicsCSV) files.add(mainOutputCSV);
+        if(exportSubTopicsJSON) files.add(subOutput);
+        if(exportSubTopicsCSV) files.add(subOutputCSV);
+        if(exportMergedTopicsCSV) files.add(outputCSV);
+        return files;
+    }
 }
@@ -3,14 +3,18 @@ package P0_Project;
 import PY_Helper.LogPrint;
 import org.json.simple.JSONObject;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Class reading and validating parameters for the Topic Model modules ({@link P3_TopicModelling.TopicModelling} and
  * {@link P3_TopicModelling.HierarchicalTopicModelling}).
  *
  * @author P. Le Bras
- * @version 2
+ * @version 4
  */
-public class TopicModelModuleSpecs {
+public class TopicModelModuleSpecs implements StageSpecs {
 
     /** Filename to lemma data (from {@link P2_Lemmatise.Lemmatise}). */
     public String lemmas;
@@ -44,6 +48,18 @@ public class TopicModelModuleSpecs {
     /** Type of similarity to use for assignment, if "hierarchical" module used, optional, defaults to "perceptual".
      * "perceptual" will use the topics' labels overlap. "document" will use the topics' distribution in document space. */
     public String assignmentType;
+    /** Specifications for a parameter sweep of the main model, optional, defaults to null (no sweep).
+     * If set, the module trains a model per combination of parameters and saves a comparison table instead of the
+     * model outputs. */
+    public SweepSpecs sweep;
+    /** Number of threads of the topic model sampler (set from meta-parameters resources). */
+    public int threads;
+    /** Directory where to save topic model checkpoints, "" if not saved (set from meta-parameters). */
+    public String checkpointDir;
+    /** Number of sampling iterations between topic model checkpoints (set from meta-parameters). */
+    public int checkpointIterations;
+    /** Flag for resuming topic models from their last checkpoints (set from meta-parameters). */
+    public boolean resume;
 
     /**
      * Constructor: parses and validates the given JSON object to set parameters.
@@ -61,6 +77,13 @@ public class TopicModelModuleSpecs {
         }
         documentOutput = dataDir + specs.get("documentOutput");
         mainModel = new ModelSpecs((JSONObject) specs.getOrDefault("model", specs.get("mainModel")), dataDir);
+        threads = metaSpecs.getResources().getModelThreads();
+        checkpointDir = metaSpecs.getCheckpointDir();
+        checkpointIterations = metaSpecs.getCheckpointIterations();
+        resume = metaSpecs.doResume();
+        if(specs.containsKey("sweep")){
+            sweep = new SweepSpecs((JSONObject) specs.get("sweep"), mainModel, dataDir, threads);
+        }
         if(modelType.equals("hierarchical")){
             subModel = new ModelSpecs((JSONObject) specs.get("subModel"), dataDir);
             JSONObject hierarchySpecs = (JSONObject) specs.get("hierarchy");
@@ -92,4 +115,59 @@ public class TopicModelModuleSpecs {
             System.exit(1);
         }
     }
+
+    /**
+     * Method listing the files read by the module.
+     * @return List of input file names.
+     */
+    @Override
+    public List<String> getInputFiles(){
+        List<String> files = new ArrayList<>();
+        files.add(lemmas);
+        return files;
+    }
+
+    /**
+     * Method listing the files written by the module.
+     * @return List of output file names.
+     */
+    @Override
+    public List<String> getOutputFiles(){
+        List<String> files = new ArrayList<>();
+        if(sweep != null){
+            files.add(sweep.output);
+            return files;
+        }
+        files.add(documentOutput);
+        files.addAll(mainModel.getOutputFiles());
+        if(modelType.equals("hierarchical")){
+            files.addAll(subModel.getOutputFiles());
+            if(outputSimilarity) files.add(similarityOutput);
+            if(outputAssignment) files.add(assignmentOutput);
+        }
+        return files;
+    }
+
+    /**
+     * Method listing the checkpoint files saved by the module: the main (and sub) models' sampler states.
+     * @return List of checkpoint file names.
+     */
+    @Override
+    public List<String> getCheckpointFiles(){
+        List<String> files = new ArrayList<>();
+        if(checkpointIterations <= 0 || sweep != null) return files;
+        files.add(getCheckpointFile(mainModel));
+        if(modelType.equals("hierarchical")) files.add(getCheckpointFile(subModel));
+        return files;
+    }
+
+    /**
+     * Method getting the filename prefix of a model's sampler state checkpoints, named after the model's topic file,
+     * so main and sub models have separate checkpoints.
+     * @param model Model specifications.
+     * @return The checkpoints filename prefix.
+     */
+    public String getCheckpointFile(ModelSpecs model){
+        return checkpointDir + new File(model.topicOutput).getName() + ".mallet";
+    }
 }
@@ -3,25 +3,29 @@ package P1_Input;
 import P0_Project.InputModuleSpecs;
 import PX_Data.DocIOWrapper;
 import PX_Data.JSONIOWrapper;
+import PX_Data.JSONStreamWriter;
+import PX_Data.ParallelCSVReader;
 import PY_Helper.LogPrint;
-import de.siegmar.fastcsv.reader.CsvParser;
-import de.siegmar.fastcsv.reader.CsvReader;
-import de.siegmar.fastcsv.reader.CsvRow;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 
-import java.io.File;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Class reading a CSV file data input and writing it as a corpus JSON file.
+ * <br>
+ * In streaming mode, each row is written to the corpus file as soon as it is read, so the memory used does not
+ * depend on the number of rows.
+ * <br>
+ * In incremental mode, the existing corpus is updated: rows are keyed by their content, unchanged rows keep their
+ * document, and removed rows are dropped.
+ * <br>
+ * Rows can be filtered on their values (see {@link RowFilter}), and randomly sampled (see {@link CorpusSampler}), to quickly produce a smaller, representative corpus.
  *
  * @author T. Methven, P. Le Bras
- * @version 2
+ * @version 8
  */
 public class CSVInput {
 
@@ -41,6 +45,24 @@ public class CSVInput {
     private HashMap<String, String> fields;
     /** File name for the produced JSON corpus. */
     private String outputFile;
+    /** Flag for streaming rows straight to the corpus file. */
+    private boolean stream;
+    /** Number of threads parsing the CSV file. */
+    private int threads;
+    /** Flag for updating the existing corpus, only adding new or changed rows. */
+    private boolean incremental;
+    /** Near-duplicate detection, null if not used. */
+    private NearDuplicates nearDuplicates = null;
+    /** Flag for dropping near-duplicate documents from the corpus, rather than marking them. */
+    private boolean dropDuplicates;
+    /** Number of near-duplicate documents found. */
+    private int numDuplicates = 0;
+    /** Random sample of the rows, null if all rows are kept. */
+    private CorpusSampler<DocIOWrapper> sampler = null;
+    /** Corpus field stratifying the sample, null if not stratified. */
+    private String stratify;
+    /** Filters on the CSV columns, null if all rows are kept. */
+    private RowFilter filter;
 
     /**
      * Main method, reads the specification and launches the sub-methods in order.
@@ -55,8 +77,16 @@ public class CSVInput {
 
         CSVInput startClass = new CSVInput();
         startClass.ProcessArguments(inputSpecs);
-        startClass.LoadCSVFile();
-        startClass.OutputJSON();
+        if(startClass.sampler != null && startClass.sampler.needsCounts()){
+            startClass.CountStrata();
+        }
+        if(startClass.stream){
+            startClass.StreamCSVFile();
+        } else {
+            startClass.LoadCSVFile();
+            startClass.DetectDuplicates();
+            startClass.OutputJSON();
+        }
 
         long timeTaken = (System.currentTimeMillis() - startTime) / (long)1000;
 
@@ -75,6 +105,47 @@ public class CSVInput {
         sourceFile = inputSpecs.source;
         fields = inputSpecs.fields;
         outputFile = inputSpecs.output;
+        stream = inputSpecs.CSV_stream;
+        threads = inputSpecs.threads;
+        incremental = inputSpecs.incremental;
+        if(inputSpecs.filters != null) filter = new RowFilter(inputSpecs.filters);
+        if(!inputSpecs.dedup.equals("none")){
+            nearDuplicates = new NearDuplicates(inputSpecs.dedup_fields, inputSpecs.dedup_threshold,
+                    inputSpecs.dedup_shingleSize, threads);
+            dropDuplicates = inputSpecs.dedup.equals("drop");
+        }
+        if(inputSpecs.isSampled()){
+            stratify = inputSpecs.sample_stratify;
+            sampler = new CorpusSampler<>(inputSpecs.sample_size, inputSpecs.sample_fraction, stratify, inputSpecs.sample_seed);
+        }
+        LogPrint.printCompleteStep();
+        if(stream) LogPrint.printNote("Streaming rows to "+outputFile);
+        if(filter != null) LogPrint.printNote("Filtering rows: "+filter);
+        if(sampler != null) LogPrint.printNote("Sampling "+(inputSpecs.sample_size > 0 ? inputSpecs.sample_size+" rows" :
+                inputSpecs.sample_fraction * 100 + "% of rows")+(stratify != null ? ", stratified by "+stratify : ""));
+    }
+
+    /**
+     * Method counting the rows of each stratum in a first pass over the CSV input file, so that the stratified sample
+     * held while reading the rows is bounded by the sample size (see {@link CorpusSampler#needsCounts()}).
+     */
+    private void CountStrata(){
+        LogPrint.printNewStep("Counting rows by "+stratify+": "+sourceFile, 0);
+        String column = fields.get(stratify);
+        try {
+            ParallelCSVReader.Read(sourceFile, threads, (row, rowNum) -> {
+                if(rowNum >= PROCESS_MAX_ROWS) return;
+                if(rowNum == 0 && filter != null) filter.checkColumns(row.getColumns());
+                // rows filtered out are not offered to the sampler either
+                if(filter != null && !filter.test(row::getField)) return;
+                sampler.count(column != null ? row.getField(column) : null);
+            });
+        }
+        catch (IOException e){
+            LogPrint.printNoteError("Error while reading the CSV input.");
+            e.printStackTrace();
+            System.exit(1);
+        }
         LogPrint.printCompleteStep();
     }
 
@@ -82,23 +153,30 @@ public class CSVInput {
      * Method reading the CSV input file and populating the list of documents.
      */
     private void LoadCSVFile(){
-        File file = new File(sourceFile);
-        CsvReader csvReader = new CsvReader();
-        csvReader.setContainsHeader(true);
-
-        int rowNum = 0;
+        SourceManifest manifest = incremental ? new SourceManifest(outputFile, Collections.singletonMap("fields", new TreeMap<>(fields))) : null;
+        // number of occurrences of each row content, so that identical rows have different keys
+        Map<String, Integer> occurrences = new HashMap<>();
         LogPrint.printNewStep("Reading CSV: "+sourceFile, 0);
-
-        try(CsvParser csvParser = csvReader.parse(file, StandardCharsets.UTF_8)){
-            CsvRow row;
-            while((row = csvParser.nextRow()) != null && rowNum < PROCESS_MAX_ROWS){
+        try {
+            ParallelCSVReader.Read(sourceFile, threads, (row, rowNum) -> {
+                if(rowNum >= PROCESS_MAX_ROWS) return;
+                if(rowNum == 0 && filter != null) filter.checkColumns(row.getColumns());
+                // filtered out before any document is created
+                if(filter != null && !filter.accept(row::getField)) return;
                 DocIOWrapper doc = new DocIOWrapper(Integer.toString(rowNum), rowNum);
                 for(Map.Entry<String, String> entry: fields.entrySet()){
                     doc.addData(entry.getKey(), row.getField(entry.getValue()));
                 }
+                if(manifest != null){
+                    // rows are keyed by the content kept in the corpus: unchanged rows keep their document
+                    String hash = SourceManifest.hashValues(new TreeMap<>(doc.getDocData()).values());
+                    String key = hash + "#" + occurrences.merge(hash, 1, Integer::sum);
+                    if(!manifest.keep(key, hash)) manifest.add(key, Collections.singletonList(doc));
+                    return;
+                }
+                if(sampler != null && !sampler.offer(doc, doc.getDocData().get(stratify))) return;
                 Docs.put(doc.getId(), doc);
-                rowNum++;
-            }
+            });
         }
         catch (IOException e){
             LogPrint.printNoteError("Error while reading the CSV input.");
@@ -106,10 +184,83 @@ public class CSVInput {
             System.exit(1);
         }
         finally {
-            numDocs = Docs.size();
             LogPrint.printCompleteStep();
-            LogPrint.printNote("Number of documents recovered from file: " + numDocs, 0);
         }
+        if(manifest != null) Docs.putAll(manifest.complete());
+        if(sampler != null){
+            for(DocIOWrapper doc: sampler.sample()) Docs.put(doc.getId(), doc);
+        }
+        if(manifest == null && (sampler != null || filter != null)){
+            // sampled or filtered rows keep their row number as id, their indices are made contiguous again
+            List<DocIOWrapper> kept = new ArrayList<>(Docs.values());
+            kept.sort(Comparator.comparingInt(DocIOWrapper::getIndex));
+            for(int i = 0; i < kept.size(); i++) kept.get(i).setIndex(i);
+        }
+        if(filter != null) LogPrint.printNote("Number of rows filtered out: " + filter.getRejected(), 0);
+        numDocs = Docs.size();
+        LogPrint.printNote("Number of documents recovered from file: " + numDocs, 0);
+    }
+
+    /**
+     * Method reading the CSV input file and writing each row onto the JSON corpus file as it is read.
+     */
+    private void StreamCSVFile(){
+        LogPrint.printNewStep("Streaming CSV: "+sourceFile, 0);
+
+        try(JSONStreamWriter corpus = new JSONStreamWriter(outputFile, "corpus")){
+            ParallelCSVReader.Read(sourceFile, threads, (row, rowNum) -> {
+                if(rowNum >= PROCESS_MAX_ROWS) return;
+                if(rowNum == 0 && filter != null) filter.checkColumns(row.getColumns());
+                // filtered out before any document is created
+                if(filter != null && !filter.accept(row::getField)) return;
+                DocIOWrapper doc = new DocIOWrapper(Integer.toString(rowNum), rowNum);
+                for(Map.Entry<String, String> entry: fields.entrySet()){
+                    doc.addData(entry.getKey(), row.getField(entry.getValue()));
+                }
+                if(sampler != null && !sampler.offer(doc, doc.getDocData().get(stratify))) return;
+                // indices stay contiguous when rows are filtered or sampled
+                doc.setIndex(corpus.getCount());
+                corpus.write(doc.toJSON());
+            });
+            if(sampler != null){
+                for(DocIOWrapper doc: sampler.sample()){
+                    doc.setIndex(corpus.getCount());
+                    corpus.write(doc.toJSON());
+                }
+            }
+            numDocs = corpus.getCount();
+            if(filter != null) LogPrint.printNote("Number of rows filtered out: " + filter.getRejected(), 0);
+            JSONObject meta = new JSONObject();
+            meta.put("totalDocs", numDocs);
+            if(sampler != null) meta.put("sample", sampleMetadata());
+            corpus.put("metadata", meta);
+        }
+        catch (IOException e){
+            LogPrint.printNoteError("Error while streaming the CSV input.");
+            e.printStackTrace();
+            System.exit(1);
+        }
+        LogPrint.printCompleteStep();
+        LogPrint.printNote("Number of documents written to file: " + numDocs, 0);
+    }
+
+    /**
+     * Method detecting near-duplicate documents, and marking them or dropping them from the corpus.
+     */
+    private void DetectDuplicates(){
+        if(nearDuplicates == null) return;
+        numDuplicates = nearDuplicates.Detect(Docs, dropDuplicates);
+        numDocs = Docs.size();
+    }
+
+    /**
+     * Method describing the sample of rows, for the corpus metadata.
+     * @return The sampling parameters and sizes.
+     */
+    private JSONObject sampleMetadata(){
+        JSONObject sample = sampler.metadata();
+        sample.put("unit", "rows");
+        return sample;
     }
 
     /**
@@ -120,6 +271,8 @@ public class CSVInput {
         JSONArray corpus = new JSONArray();
         JSONObject meta = new JSONObject();
         meta.put("totalDocs", numDocs);
+        if(nearDuplicates != null) meta.put("nDuplicates", numDuplicates);
+        if(sampler != null) meta.put("sample", sampleMetadata());
         root.put("metadata", meta);
         for(Map.Entry<String, DocIOWrapper> entry: Docs.entrySet()){
             corpus.add(entry.getValue().toJSON());
@@ -0,0 +1,257 @@
+package P1_Input;
+
+import org.json.simple.JSONObject;
+
+import java.util.*;
+
+/**
+ * Class drawing a seeded random sample of the items (rows, files) read by an input module, in a single pass, so that
+ * a smaller representative corpus can be produced to quickly iterate on the later stages.
+ * <br>
+ * Two sampling methods are available:
+ * <br>- Bernoulli sampling, by fraction: each item is kept, or not, as soon as it is offered, with the given
+ * probability. Nothing is held in memory, and the sample size is only approximately the fraction of the population.
+ * <br>- Reservoir sampling, by size: each item is given a random key, and the items with the smallest keys are held
+ * in a reservoir of the sample size, returned once all items have been offered.
+ * <br>
+ * Items can be stratified (e.g. by the value of a document data field): with Bernoulli sampling each stratum is
+ * sampled at the same rate; with reservoir sampling the sample size is allocated to strata in proportion to their
+ * size (largest remainder), each stratum holding its own reservoir.
+ * <br>
+ * As the allocation depends on the final strata sizes, stratified reservoir sampling takes two passes over the items
+ * (see {@link #needsCounts()}): the items are first counted by stratum, then offered in the same order, each stratum's
+ * reservoir only holding its allocation, so at most the sample size is held in total. If the items are not counted
+ * first, each stratum holds up to the sample size (memory then grows with the number of strata), and the allocation
+ * is made once all items have been offered, giving the same sample.
+ * <br>
+ * Random keys are derived from the seed and the item's position, so the same input gives the same sample.
+ *
+ * @param <T> Type of the items sampled.
+ * @author P. Le Bras
+ * @version 2
+ */
+public class CorpusSampler<T> {
+
+    /** Sample size, 0 if sampling by fraction. */
+    private final long size;
+    /** Sampling fraction, used if the sample size is 0. */
+    private final double fraction;
+    /** Name of the field stratifying the sample, null if not stratified. */
+    private final String stratify;
+    /** Seed of the random keys. */
+    private final long seed;
+    /** Number of items offered. */
+    private long population = 0;
+    /** Number of items sampled. */
+    private long sampled = 0;
+    /** Number of items counted before being offered, 0 if not counted. */
+    private long counted = 0;
+    /** Sample size allocated to each stratum, by value of the stratifying field, null until known. */
+    private Map<String, Long> quotas = null;
+    /** Strata, by value of the stratifying field. */
+    private final Map<String, Stratum> strata = new TreeMap<>();
+
+    /**
+     * Constructor.
+     * @param size Sample size, 0 to sample by fraction.
+     * @param fraction Sampling fraction, between 0 and 1, used if the sample size is 0.
+     * @param stratify Name of the field stratifying the sample, null if not stratified.
+     * @param seed Seed of the random keys.
+     */
+    public CorpusSampler(long size, double fraction, String stratify, long seed){
+        this.size = size;
+        this.fraction = fraction;
+        this.stratify = stratify;
+        this.seed = seed;
+    }
+
+    /**
+     * Method checking if the items should be counted (see {@link #count(String)}) before being offered, so that the
+     * sample held in memory is bounded by the sample size: only needed for stratified reservoir sampling.
+     * @return True if the items should be counted first, false otherwise.
+     */
+    public boolean needsCounts(){
+        return size > 0 && stratify != null;
+    }
+
+    /**
+     * Method counting the next item, in a first pass over all the items, which are then offered in the same order.
+     * @param stratum Value of the stratifying field for the item (ignored if not stratified).
+     */
+    public void count(String stratum){
+        strata.computeIfAbsent(stratumName(stratum), k -> new Stratum()).counted++;
+        counted++;
+    }
+
+    /**
+     * Method offering the next item. With Bernoulli sampling, the item is either kept or left straight away; with
+     * reservoir sampling, it is held in its stratum's reservoir if its key is small enough, and possibly returned
+     * later by {@link #sample()}.
+     * @param item Item offered.
+     * @param stratum Value of the stratifying field for the item (ignored if not stratified).
+     * @return True if the item is kept straight away, false otherwise.
+     */
+    public boolean offer(T item, String stratum){
+        double key = key(population++);
+        String name = stratumName(stratum);
+        Stratum s = strata.computeIfAbsent(name, k -> new Stratum());
+        s.population++;
+        if(size == 0){
+            if(key >= fraction) return false;
+            s.sampled++;
+            sampled++;
+            return true;
+        }
+        if(counted > 0 && quotas == null) quotas = allocate(true);
+        // without counts, each stratum needs at most the sample size, whatever its final allocation
+        long capacity = quotas != null ? quotas.getOrDefault(name, 0L) : size;
+        if(capacity == 0) return false;
+        if(s.reservoir.size() < capacity){
+            s.reservoir.add(new Entry<>(population, key, item));
+        } else if(key < s.reservoir.peek().key){
+            s.reservoir.poll();
+            s.reservoir.add(new Entry<>(population, key, item));
+        }
+        return false;
+    }
+
+    /**
+     * Method completing a reservoir sample, once all items have been offered.
+     * @return The items sampled and held in reservoirs, in the order they were offered (none with Bernoulli sampling).
+     */
+    public List<T> sample(){
+        List<Entry<T>> res = new ArrayList<>();
+        if(size > 0){
+            Map<String, Long> allocation = quotas != null ? quotas : allocate(false);
+            for(Map.Entry<String, Stratum> s: strata.entrySet()){
+                List<Entry<T>> entries = new ArrayList<>(s.getValue().reservoir);
+                entries.sort(Comparator.comparingDouble(e -> e.key));
+                long quota = Math.min(allocation.getOrDefault(s.getKey(), 0L), entries.size());
+                List<Entry<T>> kept = entries.subList(0, Math.toIntExact(quota));
+                s.getValue().sampled = kept.size();
+                res.addAll(kept);
+                s.getValue().reservoir.clear();
+            }
+            sampled = res.size();
+            res.sort(Comparator.comparingLong(e -> e.position));
+        }
+        List<T> items = new ArrayList<>(res.size());
+        for(Entry<T> e: res) items.add(e.item);
+        return items;
+    }
+
+    /**
+     * Method allocating the sample size to strata in proportion to their size, by largest remainder.
+     * @param fromCounts True to use the strata sizes counted before offering the items, false to use the items offered.
+     * @return The sample size of each stratum, by value of the stratifying field.
+     */
+    private Map<String, Long> allocate(boolean fromCounts){
+        long total = fromCounts ? counted : population;
+        Map<String, Long> allocation = new HashMap<>();
+        List<Map.Entry<String, Stratum>> byRemainder = new ArrayList<>(strata.entrySet());
+        long allocated = 0;
+        long target = Math.min(size, total);
+        for(Map.Entry<String, Stratum> s: byRemainder){
+            long quota = target * s.getValue().size(fromCounts) / total;
+            allocation.put(s.getKey(), quota);
+            allocated += quota;
+        }
+        byRemainder.sort(Comparator.comparingLong((Map.Entry<String, Stratum> s) ->
+                target * s.getValue().size(fromCounts) % total).reversed());
+        for(int i = 0; allocated < target; i++, allocated++){
+            allocation.merge(byRemainder.get(i).getKey(), 1L, Long::sum);
+        }
+        return allocation;
+    }
+
+    /**
+     * Method getting the name of an item's stratum.
+     * @param stratum Value of the stratifying field for the item.
+     * @return The stratum name, "" if not stratified.
+     */
+    private String stratumName(String stratum){
+        return stratify == null || stratum == null ? "" : stratum;
+    }
+
+    /**
+     * Method describing the sample, to be saved in the corpus metadata.
+     * @return The sampling method and parameters, and the population and sample sizes (by stratum if stratified).
+     */
+    public JSONObject metadata(){
+        JSONObject meta = new JSONObject();
+        if(size > 0){
+            meta.put("method", "reservoir");
+            meta.put("size", size);
+        } else {
+            meta.put("method", "bernoulli");
+            meta.put("fraction", fraction);
+        }
+        meta.put("seed", seed);
+        meta.put("population", population);
+        meta.put("sampled", sampled);
+        if(stratify != null){
+            meta.put("stratify", stratify);
+            JSONObject strataMeta = new JSONObject();
+            for(Map.Entry<String, Stratum> s: strata.entrySet()){
+                JSONObject stratumMeta = new JSONObject();
+                stratumMeta.put("population", s.getValue().population);
+                stratumMeta.put("sampled", s.getValue().sampled);
+                strataMeta.put(s.getKey(), stratumMeta);
+            }
+            meta.put("strata", strataMeta);
+        }
+        return meta;
+    }
+
+    /**
+     * Method deriving the random key of an item from the seed and its position (SplitMix64).
+     * @param position Position of the item.
+     * @return The key, uniformly distributed between 0 (included) and 1 (excluded).
+     */
+    private double key(long position){
+        long z = seed + (position + 1) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        z = z ^ (z >>> 31);
+        return (z >>> 11) * 0x1.0p-53;
+    }
+
+    /**
+     * Class holding a stratum's counts and reservoir.
+     */
+    private class Stratum {
+        /** Number of items offered in the stratum. */
+        long population = 0;
+        /** Number of items counted in the stratum before being offered. */
+        long counted = 0;
+        /** Number of items sampled in the stratum. */
+        long sampled = 0;
+        /** Items with the smallest keys, the largest key at the head. */
+        final PriorityQueue<Entry<T>> reservoir = new PriorityQueue<>(Comparator.comparingDouble((Entry<T> e) -> e.key).reversed());
+
+        /**
+         * Method getting the size of the stratum.
+         * @param fromCounts True for the number of items counted, false for the number of items offered.
+         * @return The size of the stratum.
+         */
+        long size(boolean fromCounts){
+            return fromCounts ? counted : population;
+        }
+    }
+
+    /**
+     * Class holding an item in a reservoir, with its position and key.
+     * @param <T> Type of the item.
+     */
+    private static class Entry<T> {
+        final long position;
+        final double key;
+        final T item;
+
+        Entry(long position, double key, T item){
+            this.position = position;
+            this.key = key;
+            this.item = item;
+        }
+    }
+}
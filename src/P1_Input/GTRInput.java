@@ -3,34 +3,34 @@ package P1_Input;
 import P0_Project.InputModuleSpecs;
 import PX_Data.DocIOWrapper;
 import PX_Data.JSONIOWrapper;
+import PX_Data.ParallelCSVReader;
 import PY_Helper.LogPrint;
-import de.siegmar.fastcsv.reader.CsvParser;
-import de.siegmar.fastcsv.reader.CsvReader;
-import de.siegmar.fastcsv.reader.CsvRow;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 import org.w3c.dom.Document;
+import org.w3c.dom.Element;
 import org.w3c.dom.NodeList;
+import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.xpath.*;
-import java.io.File;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.net.URL;
-import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Class reading project ids (and other data) from a CSV input file, then proposes to fetch additional
  * data from Gateway to Research (GtR) to fill the corpus and save it as JSON file.
  *
  * @author T. Methven, A. Gharavi, P. Le Bras
- * @version 2
+ * @version 5
  */
 public class GTRInput {
 
@@ -63,9 +63,33 @@ public class GTRInput {
     /** List of reasons for missed retrieval from GtR. */
     private ConcurrentHashMap<String, String> MissingReasons = new ConcurrentHashMap<>();
     /** Number of successful retrievals. */
-    private int grantsProcessed = 0;
-    /** Flag for running the crawl in parallel. */
-    private final static boolean RUN_IN_PARALLEL = true;
+    private final AtomicInteger grantsProcessed = new AtomicInteger();
+    /** Values read from secondary XML documents, by URL and tag names, shared between the documents linking to them. */
+    private final ConcurrentHashMap<String, CompletableFuture<String>> secondaryData = new ConcurrentHashMap<>();
+    /** XML parser of each thread, parsers cannot be shared between threads but can be re-used. */
+    private final static ThreadLocal<DocumentBuilder> DOC_BUILDER = ThreadLocal.withInitial(() -> {
+        try {
+            return DocumentBuilderFactory.newInstance().newDocumentBuilder();
+        } catch (ParserConfigurationException e){
+            throw new IllegalStateException(e);
+        }
+    });
+    /** Base URL of the GtR API. */
+    private String apiURL;
+    /** Maximum number of requests in flight. */
+    private int crawlThreads;
+    /** Maximum number of requests in flight per host. */
+    private int hostConnections;
+    /** Number of retries of a failed request. */
+    private int retries;
+    /** Directory of the cache of fetched documents, null if not cached. */
+    private String cacheDirectory;
+    /** Flag for checking cached documents with the server before re-using them. */
+    private boolean revalidate;
+    /** Number of threads parsing the CSV file. */
+    private int threads;
+    /** Filters on the CSV columns, null if all rows are kept. */
+    private RowFilter filter;
 
     /**
      * Main method, reads the specification and launches the sub-methods in order.
@@ -103,7 +127,16 @@ public class GTRInput {
         xmlFields = inputSpecs.GTR_fields;
         PIDField = inputSpecs.GTR_PID;
         outputFile = inputSpecs.output;
+        apiURL = inputSpecs.GTR_API;
+        crawlThreads = inputSpecs.crawlThreads;
+        hostConnections = inputSpecs.CRAWL_hostConnections;
+        retries = inputSpecs.CRAWL_retries;
+        cacheDirectory = inputSpecs.CRAWL_cache ? inputSpecs.CRAWL_cacheDir : null;
+        revalidate = inputSpecs.CRAWL_revalidate;
+        threads = inputSpecs.threads;
+        if(inputSpecs.filters != null) filter = new RowFilter(inputSpecs.filters);
         LogPrint.printCompleteStep();
+        if(filter != null) LogPrint.printNote("Filtering rows: "+filter);
     }
 
     /**
@@ -111,24 +144,21 @@ public class GTRInput {
      * Automatically reads the Project ID column.
      */
     private void LoadCSVFile(){
-        File file = new File(sourceFile);
-        CsvReader csvReader = new CsvReader();
-        csvReader.setContainsHeader(true);
-
-        int rowNum = 0;
         LogPrint.printNewStep("Reading CSV: "+sourceFile, 0);
 
-        try(CsvParser csvParser = csvReader.parse(file, StandardCharsets.UTF_8)){
-            CsvRow row;
-            while((row = csvParser.nextRow()) != null && rowNum < PROCESS_MAX_ROWS){
-                DocIOWrapper doc = new DocIOWrapper(Integer.toString(rowNum), rowNum);
+        try {
+            ParallelCSVReader.Read(sourceFile, threads, (row, rowNum) -> {
+                if(rowNum >= PROCESS_MAX_ROWS) return;
+                if(rowNum == 0 && filter != null) filter.checkColumns(row.getColumns());
+                // filtered out before any document is created, and indices kept contiguous
+                if(filter != null && !filter.accept(row::getField)) return;
+                DocIOWrapper doc = new DocIOWrapper(Integer.toString(rowNum), Docs.size());
                 for(Map.Entry<String, String> entry: csvFields.entrySet()){
                     doc.addData(entry.getKey(), row.getField(entry.getValue()));
                 }
                 doc.addData("PID", row.getField(PIDField));
                 Docs.put(doc.getId(), doc);
-                rowNum++;
-            }
+            });
         }
         catch (IOException e){
             LogPrint.printNoteError("Error while reading the CSV input.");
@@ -139,181 +169,186 @@ public class GTRInput {
             numDocs = Docs.size();
             LogPrint.printCompleteStep();
             LogPrint.printNote("Number of documents recovered from file: " + numDocs);
+            if(filter != null) LogPrint.printNote("Number of rows filtered out: " + filter.getRejected());
         }
     }
 
     /**
      * Method crawling GtR to fetch additional data for each documents.
+     * Projects are fetched asynchronously, failed requests being retried by the fetcher, and secondary documents
+     * (organisations, persons) shared by several projects are only fetched once.
      */
     private void CrawlGtR(){
         if(!xmlFields.isEmpty()) {
             LogPrint.printNewStep("Fetching additional data from GtR", 0);
             MissingRows = new ConcurrentHashMap<>();
             MissingReasons = new ConcurrentHashMap<>();
-            if (RUN_IN_PARALLEL) {
-                Docs.entrySet().parallelStream().forEach(this::getAdditionalData);
-            } else {
-                Docs.entrySet().forEach(this::getAdditionalData);
+            try(HTTPFetcher fetcher = new HTTPFetcher("crawl", crawlThreads, hostConnections, retries, cacheDirectory, revalidate)){
+                CompletableFuture.allOf(Docs.entrySet().stream()
+                        .map(entry -> getAdditionalData(fetcher, entry))
+                        .toArray(CompletableFuture[]::new)).join();
+                LogPrint.printNote(secondaryData.size()+" distinct secondary documents read", 1);
+                if(fetcher.getCacheHits() > 0) LogPrint.printNote(fetcher.getCacheHits()+" documents re-used from the cache", 1);
             }
-            if (MissingRows.size() > 0) {
-                retryFailed();
+            if(MissingRows.size() > 0) {
+                LogPrint.printNote(grantsProcessed+" successful retrievals", 1);
+                LogPrint.printNoteError(MissingRows.size()+" failed retrieval after "+retries+" retries");
+                for(Map.Entry<String,String> e: MissingReasons.entrySet()){
+                    LogPrint.printNoteError(e.getKey(), 0);
+                    LogPrint.printNoteError(e.getValue(), 1);
+                }
+                System.exit(1);
             } else {
                 LogPrint.printCompleteStep();
             }
         }
     }
 
-    /**
-     * Method to retry fetching data from GtR, launches 3 retries maximum.
-     */
-    private void retryFailed(){
-        int retries = 0;
-        while(MissingRows.size() > 0 && retries < 3) {
-            retries++;
-            LogPrint.printNewStep(MissingRows.size()+" failed retrieval. Retrying ("+retries+"/3)", 1);
-            ConcurrentHashMap<String, DocIOWrapper> prevMissingRows = MissingRows;
-            MissingRows = new ConcurrentHashMap<>();
-            MissingReasons = new ConcurrentHashMap<>();
-            if(RUN_IN_PARALLEL) { prevMissingRows.entrySet().parallelStream().forEach(this::getAdditionalData); }
-            else { prevMissingRows.entrySet().forEach(this::getAdditionalData); }
-        }
-        if(MissingRows.size() > 0) {
-            LogPrint.printNote(grantsProcessed+" successful retrievals", 1);
-            LogPrint.printNoteError(MissingRows.size()+" failed retrieval after 3 tries");
-            for(Map.Entry<String,String> e: MissingReasons.entrySet()){
-                LogPrint.printNoteError(e.getKey(), 0);
-                LogPrint.printNoteError(e.getValue(), 1);
-            }
-            System.exit(1);
-        }
-        else {
-            LogPrint.printCompleteStep();
-        }
-    }
-
     /**
      * Method getting additional data for a specific grant/document.
-     * If the data fetch fails. Adds this document to the list of missing fetches for retries.
+     * If the data fetch fails, adds this document to the list of missing fetches.
+     * @param fetcher XML documents fetcher.
      * @param entry Document to get additional data for.
+     * @return Future completed once the document is processed, successfully or not.
      */
-    private void getAdditionalData(Map.Entry<String, DocIOWrapper> entry){
+    private CompletableFuture<Void> getAdditionalData(HTTPFetcher fetcher, Map.Entry<String, DocIOWrapper> entry){
         String id = entry.getKey();
         DocIOWrapper doc = entry.getValue();
-        String url = "https://gtr.ukri.org/gtr/api/projects/" + doc.getData("PID") +"/?format=xml";
-        try{
-            // Get XML from GtR
-            DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-            DocumentBuilder db = dbf.newDocumentBuilder();
-            Document overviewXML = db.parse(new URL(url).openStream());
-            overviewXML.getDocumentElement().normalize();
-            getAdditionalDataFromXML(doc, overviewXML);
-            grantsProcessed++;
-        } catch (IOException | ParserConfigurationException | SAXException | XPathExpressionException e){
-            MissingRows.put(id, doc);
-            MissingReasons.put(id, e.toString());
-        }
+        String url = apiURL + "projects/" + doc.getData("PID") +"/?format=xml";
+        return fetcher.fetch(url)
+                .thenCompose(xml -> getAdditionalDataFromXML(fetcher, doc, parseXML(xml)))
+                .thenRun(grantsProcessed::incrementAndGet)
+                .exceptionally(e -> {
+                    MissingRows.put(id, doc);
+                    MissingReasons.put(id, (e instanceof CompletionException && e.getCause() != null ? e.getCause() : e).toString());
+                    return null;
+                });
     }
 
     /**
      * Method exploring a given XML document to fill a (corpus) document's data entries using the XML fields from
      * the module's specifications.
+     * @param fetcher XML documents fetcher, for secondary documents.
      * @param doc Corpus document to fill with data.
      * @param xml XML document to explore.
-     * @throws ParserConfigurationException If error while connecting to GtR.
-     * @throws IOException If error while connecting to GtR.
-     * @throws SAXException If error while connecting to GtR.
-     * @throws XPathExpressionException If error while exploring the XML document.
+     * @return Future completed once all data entries are filled, including those from secondary documents.
      */
-    private void getAdditionalDataFromXML(DocIOWrapper doc, Document xml) throws ParserConfigurationException, IOException, SAXException, XPathExpressionException {
+    private CompletableFuture<Void> getAdditionalDataFromXML(HTTPFetcher fetcher, DocIOWrapper doc, Document xml){
+        // values are only added to the document once all of them are known, from a single thread
+        Map<String, CompletableFuture<String>> values = new HashMap<>();
         for(Map.Entry<String, String> entry: xmlFields.entrySet()){
             String key = entry.getKey();
             String val = entry.getValue();
             switch (val){
                 case "Abstract":
-                    doc.addData(key, readNode(xml.getElementsByTagName("ns2:abstractText")));
+                    values.put(key, CompletableFuture.completedFuture(readNode(xml.getElementsByTagName("ns2:abstractText"))));
                     break;
                 case "TechAbstract":
-                    doc.addData(key, readNode(xml.getElementsByTagName("ns2:techAbstractText")));
+                    values.put(key, CompletableFuture.completedFuture(readNode(xml.getElementsByTagName("ns2:techAbstractText"))));
                     break;
                 case "Impact":
-                    doc.addData(key, readNode(xml.getElementsByTagName("ns2:potentialImpact")));
+                    values.put(key, CompletableFuture.completedFuture(readNode(xml.getElementsByTagName("ns2:potentialImpact"))));
                     break;
                 case "Title":
-                    doc.addData(key, readNode(xml.getElementsByTagName("ns2:title")));
+                    values.put(key, CompletableFuture.completedFuture(readNode(xml.getElementsByTagName("ns2:title"))));
                     break;
                 case "Funder":
-                    doc.addData(key, readNode(xml.getElementsByTagName("ns2:leadFunder")));
+                    values.put(key, CompletableFuture.completedFuture(readNode(xml.getElementsByTagName("ns2:leadFunder"))));
                     break;
                 case "Institution":
-                    doc.addData(key, getSecondaryXml(xml, "LEAD_ORG", new String[]{"ns2:name"}));
+                    values.put(key, getSecondaryXml(fetcher, xml, "LEAD_ORG", new String[]{"ns2:name"}));
                     break;
                 case "Investigator":
-                    doc.addData(key, getSecondaryXml(xml, "PI_PER", new String[]{"ns2:firstName","ns2:surname"}));
+                    values.put(key, getSecondaryXml(fetcher, xml, "PI_PER", new String[]{"ns2:firstName","ns2:surname"}));
                     break;
                 case "StartDate":
-                    doc.addData(key, readNodeAttribute(getLinkNodes(xml, "FUND"), "ns1:start"));
+                    values.put(key, CompletableFuture.completedFuture(readNodeAttribute(getLinkNode(xml, "FUND"), "ns1:start")));
                     break;
                 case "EndDate":
-                    doc.addData(key, readNodeAttribute(getLinkNodes(xml, "FUND"), "ns1:end"));
+                    values.put(key, CompletableFuture.completedFuture(readNodeAttribute(getLinkNode(xml, "FUND"), "ns1:end")));
                     break;
                 default:
                     break;
             }
         }
+        return CompletableFuture.allOf(values.values().toArray(new CompletableFuture<?>[0]))
+                .thenRun(() -> values.forEach((key, value) -> doc.addData(key, value.join())));
     }
 
     /**
      * Method finding a link in the main XML document to a secondary XML document and retrieving data from there too.
+     * Secondary documents are fetched once, and their values shared between all the documents linking to them.
+     * A failed fetch is not kept, so that later documents linking to the same document fetch it again.
+     * @param fetcher XML documents fetcher.
      * @param origXml Main XML document.
      * @param rel Relationship value to find the link.
      * @param tagNames List of tag names in the secondary XML document to get the value of.
-     * @return The concatenated string of all the values found.
-     * @throws ParserConfigurationException If error while connecting to GtR.
-     * @throws IOException If error while connecting to GtR.
-     * @throws SAXException If error while connecting to GtR.
-     * @throws XPathExpressionException If error while exploring the XML document.
+     * @return The future concatenated string of all the values found.
      */
-    private String getSecondaryXml(Document origXml, String rel, String[] tagNames) throws ParserConfigurationException, IOException, SAXException, XPathExpressionException {
-        StringBuilder res = new StringBuilder();
+    private CompletableFuture<String> getSecondaryXml(HTTPFetcher fetcher, Document origXml, String rel, String[] tagNames){
         // get the link from original xml doc
-        NodeList nl = getLinkNodes(origXml, rel);
-        if(nl.getLength() > 0){
-            String url = readNodeAttribute(nl, "ns1=href");
-            // with the url fetch the secondary xml and grab the tags' values
-            DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-            DocumentBuilder db = dbf.newDocumentBuilder();
-            Document xml = db.parse(new URL(url).openStream());
-            xml.getDocumentElement().normalize();
+        Element link = getLinkNode(origXml, rel);
+        if(link == null) return CompletableFuture.completedFuture("");
+        String url = readNodeAttribute(link, "ns1:href");
+        // with the url fetch the secondary xml and grab the tags' values
+        String key = url + " " + String.join(" ", tagNames);
+        CompletableFuture<String> values = secondaryData.computeIfAbsent(key, k -> fetcher.fetch(url).thenApply(data -> {
+            Document xml = parseXML(data);
+            StringBuilder res = new StringBuilder();
             for(String s: tagNames){
                 if(res.length() > 0){ res.append(" "); }
                 res.append(readNode(xml.getElementsByTagName(s)));
             }
+            return res.toString();
+        }));
+        // removed outside computeIfAbsent, as the future may already have failed when created
+        values.whenComplete((value, error) -> {
+            if(error != null) secondaryData.remove(key, values);
+        });
+        return values;
+    }
+
+    /**
+     * Method parsing an XML document, with the current thread's parser.
+     * @param data XML content.
+     * @return The XML document.
+     * @throws CompletionException If the content cannot be parsed.
+     */
+    private static Document parseXML(byte[] data){
+        try {
+            // parsed from bytes, so that the encoding is read from the XML declaration
+            Document xml = DOC_BUILDER.get().parse(new InputSource(new ByteArrayInputStream(data)));
+            xml.getDocumentElement().normalize();
+            return xml;
+        } catch (IOException | SAXException e){
+            throw new CompletionException(e);
         }
-        return res.toString();
     }
 
     /**
      * Method finding a link node in the XML document with the specified relationship value.
+     * Links are found by scanning the link elements, the document being parsed without namespaces.
      * @param xml XML document to explore.
      * @param rel Relationship value to filter link nodes.
-     * @return The list of XML link nodes corresponding to the relationship value.
-     * @throws XPathExpressionException If error while exploring the XML document.
+     * @return The first XML link node corresponding to the relationship value, or null if there is none.
      */
-    private NodeList getLinkNodes(Document xml, String rel) throws XPathExpressionException {
-        XPathFactory xPathfactory = XPathFactory.newInstance();
-        XPath xpath = xPathfactory.newXPath();
-        XPathExpression expr = xpath.compile(String.format("//ns1:link[@ns1:rel=\"%s\"]", rel));
-        return (NodeList) expr.evaluate(xml, XPathConstants.NODESET);
+    private static Element getLinkNode(Document xml, String rel){
+        NodeList links = xml.getElementsByTagName("ns1:link");
+        for(int i = 0; i < links.getLength(); i++){
+            Element link = (Element) links.item(i);
+            if(rel.equals(link.getAttribute("ns1:rel"))) return link;
+        }
+        return null;
     }
 
     /**
      * Method reading an attribute's value from an XML node. Returns "" by default.
-     * @param nl List of nodes to get the attribute from.
+     * @param node Node to get the attribute from, can be null.
      * @param attr Attribute's name.
-     * @return Attribute's value, or "" if nl is empty.
+     * @return Attribute's value, or "" if node is null or does not have the attribute.
      */
-    private String readNodeAttribute(NodeList nl, String attr){
-        if(nl.getLength() > 0){ return nl.item(0).getAttributes().getNamedItem(attr).getNodeValue(); }
+    private static String readNodeAttribute(Element node, String attr){
+        if(node != null){ return node.getAttribute(attr); }
         else { return ""; }
     }
 
@@ -3,29 +3,29 @@ package P1_Input;
 import P0_Project.InputModuleSpecs;
 import PX_Data.DocIOWrapper;
 import PX_Data.JSONIOWrapper;
+import PX_Data.ParallelCSVReader;
 import PY_Helper.LogPrint;
-import de.siegmar.fastcsv.reader.CsvParser;
-import de.siegmar.fastcsv.reader.CsvReader;
-import de.siegmar.fastcsv.reader.CsvRow;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 
-import java.io.File;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Class reading URLs (and other data) from a CSV input file, then fetches HTML documents
  * to fill the corpus and save it as JSON file.
  *
  * @author P. Le Bras
- * @version 1
+ * @version 3
  */
 public class HTMLInput {
 
@@ -56,9 +56,19 @@ public class HTMLInput {
     /** List of reasons for missed retrieval. */
     private ConcurrentHashMap<String, String> MissingReasons = new ConcurrentHashMap<>();
     /** Number of successful retrievals. */
-    private int pagesProcessed = 0;
-    /** Flag for running the crawl in parallel. */
-    private final static boolean RUN_IN_PARALLEL = true;
+    private final AtomicInteger pagesProcessed = new AtomicInteger();
+    /** Maximum number of requests in flight. */
+    private int crawlThreads;
+    /** Maximum number of requests in flight per host. */
+    private int hostConnections;
+    /** Number of retries of a failed request. */
+    private int retries;
+    /** Directory of the cache of fetched pages. */
+    private String cacheDirectory;
+    /** Flag for checking cached pages with the server before re-using them. */
+    private boolean revalidate;
+    /** Number of threads parsing the CSV file. */
+    private int threads;
 
     /**
      * Main method, reads the specification and launches the sub-methods in order.
@@ -96,6 +106,12 @@ public class HTMLInput {
         urlField = inputSpecs.HTML_URL;
         domSelector = inputSpecs.HTML_selector;
         outputFile = inputSpecs.output;
+        crawlThreads = inputSpecs.crawlThreads;
+        hostConnections = inputSpecs.CRAWL_hostConnections;
+        retries = inputSpecs.CRAWL_retries;
+        cacheDirectory = inputSpecs.CRAWL_cache ? inputSpecs.CRAWL_cacheDir : null;
+        revalidate = inputSpecs.CRAWL_revalidate;
+        threads = inputSpecs.threads;
         LogPrint.printCompleteStep();
     }
 
@@ -104,24 +120,18 @@ public class HTMLInput {
      * Automatically reads the Project ID column.
      */
     private void LoadCSVFile(){
-        File file = new File(sourceFile);
-        CsvReader csvReader = new CsvReader();
-        csvReader.setContainsHeader(true);
-
-        int rowNum = 0;
         LogPrint.printNewStep("Reading CSV: "+sourceFile, 0);
 
-        try(CsvParser csvParser = csvReader.parse(file, StandardCharsets.UTF_8)){
-            CsvRow row;
-            while((row = csvParser.nextRow()) != null && rowNum < PROCESS_MAX_ROWS){
+        try {
+            ParallelCSVReader.Read(sourceFile, threads, (row, rowNum) -> {
+                if(rowNum >= PROCESS_MAX_ROWS) return;
                 DocIOWrapper doc = new DocIOWrapper(Integer.toString(rowNum), rowNum);
                 for(Map.Entry<String, String> entry: csvFields.entrySet()){
                     doc.addData(entry.getKey(), row.getField(entry.getValue()));
                 }
                 doc.addData("url", row.getField(urlField));
                 Docs.put(doc.getId(), doc);
-                rowNum++;
-            }
+            });
         }
         catch (IOException e){
             LogPrint.printNoteError("Error while reading the CSV input.");
@@ -137,18 +147,26 @@ public class HTMLInput {
 
     /**
      * Method lauching the HTML fecthing process for all documents.
+     * Pages are fetched asynchronously, failed requests being retried by the fetcher.
      */
     private void CrawlHTML(){
         LogPrint.printNewStep("Fetching text from HTML", 0);
         MissingRows = new ConcurrentHashMap<>();
         MissingReasons = new ConcurrentHashMap<>();
-        if(RUN_IN_PARALLEL){
-            Docs.entrySet().parallelStream().forEach(this::getHTML);
-        } else {
-            Docs.entrySet().forEach(this::getHTML);
+        try(HTTPFetcher fetcher = new HTTPFetcher("crawl", crawlThreads, hostConnections, retries, cacheDirectory, revalidate)){
+            CompletableFuture.allOf(Docs.entrySet().stream()
+                    .map(entry -> getHTML(fetcher, entry))
+                    .toArray(CompletableFuture[]::new)).join();
+            if(fetcher.getCacheHits() > 0) LogPrint.printNote(fetcher.getCacheHits()+" pages re-used from the cache", 1);
         }
-        if(MissingRows.size() > 0){
-            retryFailed();
+        if(MissingRows.size() > 0) {
+            LogPrint.printNote(pagesProcessed+" successful retrievals", 1);
+            LogPrint.printNoteError(MissingRows.size()+" failed retrieval after "+retries+" retries");
+            for(Map.Entry<String,String> e: MissingReasons.entrySet()){
+                LogPrint.printNoteError(e.getKey(), 0);
+                LogPrint.printNoteError(e.getValue(), 1);
+            }
+            System.exit(1);
         } else {
             LogPrint.printCompleteStep();
         }
@@ -156,50 +174,33 @@ public class HTMLInput {
 
     /**
      * Method fetching the HTML for a document's url, parsing the result to only keep the text under the DOM selector.
+     * @param fetcher Page fetcher.
      * @param entry The document to fetch the text for.
+     * @return Future completed once the document is processed, successfully or not.
      */
-    private void getHTML(Map.Entry<String, DocIOWrapper> entry){
+    private CompletableFuture<Void> getHTML(HTTPFetcher fetcher, Map.Entry<String, DocIOWrapper> entry){
         String id = entry.getKey();
         DocIOWrapper doc = entry.getValue();
         String url = doc.getData("url");
-        try{
-            Document HTMLDoc = Jsoup.connect(url).get();
-            Element HTMLBody = HTMLDoc.selectFirst(domSelector);
-            String text = HTMLBody.text();
-            doc.addData("text",text);
-            pagesProcessed++;
-        } catch (IOException e) {
-            MissingRows.put(id, doc);
-            MissingReasons.put(id, e.toString());
-        }
-    }
-
-    /**
-     * Method to retry fetching HTML is failed, retries up to 3 times.
-     */
-    private void retryFailed(){
-        int retries = 0;
-        while(MissingRows.size() > 0 && retries < 3) {
-            retries++;
-            LogPrint.printNewStep(MissingRows.size()+" failed retrieval. Retrying ("+retries+"/3)", 1);
-            ConcurrentHashMap<String, DocIOWrapper> prevMissingRows = MissingRows;
-            MissingRows = new ConcurrentHashMap<>();
-            MissingReasons = new ConcurrentHashMap<>();
-            if(RUN_IN_PARALLEL) { prevMissingRows.entrySet().parallelStream().forEach(this::getHTML); }
-            else { prevMissingRows.entrySet().forEach(this::getHTML); }
-        }
-        if(MissingRows.size() > 0) {
-            LogPrint.printNote(pagesProcessed+" successful retrievals", 1);
-            LogPrint.printNoteError(MissingRows.size()+" failed retrieval after 3 tries");
-            for(Map.Entry<String,String> e: MissingReasons.entrySet()){
-                LogPrint.printNoteError(e.getKey(), 0);
-                LogPrint.printNoteError(e.getValue(), 1);
-            }
-            System.exit(1);
-        }
-        else {
-            LogPrint.printCompleteStep();
-        }
+        return fetcher.fetch(url)
+                .thenAccept(html -> {
+                    Document HTMLDoc;
+                    try {
+                        // charset left for Jsoup to detect (BOM, <meta charset>, then HTTP default)
+                        HTMLDoc = Jsoup.parse(new ByteArrayInputStream(html), null, url);
+                    } catch (IOException e){
+                        throw new CompletionException(e);
+                    }
+                    Element HTMLBody = HTMLDoc.selectFirst(domSelector);
+                    if(HTMLBody == null) throw new IllegalStateException("No element matching "+domSelector+" in "+url);
+                    doc.addData("text", HTMLBody.text());
+                    pagesProcessed.incrementAndGet();
+                })
+                .exceptionally(e -> {
+                    MissingRows.put(id, doc);
+                    MissingReasons.put(id, (e instanceof CompletionException && e.getCause() != null ? e.getCause() : e).toString());
+                    return null;
+                });
     }
 
     /**
@@ -0,0 +1,337 @@
+package P1_Input;
+
+import PY_Helper.LogPrint;
+import PY_Helper.WorkerPool;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+import java.io.*;
+import java.math.BigInteger;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Base64;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Class fetching web pages asynchronously (with the JDK {@link HttpClient}), for the crawling input modules.
+ * <br>
+ * The number of requests in flight is capped, in total and per host. Failed requests (network errors, HTTP 429 and
+ * 5xx statuses) are retried with an exponential backoff, other HTTP errors fail straight away.
+ * <br>
+ * Pages are returned as raw bytes, so that their parser can detect the charset from the content (e.g. an HTML
+ * {@code <meta charset>} or an XML declaration) rather than relying on the HTTP headers only.
+ * <br>
+ * Responses can be saved in an on-disk cache, one JSON file per URL with the response's ETag and its content
+ * (Base64 encoded): {@code {"url": ..., "etag": ..., "data": ...}}. Cached URLs are not fetched again, so re-runs can
+ * be done offline, unless revalidation is set, in which case the cached response is only re-used if the server
+ * confirms its ETag.
+ *
+ * @author P. Le Bras
+ * @version 2
+ */
+public class HTTPFetcher implements Closeable {
+
+    /** Timeout of a request, in seconds. */
+    private final static int TIMEOUT = 30;
+    /** Delay before the first retry, in milliseconds, doubled with each retry. */
+    private final static long BACKOFF = 1000;
+    /** Maximum delay before a retry, in milliseconds. */
+    private final static long MAX_BACKOFF = 60000;
+    /** Maximum doubling of the delay before a retry, past which it is over {@link #MAX_BACKOFF} anyway. */
+    private final static int MAX_BACKOFF_SHIFT = 16;
+    /** User agent sent with requests. */
+    private final static String USER_AGENT = "Mozilla/5.0 (compatible; Topic_Mapping_Pipeline)";
+
+    /** Threads sending requests and processing responses. */
+    private final ExecutorService executor;
+    /** HTTP client. */
+    private final HttpClient client;
+    /** Cap on the number of requests in flight. */
+    private final Limiter connections;
+    /** Caps on the number of requests in flight, per host. */
+    private final ConcurrentHashMap<String, Limiter> hosts = new ConcurrentHashMap<>();
+    /** Maximum number of requests in flight per host. */
+    private final int hostConnections;
+    /** Number of retries of a failed request. */
+    private final int retries;
+    /** Cache directory, null if responses are not cached. */
+    private final File cacheDirectory;
+    /** Flag for checking cached responses with the server (by ETag) before re-using them. */
+    private final boolean revalidate;
+    /** Number of responses re-used from the cache. */
+    private final AtomicInteger cacheHits = new AtomicInteger();
+
+    /**
+     * Constructor.
+     * @param name Name of the fetcher's threads.
+     * @param connections Maximum number of requests in flight.
+     * @param hostConnections Maximum number of requests in flight per host.
+     * @param retries Number of retries of a failed request.
+     * @param cacheDirectory Cache directory name, null to not cache responses.
+     * @param revalidate Flag for checking cached responses with the server before re-using them.
+     */
+    public HTTPFetcher(String name, int connections, int hostConnections, int retries, String cacheDirectory, boolean revalidate){
+        executor = WorkerPool.Create(name, connections);
+        client = HttpClient.newBuilder()
+                .executor(executor)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(Duration.ofSeconds(TIMEOUT))
+                .build();
+        this.connections = new Limiter(connections);
+        this.hostConnections = hostConnections;
+        this.retries = retries;
+        this.cacheDirectory = cacheDirectory != null ? new File(cacheDirectory) : null;
+        if(this.cacheDirectory != null) this.cacheDirectory.mkdirs();
+        this.revalidate = revalidate;
+    }
+
+    /**
+     * Method fetching a page, from the cache if possible.
+     * @param url Page URL.
+     * @return Future page content, failing with an {@link IOException} if the page cannot be fetched.
+     */
+    public CompletableFuture<byte[]> fetch(String url){
+        URI uri;
+        try {
+            uri = URI.create(url);
+        } catch (IllegalArgumentException | NullPointerException e){
+            return CompletableFuture.failedFuture(new IOException("Malformed URL: "+url, e));
+        }
+        JSONObject cached = readCache(url);
+        if(cached != null && !revalidate){
+            cacheHits.incrementAndGet();
+            return CompletableFuture.completedFuture(cachedData(cached));
+        }
+        return attempt(uri, cached, 0);
+    }
+
+    /**
+     * Method sending a request, retrying it if it fails.
+     * @param uri Page URI.
+     * @param cached Cached response, null if none.
+     * @param attempt Number of the attempt, from 0.
+     * @return Future page content.
+     */
+    private CompletableFuture<byte[]> attempt(URI uri, JSONObject cached, int attempt){
+        HttpRequest.Builder builder = HttpRequest.newBuilder(uri)
+                .timeout(Duration.ofSeconds(TIMEOUT))
+                .header("User-Agent", USER_AGENT)
+                .GET();
+        if(cached != null && cached.get("etag") != null) builder.header("If-None-Match", (String) cached.get("etag"));
+        HttpRequest request = builder.build();
+        Limiter host = hosts.computeIfAbsent(String.valueOf(uri.getHost()), h -> new Limiter(hostConnections));
+        return host.submit(() -> connections.submit(() -> client.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray())))
+                .handle((response, error) -> {
+                    if(error != null){
+                        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                        if(cause instanceof IOException && attempt < retries){
+                            return retry(uri, cached, attempt, 0);
+                        }
+                        return CompletableFuture.<byte[]>failedFuture(cause);
+                    }
+                    int status = response.statusCode();
+                    if(status == 304 && cached != null){
+                        cacheHits.incrementAndGet();
+                        return CompletableFuture.completedFuture(cachedData(cached));
+                    }
+                    if(status >= 200 && status < 300){
+                        writeCache(uri.toString(), response.headers().firstValue("ETag").orElse(null), response.body());
+                        return CompletableFuture.completedFuture(response.body());
+                    }
+                    if((status == 429 || status >= 500) && attempt < retries){
+                        long retryAfter = response.headers().firstValue("Retry-After").map(HTTPFetcher::parseSeconds).orElse(0L);
+                        return retry(uri, cached, attempt, retryAfter);
+                    }
+                    return CompletableFuture.<byte[]>failedFuture(new IOException("HTTP error fetching URL. Status="+status+", URL="+uri));
+                })
+                .thenCompose(future -> future);
+    }
+
+    /**
+     * Method retrying a request after a delay, doubled with each attempt.
+     * @param uri Page URI.
+     * @param cached Cached response, null if none.
+     * @param attempt Number of the failed attempt.
+     * @param minDelay Minimum delay requested by the server, in milliseconds.
+     * @return Future page content.
+     */
+    private CompletableFuture<byte[]> retry(URI uri, JSONObject cached, int attempt, long minDelay){
+        // the shift is capped, as large shifts overflow (and wrap around) rather than saturate
+        long delay = Math.max(minDelay, Math.min(MAX_BACKOFF, BACKOFF << Math.min(attempt, MAX_BACKOFF_SHIFT)));
+        // jitter, so that requests failing together are not all retried together
+        delay += ThreadLocalRandom.current().nextLong(delay / 4 + 1);
+        Executor delayed = CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS, executor);
+        return CompletableFuture.supplyAsync(() -> null, delayed).thenCompose(v -> attempt(uri, cached, attempt + 1));
+    }
+
+    /**
+     * Method parsing a Retry-After header given in seconds (HTTP dates are ignored).
+     * @param value Header value.
+     * @return The delay, in milliseconds.
+     */
+    private static long parseSeconds(String value){
+        try {
+            return Long.parseLong(value.trim()) * 1000;
+        } catch (NumberFormatException e){
+            return 0;
+        }
+    }
+
+    /**
+     * Method reading the cached response for a URL.
+     * @param url Page URL.
+     * @return The cached response, or null if the URL is not in the cache.
+     */
+    private JSONObject readCache(String url){
+        if(cacheDirectory == null) return null;
+        File entry = cacheFile(url);
+        if(!entry.exists()) return null;
+        try(Reader reader = new InputStreamReader(new FileInputStream(entry), StandardCharsets.UTF_8)){
+            JSONObject cached = (JSONObject) new JSONParser().parse(reader);
+            // hash collisions are practically impossible, but the URL is checked anyway
+            // entries without raw content (saved as decoded text by earlier versions) are fetched again
+            return url.equals(cached.get("url")) && cached.get("data") instanceof String ? cached : null;
+        } catch (IOException | ParseException | ClassCastException e){
+            // unreadable entry (e.g. interrupted write), fetched again
+            return null;
+        }
+    }
+
+    /**
+     * Method decoding the content of a cached response.
+     * @param cached Cached response.
+     * @return The response content.
+     */
+    private static byte[] cachedData(JSONObject cached){
+        return Base64.getDecoder().decode((String) cached.get("data"));
+    }
+
+    /**
+     * Method saving a response in the cache.
+     * @param url Page URL.
+     * @param etag Response ETag, null if none.
+     * @param data Response content.
+     */
+    private void writeCache(String url, String etag, byte[] data){
+        if(cacheDirectory == null) return;
+        JSONObject cached = new JSONObject();
+        cached.put("url", url);
+        cached.put("etag", etag);
+        cached.put("data", Base64.getEncoder().encodeToString(data));
+        File entry = cacheFile(url);
+        File temp = new File(cacheDirectory, entry.getName() + "." + Thread.currentThread().getId() + ".tmp");
+        // written to a temporary file first, so an interrupted run does not leave a truncated entry
+        try {
+            try(Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8))){
+                cached.writeJSONString(writer);
+            }
+            Files.move(temp.toPath(), entry.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e){
+            LogPrint.printNoteError("Error while caching "+url);
+            temp.delete();
+        }
+    }
+
+    /**
+     * Method getting the cache file of a URL.
+     * @param url Page URL.
+     * @return The cache file.
+     */
+    private File cacheFile(String url){
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(url.getBytes(StandardCharsets.UTF_8));
+            return new File(cacheDirectory, String.format("%064x", new BigInteger(1, hash)) + ".json");
+        } catch (NoSuchAlgorithmException e){
+            // SHA-256 is required on every Java platform
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Getter method for the number of responses re-used from the cache so far.
+     * @return The number of cache hits.
+     */
+    public int getCacheHits(){
+        return cacheHits.get();
+    }
+
+    /**
+     * Method stopping the fetcher's threads.
+     */
+    @Override
+    public void close(){
+        executor.shutdownNow();
+    }
+
+    /**
+     * Class capping the number of asynchronous tasks in flight, further tasks wait for a running task to complete.
+     */
+    private class Limiter {
+        /** Maximum number of tasks in flight. */
+        private final int permits;
+        /** Number of tasks in flight. */
+        private int active = 0;
+        /** Tasks waiting to start. */
+        private final ArrayDeque<Runnable> waiting = new ArrayDeque<>();
+
+        Limiter(int permits){
+            this.permits = permits;
+        }
+
+        /**
+         * Method starting a task now if under the cap, or once a running task completes.
+         * @param task Task, starting the asynchronous work.
+         * @param <T> Result type.
+         * @return Future result of the task.
+         */
+        <T> CompletableFuture<T> submit(Supplier<CompletableFuture<T>> task){
+            CompletableFuture<T> res = new CompletableFuture<>();
+            Runnable start = () -> {
+                CompletableFuture<T> future;
+                try {
+                    future = task.get();
+                } catch (RuntimeException e){
+                    future = CompletableFuture.failedFuture(e);
+                }
+                future.whenComplete((value, error) -> {
+                    release();
+                    if(error != null) res.completeExceptionally(error);
+                    else res.complete(value);
+                });
+            };
+            boolean now;
+            synchronized(this){
+                now = active < permits;
+                if(now) active++;
+                else waiting.add(start);
+            }
+            if(now) start.run();
+            return res;
+        }
+
+        /**
+         * Method freeing a task's place, starting the next waiting task if any.
+         */
+        private void release(){
+            Runnable next;
+            synchronized(this){
+                next = waiting.poll();
+                if(next == null) active--;
+            }
+            // started on another thread, so that tasks completing straight away do not chain on the stack
+            if(next != null) executor.execute(next);
+        }
+    }
+}
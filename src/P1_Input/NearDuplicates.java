@@ -0,0 +1,255 @@
+package P1_Input;
+
+import PX_Data.DocIOWrapper;
+import PY_Helper.LogPrint;
+import PY_Helper.WorkerPool;
+
+import java.util.*;
+import java.util.stream.IntStream;
+
+/**
+ * Class detecting near-duplicate documents (e.g. re-submitted abstracts, duplicated report pages) in a corpus, with
+ * MinHash signatures and locality-sensitive hashing (LSH).
+ * <br>
+ * Each document's text is cut into shingles (sequences of consecutive words), and summarised by a signature: the
+ * minimum hash of its shingles under a number of hash functions. The fraction of equal values in two signatures
+ * estimates the Jaccard similarity of the documents' shingles. Signatures are cut into bands, and only documents
+ * sharing a whole band are compared, so the cost stays near-linear in the number of documents.
+ * <br>
+ * Documents are processed in index order: a document is a duplicate of the first document it is similar enough to,
+ * which is never itself a duplicate.
+ *
+ * @author P. Le Bras
+ * @version 1
+ */
+public class NearDuplicates {
+
+    /** Number of hash functions, i.e. length of the signatures. */
+    private final static int NUM_HASHES = 128;
+    /** Minimum probability for two documents with a similarity at the threshold to be compared. */
+    private final static double RECALL = 0.95;
+    /** Seeds of the hash functions, fixed so that results do not change between runs. */
+    private final static long[] SEEDS = new long[NUM_HASHES];
+    static {
+        for(int i = 0; i < NUM_HASHES; i++) SEEDS[i] = mix(0x9E3779B97F4A7C15L * (i + 1));
+    }
+
+    /** Document data fields holding the text compared. */
+    private final String[] fields;
+    /** Minimum estimated similarity for a document to be a duplicate, between 0 and 1. */
+    private final double threshold;
+    /** Number of words per shingle. */
+    private final int shingleSize;
+    /** Number of threads computing signatures. */
+    private final int threads;
+    /** Number of signature values per band. */
+    private final int rows;
+    /** Number of bands. */
+    private final int bands;
+
+    /**
+     * Constructor, choosing the banding of signatures from the threshold: as many values per band as possible (fewer
+     * comparisons), while documents with a similarity at the threshold are still compared with a high probability.
+     * @param fields Document data fields holding the text compared.
+     * @param threshold Minimum estimated similarity for a document to be a duplicate, between 0 and 1.
+     * @param shingleSize Number of words per shingle.
+     * @param threads Number of threads computing signatures.
+     */
+    public NearDuplicates(String[] fields, double threshold, int shingleSize, int threads){
+        this.fields = fields;
+        this.threshold = threshold;
+        this.shingleSize = shingleSize;
+        this.threads = threads;
+        int r = 1;
+        while(r < NUM_HASHES && recall(threshold, r + 1, NUM_HASHES / (r + 1)) >= RECALL) r++;
+        rows = r;
+        bands = NUM_HASHES / r;
+    }
+
+    /**
+     * Method computing the probability for two documents to share at least one band.
+     * @param similarity Similarity of the documents.
+     * @param rows Number of signature values per band.
+     * @param bands Number of bands.
+     * @return The probability.
+     */
+    private static double recall(double similarity, int rows, int bands){
+        return 1 - Math.pow(1 - Math.pow(similarity, rows), bands);
+    }
+
+    /**
+     * Method detecting the near-duplicate documents of a corpus, and either marking them as duplicates (see
+     * {@link DocIOWrapper#setDuplicateOf(String)}), or dropping them from the corpus, in which case the remaining
+     * documents are re-indexed to keep indices contiguous. Marks from a previous detection (e.g. on documents kept
+     * by an incremental update) are cleared first.
+     * @param docs Documents of the corpus, by id.
+     * @param drop True to drop the duplicates, false to mark them.
+     * @return The number of duplicates found.
+     */
+    public int Detect(Map<String, DocIOWrapper> docs, boolean drop){
+        LogPrint.printNewStep("Detecting near-duplicate documents", 0);
+        DocIOWrapper[] ordered = docs.values().toArray(new DocIOWrapper[0]);
+        Arrays.sort(ordered, Comparator.comparingInt(DocIOWrapper::getIndex));
+        for(DocIOWrapper doc: ordered) doc.setDuplicateOf(null);
+        long[][] signatures = new long[ordered.length][];
+        WorkerPool.Run("input", threads, () -> IntStream.range(0, ordered.length).parallel()
+                .forEach(i -> signatures[i] = signature(ordered[i])));
+
+        // buckets of documents kept so far, by band and band values
+        Map<Long, List<Integer>> buckets = new HashMap<>();
+        boolean[] duplicate = new boolean[ordered.length];
+        int found = 0;
+        for(int i = 0; i < ordered.length; i++){
+            // documents without any word are left to the lemmatise module
+            if(signatures[i] == null) continue;
+            long[] keys = new long[bands];
+            int original = -1;
+            for(int b = 0; b < bands && original < 0; b++){
+                keys[b] = bandKey(signatures[i], b);
+                for(int j: buckets.getOrDefault(keys[b], Collections.emptyList())){
+                    if(similarity(signatures[i], signatures[j]) >= threshold){
+                        original = j;
+                        break;
+                    }
+                }
+            }
+            if(original >= 0){
+                duplicate[i] = true;
+                found++;
+                if(!drop) ordered[i].setDuplicateOf(ordered[original].getId());
+                continue;
+            }
+            for(int b = 0; b < bands; b++){
+                buckets.computeIfAbsent(keys[b], k -> new ArrayList<>(1)).add(i);
+            }
+        }
+        if(drop && found > 0){
+            int index = 0;
+            for(int i = 0; i < ordered.length; i++){
+                if(duplicate[i]) docs.remove(ordered[i].getId());
+                else ordered[i].setIndex(index++);
+            }
+        }
+        LogPrint.printCompleteStep();
+        LogPrint.printNote("Near-duplicate documents "+(drop ? "dropped" : "marked")+": "+found, 0);
+        return found;
+    }
+
+    /**
+     * Method computing the MinHash signature of a document's text.
+     * @param doc Document.
+     * @return The signature, or null if the text has no words.
+     */
+    private long[] signature(DocIOWrapper doc){
+        long[] shingles = shingles(doc);
+        if(shingles.length == 0) return null;
+        long[] signature = new long[NUM_HASHES];
+        Arrays.fill(signature, Long.MAX_VALUE);
+        for(long shingle: shingles){
+            for(int h = 0; h < NUM_HASHES; h++){
+                long value = mix(shingle ^ SEEDS[h]);
+                if(value < signature[h]) signature[h] = value;
+            }
+        }
+        return signature;
+    }
+
+    /**
+     * Method hashing the shingles of a document's text: words are sequences of letters and digits, compared
+     * regardless of case. Texts shorter than a shingle make a single shingle.
+     * @param doc Document.
+     * @return The distinct shingle hashes.
+     */
+    private long[] shingles(DocIOWrapper doc){
+        // hashes of the last words read, as a ring buffer
+        long[] window = new long[shingleSize];
+        int words = 0;
+        long[] shingles = new long[64];
+        int count = 0;
+        for(String field: fields){
+            String text = doc.getDocData().get(field);
+            if(text == null) continue;
+            long word = 0;
+            boolean inWord = false;
+            for(int i = 0; i <= text.length(); i++){
+                char c = i < text.length() ? text.charAt(i) : ' ';
+                if(Character.isLetterOrDigit(c)){
+                    // FNV-1a
+                    word = ((inWord ? word : 0xcbf29ce484222325L) ^ Character.toLowerCase(c)) * 0x100000001b3L;
+                    inWord = true;
+                } else if(inWord){
+                    window[words % shingleSize] = word;
+                    words++;
+                    inWord = false;
+                    if(words >= shingleSize){
+                        if(count == shingles.length) shingles = Arrays.copyOf(shingles, count * 2);
+                        shingles[count++] = shingle(window, words);
+                    }
+                }
+            }
+        }
+        if(words > 0 && words < shingleSize){
+            shingles[count++] = shingle(window, words);
+        }
+        shingles = Arrays.copyOf(shingles, count);
+        Arrays.sort(shingles);
+        int distinct = 0;
+        for(int i = 0; i < count; i++){
+            if(i == 0 || shingles[i] != shingles[i - 1]) shingles[distinct++] = shingles[i];
+        }
+        return Arrays.copyOf(shingles, distinct);
+    }
+
+    /**
+     * Method hashing the shingle made of the last words read.
+     * @param window Hashes of the last words read, as a ring buffer.
+     * @param words Number of words read so far.
+     * @return The shingle hash.
+     */
+    private long shingle(long[] window, int words){
+        long hash = 0;
+        for(int w = Math.max(0, words - shingleSize); w < words; w++){
+            hash = mix(hash * 31 + window[w % shingleSize]);
+        }
+        return hash;
+    }
+
+    /**
+     * Method hashing the values of a signature's band, together with the band number.
+     * @param signature Signature.
+     * @param band Band number.
+     * @return The band key.
+     */
+    private long bandKey(long[] signature, int band){
+        long key = band;
+        for(int r = band * rows; r < (band + 1) * rows; r++){
+            key = mix(key * 31 + signature[r]);
+        }
+        return key;
+    }
+
+    /**
+     * Method estimating the similarity of two documents, as the fraction of equal values in their signatures.
+     * @param a First signature.
+     * @param b Second signature.
+     * @return The estimated similarity, between 0 and 1.
+     */
+    private static double similarity(long[] a, long[] b){
+        int equal = 0;
+        for(int h = 0; h < NUM_HASHES; h++){
+            if(a[h] == b[h]) equal++;
+        }
+        return (double) equal / NUM_HASHES;
+    }
+
+    /**
+     * Method mixing the bits of a value (SplitMix64 finaliser), used as hash function.
+     * @param z Value.
+     * @return The mixed value.
+     */
+    private static long mix(long z){
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
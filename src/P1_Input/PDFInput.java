@@ -5,24 +5,25 @@ import PX_Data.DocIOWrapper;
 import PX_Data.JSONIOWrapper;
 import PY_Helper.LogPrint;
 import PY_Helper.Pair;
+import PY_Helper.WorkerPool;
+import org.apache.pdfbox.io.MemoryUsageSetting;
 import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
 import org.apache.pdfbox.text.PDFTextStripper;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.io.Writer;
+import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * Class reading a PDF directory input and writing it as a corpus JSON file.
  *
  * @author T. Methven, P. Le Bras, A. Gharavi
- * @version 2
+ * @version 5
  */
 public class PDFInput {
 
@@ -37,12 +38,14 @@ public class PDFInput {
      * also saves the file's directory name as 'dataset' field in the corpus document data. */
     private final List<Pair<File,String>> fileList = new ArrayList<>();
 
-    /**
-     * Flag for parsing PDFs in parallel.
-     * WARNING: Running this is parallel will alter the final visualisation due to reordering of processing!
-     * For now, this is being set to serial! As of 25/06/2018 it is quick enough that a fix is not forthcoming.
-     */
-    private final static boolean RUN_IN_PARALLEL = false;
+    /** Number of threads parsing files. */
+    private int threads;
+    /** Memory budget for parsing files, in MB. */
+    private int memoryBudget;
+    /** Memory budget left, in MB: a file is only loaded once its estimated memory use is available. */
+    private Semaphore memory;
+    /** Estimated memory use while parsing a file, in MB, per MB of file size. */
+    private final static long MEMORY_PER_FILE_SIZE = 4;
 
     // project specs
     /** PDF source directory name. */
@@ -51,6 +54,26 @@ public class PDFInput {
     private String outputFile;
     /** Number of words limit before splitting a document. */
     private int wordsPerDoc;
+    /** Flag for updating the existing corpus, only parsing new or changed files. */
+    private boolean incremental;
+    /** Near-duplicate detection, null if not used. */
+    private NearDuplicates nearDuplicates = null;
+    /** Flag for dropping near-duplicate documents from the corpus, rather than marking them. */
+    private boolean dropDuplicates;
+    /** Number of near-duplicate documents found. */
+    private int numDuplicates = 0;
+    /** Random sample of the files, null if all files are parsed. */
+    private CorpusSampler<Pair<File,String>> sampler = null;
+    /** Number of files to sample, 0 if sampling by fraction. */
+    private long sampleSize;
+    /** Fraction of files to sample, 1 if not sampling. */
+    private double sampleFraction;
+    /** Field stratifying the sample ('dataset'), null if not stratified. */
+    private String sampleStratify;
+    /** Seed of the sample. */
+    private long sampleSeed;
+    /** Cache of extracted text, null if not used. */
+    private TextCache cache = null;
 
     /**
      * Main method, reads the specification and launches the sub-methods in order.
@@ -66,7 +89,9 @@ public class PDFInput {
         PDFInput startClass = new PDFInput();
         startClass.ProcessArguments(inputSpecs);
         startClass.FindPDFs();
+        startClass.SampleFiles();
         startClass.ParsePDFs();
+        startClass.DetectDuplicates();
         startClass.OutputJSON();
 
         long timeTaken = (System.currentTimeMillis() - startTime) / (long)1000;
@@ -84,6 +109,23 @@ public class PDFInput {
         sourceDirectory = inputSpecs.source;
         outputFile = inputSpecs.output;
         wordsPerDoc = inputSpecs.wordsPerDoc;
+        threads = inputSpecs.threads;
+        incremental = inputSpecs.incremental;
+        if(!inputSpecs.dedup.equals("none")){
+            nearDuplicates = new NearDuplicates(inputSpecs.dedup_fields, inputSpecs.dedup_threshold,
+                    inputSpecs.dedup_shingleSize, threads);
+            dropDuplicates = inputSpecs.dedup.equals("drop");
+        }
+        sampleSize = inputSpecs.sample_size;
+        sampleFraction = inputSpecs.sample_fraction;
+        sampleStratify = inputSpecs.sample_stratify;
+        sampleSeed = inputSpecs.sample_seed;
+        memoryBudget = inputSpecs.memory;
+        // fair, so that files are admitted in the order they were submitted
+        memory = new Semaphore(memoryBudget, true);
+        if(inputSpecs.PDF_cacheSize > 0){
+            cache = new TextCache(inputSpecs.PDF_cacheDir, inputSpecs.PDF_cacheSize << 20);
+        }
         LogPrint.printCompleteStep();
     }
 
@@ -125,196 +167,337 @@ public class PDFInput {
         }
     }
 
+    /**
+     * Method drawing a random sample of the files found (see {@link CorpusSampler}), so that only the sampled files
+     * are parsed. A sampling fraction is turned into a number of files, as the number of files found is known.
+     */
+    private void SampleFiles(){
+        if(sampleSize == 0 && sampleFraction >= 1) return;
+        long size = sampleSize > 0 ? sampleSize : Math.max(1, Math.round(sampleFraction * fileList.size()));
+        LogPrint.printNewStep("Sampling "+size+" files"+(sampleStratify != null ? ", stratified by dataset" : ""), 0);
+        sampler = new CorpusSampler<>(size, 1, sampleStratify, sampleSeed);
+        if(sampler.needsCounts()){
+            for(Pair<File,String> file: fileList){
+                sampler.count(file.getRight());
+            }
+        }
+        for(Pair<File,String> file: fileList){
+            sampler.offer(file, file.getRight());
+        }
+        List<Pair<File,String>> sampled = sampler.sample();
+        fileList.clear();
+        fileList.addAll(sampled);
+        LogPrint.printCompleteStep();
+        LogPrint.printNote("Sampled "+fileList.size()+" PDF files.", 0);
+    }
+
     /**
      * Method launching the PDF parsing process.
+     * Files are parsed on a dedicated pool of threads, largest files first, and each file is only loaded once its
+     * estimated memory use fits in the memory budget. Documents are then numbered in the order files were found,
+     * so the corpus does not depend on the order files complete in.
      */
     private void ParsePDFs(){
         LogPrint.printNewStep("Parsing PDF files:", 0);
-        if(RUN_IN_PARALLEL){
-            if(wordsPerDoc > 0)
-                fileList.parallelStream().forEach(this::ParsePDFDivide);
-            else
-                fileList.parallelStream().forEach(this::parsePDF);
-        } else{
-            if(wordsPerDoc > 0)
-                fileList.forEach(this::ParsePDFDivide);
-            else
-                fileList.forEach(this::parsePDF);
+        LogPrint.printCompleteStep();
+        SourceManifest manifest = incremental ? new SourceManifest(outputFile, Collections.singletonMap("wordsPerDoc", wordsPerDoc)) : null;
+        // submit largest files first, so the tail of the run is made of small files
+        List<Pair<File,String>> bySize = new ArrayList<>(fileList);
+        bySize.sort(Comparator.comparingLong((Pair<File,String> pdf) -> pdf.getLeft().length()).reversed());
+        Map<File, Future<List<DocIOWrapper>>> results = new HashMap<>();
+        ExecutorService pool = WorkerPool.Create("input", threads);
+        try {
+            for(Pair<File,String> pdf: bySize){
+                // unchanged files are not parsed again, their documents are kept from the previous corpus
+                if(manifest != null && manifest.keep(sourceKey(pdf.getLeft()), pdf.getLeft())) continue;
+                results.put(pdf.getLeft(), pool.submit(() -> wordsPerDoc > 0 ? ParsePDFDivide(pdf) : parsePDF(pdf)));
+            }
+            for(Pair<File,String> pdf: fileList){
+                if(!results.containsKey(pdf.getLeft())) continue;
+                List<DocIOWrapper> docs = results.get(pdf.getLeft()).get();
+                LogPrint.printNote("Processed: "+pdf.getLeft().getName()+
+                        (wordsPerDoc > 0 ? ", number of sub-documents recovered: "+docs.size() : ""), 1);
+                if(manifest != null){
+                    manifest.add(sourceKey(pdf.getLeft()), docs);
+                    continue;
+                }
+                for(DocIOWrapper doc: docs){
+                    doc.setId(Integer.toString(docCount));
+                    doc.setIndex(docCount);
+                    Docs.put(doc.getId(), doc);
+                    docCount++;
+                }
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            LogPrint.printNoteError("Error while parsing PDF.");
+            e.printStackTrace();
+            System.exit(1);
+        } finally {
+            pool.shutdownNow();
         }
+        if(manifest != null) Docs.putAll(manifest.complete());
         numDocs = Docs.size();
         LogPrint.printNote("Number of documents parsed: " + numDocs, 0);
+        if(cache != null) LogPrint.printNote("Number of PDF files read from the cache: " + cache.getHits(), 0);
+    }
+
+    /**
+     * Method getting the key of a PDF file in the source manifest: its path relative to the source directory.
+     * @param file PDF file.
+     * @return The source key.
+     */
+    private String sourceKey(File file){
+        return new File(sourceDirectory).toURI().relativize(file.toURI()).getPath();
     }
 
     /**
      * Method parsing a PDF file WITHOUT dividing it into chunks.
      * @param pdf PDF file to parse, paired with it's dataset value.
+     * @return The document parsed, numbered later.
+     * @throws IOException If the file cannot be read or parsed.
      */
-    private void parsePDF(Pair<File,String> pdf){
+    private List<DocIOWrapper> parsePDF(Pair<File,String> pdf) throws IOException {
         File file = pdf.getLeft();
         String dataset = pdf.getRight();
-        try {
-            String rootName = file.getName();
-            LogPrint.printNewStep("Processing: "+rootName, 1);
-            rootName = rootName.substring(0, rootName.lastIndexOf('.'));
-            // load file
-            PDDocument document = PDDocument.load(file);
-            String text = "";
-            // parse text
-            for (int pageNumber = 1 ; pageNumber < document.getNumberOfPages(); pageNumber++) {
-                PDFTextStripper s = new PDFTextStripper();
-                s.setStartPage(pageNumber);
-                s.setEndPage(pageNumber);
-                String[] contentsOfPage = s.getText(document).split("\\s+");
-                for(String word : contentsOfPage) {
-                    text += word + " ";
-                }
+        String rootName = file.getName();
+        rootName = rootName.substring(0, rootName.lastIndexOf('.'));
+        // parse text, page by page, into a single string of space separated words
+        StringBuilder text = new StringBuilder();
+        extractPages(file, (page, pageNumber) -> {
+            int[] word = {0, 0};
+            while(nextWord(page, word)){
+                text.append(page, word[0], word[1]).append(' ');
             }
-            document.close();
-            // create doc entry
-            DocIOWrapper newDoc = new DocIOWrapper(Integer.toString(docCount), docCount);
-            newDoc.addData("fileName", rootName);
-            newDoc.addData("text", text.trim());
-            newDoc.addData("dataset", dataset);
-            Docs.put(newDoc.getId(), newDoc);
-            // increase doc count for next entry
-            docCount++;
-        } catch (Exception e) {
-            LogPrint.printNoteError("Error while parsing PDF.");
-            e.printStackTrace();
-            System.exit(1);
-        } finally {
-            LogPrint.printCompleteStep();
-        }
+        });
+        // create doc entry
+        DocIOWrapper newDoc = new DocIOWrapper(null, -1);
+        newDoc.addData("fileName", rootName);
+        newDoc.addData("text", text.toString().trim());
+        newDoc.addData("dataset", dataset);
+        List<DocIOWrapper> docs = new ArrayList<>();
+        docs.add(newDoc);
+        return docs;
     }
 
     /**
      * Method parsing a PDF file AND dividing it into chunks.
+     * The text is processed page by page as it is extracted, and each chunk keeps track of the pages it spans.
      * @param pdf PDF file to parse, paired with it's dataset value.
+     * @return The documents parsed, numbered later.
+     * @throws IOException If the file cannot be read or parsed.
      */
-    private void ParsePDFDivide(Pair<File,String> pdf) {
+    private List<DocIOWrapper> ParsePDFDivide(Pair<File,String> pdf) throws IOException {
         File file = pdf.getLeft();
         String dataset = pdf.getRight();
+        String rootName = file.getName();
+        PDFDivider divider = new PDFDivider(rootName.substring(0, rootName.indexOf('.')), dataset);
+        extractPages(file, divider::addPage);
+        // add the final part of the PDF
+        if(divider.numWords > 0) divider.addSubDoc();
+        return divider.docs;
+    }
+
+    /**
+     * Method extracting the text of a PDF file, page by page, from the cache if the file was already parsed.
+     * Otherwise, the file is loaded once its share of the memory budget is available, and PDFBox buffers beyond that
+     * share go to a temporary file.
+     * @param file PDF file.
+     * @param handler Processing of each page's text.
+     * @throws IOException If the file cannot be read or parsed.
+     */
+    private void extractPages(File file, PageHandler handler) throws IOException {
+        String key = cache != null ? cache.key(file) : null;
+        List<String> pages = key != null ? cache.get(key) : null;
+        if(pages != null){
+            for(int i = 0; i < pages.size(); i++) handler.page(pages.get(i), i + 1);
+            return;
+        }
+        List<String> extracted = new ArrayList<>();
+        int share = memoryShare(file);
+        memory.acquireUninterruptibly(share);
+        try(PDDocument document = PDDocument.load(file, MemoryUsageSetting.setupMixed((long) share << 20))){
+            new PageStripper((page, pageNumber) -> {
+                if(key != null) extracted.add(page.toString());
+                handler.page(page, pageNumber);
+            }).strip(document);
+        } finally {
+            memory.release(share);
+        }
+        if(key != null) cache.put(key, extracted);
+    }
+
+    /**
+     * Method estimating the memory used while parsing a PDF file, capped to the memory budget.
+     * @param file PDF file.
+     * @return Estimated memory use, in MB.
+     */
+    private int memoryShare(File file){
+        long size = Math.max(1, (file.length() >> 20) * MEMORY_PER_FILE_SIZE);
+        return (int) Math.min(size, memoryBudget);
+    }
+
+    /**
+     * Class dividing a PDF text into documents of a given number of words, as its pages are extracted.
+     */
+    private class PDFDivider {
+        /** File name, without extension. */
+        final String rootName;
+        /** Dataset value. */
+        final String dataset;
+        /** Documents created, numbered later. */
+        final List<DocIOWrapper> docs = new ArrayList<>();
+        /** Text of the current sub-document, reused between sub-documents. */
+        final StringBuilder text = new StringBuilder();
+        /** Number of words in the current sub-document. */
+        int numWords = 0;
+        /** Number of sub-documents created. */
         int subDocCount = 0;
-        try {
-            String rootName = file.getName();
-            LogPrint.printNewStep("Processing: "+rootName, 1);
-            rootName = rootName.substring(0, rootName.indexOf('.'));
-            // load file
-            PDDocument document = PDDocument.load(file);
-            // initialise subtext string, corpus doc object and counters
-            String newDocString = "";
-            int numWordsInString = 0;
-            subDocCount = 0;
-            // parse the document and embed page number information in the text
-            String text = addPageNumebr(document);
-            // Explore the document word by word and
-            for (String word : text.split("\\s+")) {
-                if (numWordsInString == wordsPerDoc && wordsPerDoc > 0) {
+        /** First page of the current sub-document. */
+        int firstPage = 0;
+        /** Last page of the current sub-document. */
+        int lastPage = 0;
+
+        PDFDivider(String rootName, String dataset){
+            this.rootName = rootName;
+            this.dataset = dataset;
+        }
+
+        /**
+         * Method adding a page's words to the current sub-document, creating a new sub-document when the word limit
+         * is reached. Single character words are skipped.
+         * @param page Page text.
+         * @param pageNumber Page number.
+         */
+        void addPage(CharSequence page, int pageNumber){
+            int[] word = {0, 0};
+            while(nextWord(page, word)){
+                if(numWords == wordsPerDoc){
                     // create a new corpus documents when the word limit is reached
-                    DocIOWrapper newDoc = new DocIOWrapper(Integer.toString(docCount), docCount);
-                    newDoc.addData("originalFileName", rootName);
-                    newDoc.addData("splitNumber", String.format("%03d", subDocCount));
-                    newDoc.addData("dataset", dataset);
-                    newDoc.addData("fileName", rootName + "_" + String.format("%03d", subDocCount));
-                    long startPos = (subDocCount * wordsPerDoc);
-                    newDoc.addData("wordRange", startPos + " - " + (startPos + numWordsInString));
-                    newDoc.addData("pageRange", String.valueOf(returnPageNumbers(newDocString)));
-                    newDoc.addData("text", removePageNumber(newDocString.trim()).trim());
-                    Docs.put(newDoc.getId(), newDoc);
-                    docCount++;
-                    // reset counters and substring
-                    numWordsInString = 0;
-                    newDocString = "";
-                    subDocCount++;
+                    addSubDoc();
                 }
-                if (word.length() > 1) {
-                    newDocString += word + " ";
-                    numWordsInString++;
+                if(word[1] - word[0] > 1){
+                    if(numWords == 0) firstPage = pageNumber;
+                    lastPage = pageNumber;
+                    text.append(page, word[0], word[1]).append(' ');
+                    numWords++;
                 }
             }
-            if(numWordsInString > 0){
-                // add the final part of the PDF
-                DocIOWrapper newDoc = new DocIOWrapper(Integer.toString(docCount), docCount);
-                newDoc.addData("originalFileName", rootName);
-                newDoc.addData("splitNumber", String.format("%03d", subDocCount));
-                newDoc.addData("dataset", dataset);
-                newDoc.addData("fileName", rootName + "_" + String.format("%03d", subDocCount));
-                long startPos = ((subDocCount) * wordsPerDoc);
-                newDoc.addData("wordRange", startPos + " - " + (startPos + numWordsInString));
-                newDoc.addData("pageRange", String.valueOf(returnPageNumbers(newDocString)));
-                newDoc.addData("text", removePageNumber(newDocString.trim()).trim());
-                Docs.put(newDoc.getId(), newDoc);
-                docCount++;
-            }
-            document.close();
-        } catch (Exception e) {
-            LogPrint.printNoteError("Error while parsing PDF.");
-            e.printStackTrace();
-            System.exit(1);
-        } finally {
-            LogPrint.printCompleteStep();
-            LogPrint.printNote("Number of sub-documents recovered: " + subDocCount+1, 1);
+        }
+
+        /**
+         * Method creating a corpus document from the current sub-document, and resetting it.
+         */
+        void addSubDoc(){
+            DocIOWrapper newDoc = new DocIOWrapper(null, -1);
+            String split = String.format("%03d", subDocCount);
+            newDoc.addData("originalFileName", rootName);
+            newDoc.addData("splitNumber", split);
+            newDoc.addData("dataset", dataset);
+            newDoc.addData("fileName", rootName + "_" + split);
+            long startPos = ((long) subDocCount * wordsPerDoc);
+            newDoc.addData("wordRange", startPos + " - " + (startPos + numWords));
+            List<Integer> pages = new ArrayList<>();
+            for(int p = firstPage; p <= lastPage; p++) pages.add(p);
+            newDoc.addData("pageRange", String.valueOf(pages));
+            newDoc.addData("text", text.toString().trim());
+            docs.add(newDoc);
+            // reset counters and text
+            numWords = 0;
+            text.setLength(0);
+            subDocCount++;
         }
     }
 
     /**
-     * Method parsing a PDF document page by page and inserting page numbers info ([PAGENUMBER_...)
-     * in the text String to later save the page data in the JSON corpus file.
-     * @param document PDF document to parse.
-     * @return PDF text String with inserted page numbers.
-     * @throws IOException If there is an error while parsing the document.
+     * Method finding the next word (sequence of non white space characters) in a text, white space characters
+     * are the same as for the regular expression "\\s".
+     * @param text Text to search.
+     * @param word Start (inclusive) and end (exclusive) of the previous word, updated with the next word's.
+     * @return True if a word was found, false if the end of the text was reached.
      */
-    private String addPageNumebr(PDDocument document) throws IOException {
-        int numberOfPages = document.getNumberOfPages();
-        StringBuilder text = new StringBuilder();
-        for (int pageNumber = 1 ; pageNumber < numberOfPages; pageNumber++) {
-            PDFTextStripper s = new PDFTextStripper();
-            s.setStartPage(pageNumber);
-            s.setEndPage(pageNumber);
-            String[] contentsOfPage = s.getText(document).split("\\s+");
-            text.append("[PAGENUMBER_").append(pageNumber).append(" ");
-            for(String word : contentsOfPage) {
-                text.append(word).append(" ");
-            }
-        }
-        return text.toString();
+    private static boolean nextWord(CharSequence text, int[] word){
+        int i = word[1];
+        int length = text.length();
+        while(i < length && isSpace(text.charAt(i))) i++;
+        if(i == length) return false;
+        word[0] = i;
+        while(i < length && !isSpace(text.charAt(i))) i++;
+        word[1] = i;
+        return true;
     }
 
     /**
-     * Method returning the page range of a PDF text String (inserted with addPageNumber).
-     * @param text Text to check for page range.
-     * @return The page range.
+     * Method checking if a character is a white space character, as for the regular expression "\\s".
+     * @param c Character to check.
+     * @return True if the character is a white space.
      */
-    private List<Integer> returnPageNumbers(String text){
+    private static boolean isSpace(char c){
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
 
-        List<Integer> pagesRanges = new ArrayList<Integer>();
-        // add pagenumbers
-        for(String word : text.split("\\s+")) {
-            if(word.contains("[PAGENUMBER_")){
-                pagesRanges.add(Integer.valueOf(word.substring(12)));
-            }
-        }
+    /**
+     * Interface for processing the text of a PDF page.
+     */
+    private interface PageHandler {
+        /**
+         * Method processing a page's text.
+         * @param page Page text, only valid during the call.
+         * @param pageNumber Page number.
+         */
+        void page(CharSequence page, int pageNumber);
+    }
 
-        if(!(text.split(" ")[0].contains("[PAGENUMBER_")) && (!pagesRanges.isEmpty()))
-            pagesRanges.add(pagesRanges.get(0) -1 );
+    /**
+     * Class extracting the text of a PDF document in a single pass, handing it over page by page.
+     */
+    private static class PageStripper extends PDFTextStripper {
+        /** Text of the current page, reused between pages. */
+        private final StringBuilder pageText = new StringBuilder();
+        /** Processing of each page's text. */
+        private final PageHandler handler;
+
+        PageStripper(PageHandler handler) throws IOException {
+            super();
+            this.handler = handler;
+        }
 
-        Collections.sort(pagesRanges);
+        /**
+         * Method extracting the document's text.
+         * @param document PDF document to parse.
+         * @throws IOException If there is an error while parsing the document.
+         */
+        void strip(PDDocument document) throws IOException {
+            writeText(document, new Writer() {
+                @Override
+                public void write(char[] cbuf, int off, int len){
+                    pageText.append(cbuf, off, len);
+                }
+                @Override
+                public void write(String str, int off, int len){
+                    pageText.append(str, off, off + len);
+                }
+                @Override
+                public void flush(){}
+                @Override
+                public void close(){}
+            });
+        }
 
-        return pagesRanges;
+        @Override
+        protected void endPage(PDPage page) throws IOException {
+            super.endPage(page);
+            handler.page(pageText, getCurrentPageNo());
+            pageText.setLength(0);
+        }
     }
 
     /**
-     * Method removing the page number information (inserted with addPageNumber) from a PDF text String.
-     * @param text Text to remove the page number information from.
-     * @return Cleaned text.
+     * Method detecting near-duplicate documents, and marking them or dropping them from the corpus.
      */
-    private String removePageNumber(String text){
-        String outtext = "";
-        for(String word : text.split("\\s+")) {
-            if(!(word.contentEquals("[PAGENUMBER_")))
-                outtext += word + " ";
-        }
-        return outtext;
+    private void DetectDuplicates(){
+        if(nearDuplicates == null) return;
+        numDuplicates = nearDuplicates.Detect(Docs, dropDuplicates);
+        numDocs = Docs.size();
     }
 
     /**
@@ -325,6 +508,13 @@ public class PDFInput {
         JSONArray corpus = new JSONArray();
         JSONObject meta = new JSONObject();
         meta.put("totalDocs", numDocs);
+        if(nearDuplicates != null) meta.put("nDuplicates", numDuplicates);
+        if(sampler != null){
+            JSONObject sample = sampler.metadata();
+            sample.put("unit", "files");
+            if(sampleSize == 0) sample.put("fraction", sampleFraction);
+            meta.put("sample", sample);
+        }
         root.put("metadata", meta);
         for(Map.Entry<String, DocIOWrapper> entry: Docs.entrySet()){
             corpus.add(entry.getValue().toJSON());
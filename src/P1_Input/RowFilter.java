@@ -0,0 +1,204 @@
+package P1_Input;
+
+import PY_Helper.LogPrint;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Class filtering the rows of a CSV source on the values of its columns, so that rows left out are dropped as soon as
+ * they are parsed, before any document is created.
+ * <br>
+ * Filters are given as a JSON object, by column name, and a row is kept if it passes all filters:
+ * <br>- a value, for an equality: {@code "Funder": "EPSRC"};
+ * <br>- a list of values, for a set membership: {@code "Status": ["Active", "Closed"]};
+ * <br>- a numeric range, bounds included, either optional: {@code "AwardPounds": {"min": 10000, "max": 500000}};
+ * <br>- a date range, bounds included, either optional, with the column's date format (defaults to 'yyyy-MM-dd'),
+ * also used for the bounds: {@code "StartDate": {"from": "01/01/2015", "to": "31/12/2019", "format": "dd/MM/yyyy"}}.
+ * <br>
+ * Rows with a missing value, or a value which cannot be read as a number or date for a range, are left out.
+ *
+ * @author P. Le Bras
+ * @version 2
+ */
+public class RowFilter {
+
+    /** Conditions on the column values, by column name. */
+    private final Map<String, Predicate<String>> conditions = new LinkedHashMap<>();
+    /** Description of the conditions, for logging. */
+    private final List<String> descriptions = new ArrayList<>();
+    /** Number of rows left out. */
+    private int rejected = 0;
+
+    /**
+     * Constructor, parses the filters, stops the pipeline if they are not valid.
+     * @param filters Filters, by column name.
+     */
+    public RowFilter(JSONObject filters){
+        for(Object key: filters.keySet()){
+            String column = (String) key;
+            Object filter = filters.get(key);
+            if(filter instanceof JSONArray){
+                Set<String> values = new HashSet<>();
+                for(Object value: (JSONArray) filter) values.add(String.valueOf(value));
+                conditions.put(column, values::contains);
+                descriptions.add(column+" in "+values);
+            } else if(filter instanceof JSONObject){
+                conditions.put(column, range(column, (JSONObject) filter));
+            } else if(filter != null){
+                String value = String.valueOf(filter);
+                conditions.put(column, value::equals);
+                descriptions.add(column+" = "+value);
+            } else {
+                invalid(column, "no value given");
+            }
+        }
+    }
+
+    /**
+     * Method parsing a numeric or date range filter.
+     * @param column Column name.
+     * @param filter Range filter.
+     * @return The condition on the column value.
+     */
+    private Predicate<String> range(String column, JSONObject filter){
+        if(filter.containsKey("min") || filter.containsKey("max")){
+            if(filter.containsKey("from") || filter.containsKey("to") || filter.containsKey("format")){
+                invalid(column, "numeric (min, max) and date (from, to, format) bounds cannot be mixed");
+            }
+            double min = bound(column, filter.get("min"), Double.NEGATIVE_INFINITY);
+            double max = bound(column, filter.get("max"), Double.POSITIVE_INFINITY);
+            descriptions.add(column+" in ["+(filter.containsKey("min") ? min : "")+", "+(filter.containsKey("max") ? max : "")+"]");
+            return value -> {
+                try {
+                    double number = Double.parseDouble(value.trim());
+                    return number >= min && number <= max;
+                } catch (NumberFormatException e){
+                    return false;
+                }
+            };
+        }
+        if(filter.containsKey("from") || filter.containsKey("to")){
+            DateTimeFormatter format = DateTimeFormatter.ISO_LOCAL_DATE;
+            try {
+                if(filter.containsKey("format")) format = DateTimeFormatter.ofPattern((String) filter.get("format"));
+            } catch (IllegalArgumentException | ClassCastException e){
+                invalid(column, "date format "+filter.get("format")+" is not valid");
+            }
+            LocalDate from = date(column, filter.get("from"), format, LocalDate.MIN);
+            LocalDate to = date(column, filter.get("to"), format, LocalDate.MAX);
+            DateTimeFormatter valueFormat = format;
+            descriptions.add(column+" in ["+(filter.containsKey("from") ? from : "")+", "+(filter.containsKey("to") ? to : "")+"]");
+            return value -> {
+                try {
+                    LocalDate date = LocalDate.parse(value.trim(), valueFormat);
+                    return !date.isBefore(from) && !date.isAfter(to);
+                } catch (DateTimeParseException e){
+                    return false;
+                }
+            };
+        }
+        invalid(column, "a range needs at least one bound (min, max, from or to)");
+        return null;
+    }
+
+    /**
+     * Method reading a numeric bound.
+     * @param column Column name.
+     * @param bound Bound value, null if not set.
+     * @param unset Value if the bound is not set.
+     * @return The bound.
+     */
+    private static double bound(String column, Object bound, double unset){
+        if(bound == null) return unset;
+        if(!(bound instanceof Number)) invalid(column, "bound "+bound+" is not a number");
+        return ((Number) bound).doubleValue();
+    }
+
+    /**
+     * Method reading a date bound.
+     * @param column Column name.
+     * @param bound Bound value, null if not set.
+     * @param format Date format.
+     * @param unset Value if the bound is not set.
+     * @return The bound.
+     */
+    private static LocalDate date(String column, Object bound, DateTimeFormatter format, LocalDate unset){
+        if(bound == null) return unset;
+        try {
+            return LocalDate.parse(String.valueOf(bound), format);
+        } catch (DateTimeParseException e){
+            invalid(column, "bound "+bound+" is not a date in the given format");
+            return unset;
+        }
+    }
+
+    /**
+     * Method stopping the pipeline on an invalid filter.
+     * @param column Column name.
+     * @param reason Reason the filter is not valid.
+     */
+    private static void invalid(String column, String reason){
+        LogPrint.printNoteError("Input module: invalid filter on column "+column+", "+reason);
+        System.exit(1);
+    }
+
+    /**
+     * Method checking that the filtered columns exist in the source, stops the pipeline otherwise (e.g. on a misspelt
+     * column name, which would leave out every row).
+     * @param columns Column names of the source.
+     */
+    public void checkColumns(Set<String> columns){
+        for(String column: conditions.keySet()){
+            if(!columns.contains(column)) invalid(column, "no such column in the source");
+        }
+    }
+
+    /**
+     * Method checking if a row passes all filters.
+     * @param row Access to the row's values, by column name (null if the column does not exist).
+     * @return True if the row is kept.
+     */
+    public boolean accept(Function<String, String> row){
+        if(test(row)) return true;
+        rejected++;
+        return false;
+    }
+
+    /**
+     * Method checking if a row passes all filters, without counting it as left out if not (e.g. on a first pass over
+     * the rows).
+     * @param row Access to the row's values, by column name (null if the column does not exist).
+     * @return True if the row is kept.
+     */
+    public boolean test(Function<String, String> row){
+        for(Map.Entry<String, Predicate<String>> condition: conditions.entrySet()){
+            String value = row.apply(condition.getKey());
+            if(value == null || !condition.getValue().test(value)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Getter method for the number of rows left out so far.
+     * @return The number of rows left out.
+     */
+    public int getRejected(){
+        return rejected;
+    }
+
+    /**
+     * Method describing the filters.
+     * @return The filters, as text.
+     */
+    @Override
+    public String toString(){
+        return String.join(", ", descriptions);
+    }
+}
@@ -0,0 +1,261 @@
+package P1_Input;
+
+import PX_Data.DocIOWrapper;
+import PX_Data.JSONIOWrapper;
+import PY_Helper.LogPrint;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+import java.io.*;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Class keeping track of the sources (files, or CSV rows) a corpus was built from, so that the input modules can
+ * update an existing corpus rather than rebuild it: only new or changed sources are read again.
+ * <br>
+ * The manifest is saved next to the corpus file. For each source key (file path, or row key) it records the file
+ * size, modification time and content hash, and the ids of the documents produced from the source:
+ * {@code {"nextId": 1234, "settings": ..., "sources": {"path/to/file.pdf": {"size": ..., "modified": ..., "hash": ..., "docs": ["12", "13"]}}}}.
+ * Sources which disappear are tombstoned ({@code "removed": true}) and their documents dropped from the corpus.
+ * <br>
+ * The manifest also records a hash of the settings shaping the documents read from a source (e.g. the number of words
+ * per document): if they changed, the manifest is discarded and the corpus rebuilt, so that it does not mix documents
+ * read with the old and new settings.
+ * <br>
+ * Document ids are stable: unchanged sources keep their documents, changed sources re-use their previous ids first,
+ * and new documents get ids never used before. Document indices stay contiguous (as expected by the topic model):
+ * documents kept from the previous corpus keep their relative order, and new documents are appended.
+ *
+ * @author P. Le Bras
+ * @version 1
+ */
+public class SourceManifest {
+
+    /** Size of the buffer used to read files when hashing. */
+    private final static int BUFFER_SIZE = 1 << 20;
+
+    /** Filename of the manifest. */
+    private final String manifestFile;
+    /** Hash of the settings shaping the documents read from a source. */
+    private final String settings;
+    /** Recorded sources, from the previous run then updated. */
+    private final JSONObject sources;
+    /** Next document id to assign. */
+    private long nextId;
+    /** Documents of the previous corpus, by id. */
+    private final Map<String, DocIOWrapper> previousDocs = new HashMap<>();
+    /** Source keys seen during this run. */
+    private final Set<String> seen = new HashSet<>();
+    /** Snapshots (size, modification time, hash) of the sources checked during this run, by key. */
+    private final Map<String, JSONObject> snapshots = new HashMap<>();
+    /** Documents of the updated corpus. */
+    private final List<DocIOWrapper> docs = new ArrayList<>();
+    /** Number of sources kept, added or changed, and removed. */
+    private int kept = 0, updated = 0, removed = 0;
+
+    /**
+     * Constructor, loads the manifest and the corpus from the previous run, if they both exist and the settings are
+     * unchanged.
+     * @param corpusFile Corpus file name.
+     * @param settings Settings shaping the documents read from a source, by name.
+     */
+    public SourceManifest(String corpusFile, Map<String, ?> settings){
+        manifestFile = corpusFile.replaceFirst("\\.json(\\.gz)?$", "") + "_manifest.json";
+        List<String> values = new ArrayList<>();
+        for(Map.Entry<String, ?> setting: new TreeMap<>(settings).entrySet()){
+            values.add(setting.getKey()+"="+setting.getValue());
+        }
+        this.settings = hashValues(values);
+        JSONObject root = new JSONObject();
+        if(new File(manifestFile).exists() && new File(corpusFile).exists()){
+            root = JSONIOWrapper.LoadJSON(manifestFile, 1);
+            if(!this.settings.equals(root.get("settings"))){
+                LogPrint.printNote("Input settings changed since the corpus was built, rebuilding it", 1);
+                root = new JSONObject();
+            }
+        }
+        if(root.containsKey("sources")){
+            for(JSONObject jsonDoc: JSONIOWrapper.getJSONObjectArray((JSONArray) JSONIOWrapper.LoadJSON(corpusFile, 1).get("corpus"))){
+                DocIOWrapper doc = new DocIOWrapper(jsonDoc);
+                previousDocs.put(doc.getId(), doc);
+            }
+        }
+        sources = (JSONObject) root.getOrDefault("sources", new JSONObject());
+        nextId = (long) root.getOrDefault("nextId", (long) 0);
+    }
+
+    /**
+     * Method checking if a source file is unchanged since the previous run, and if so keeping its documents.
+     * The file hash is only computed if its size or modification time changed.
+     * @param key Source key.
+     * @param file Source file.
+     * @return True if the documents were kept, false if the file must be read.
+     */
+    public synchronized boolean keep(String key, File file){
+        seen.add(key);
+        JSONObject snapshot = new JSONObject();
+        snapshot.put("size", file.length());
+        snapshot.put("modified", file.lastModified());
+        JSONObject source = (JSONObject) sources.get(key);
+        if(source != null && !source.containsKey("removed")
+                && snapshot.get("size").equals(source.get("size")) && snapshot.get("modified").equals(source.get("modified"))){
+            snapshot.put("hash", source.get("hash"));
+        } else {
+            snapshot.put("hash", hashFile(file));
+        }
+        snapshots.put(key, snapshot);
+        return keep(key, source, (String) snapshot.get("hash"));
+    }
+
+    /**
+     * Method checking if a source (e.g. a CSV row) is unchanged since the previous run, and if so keeping its
+     * documents.
+     * @param key Source key.
+     * @param hash Source content hash.
+     * @return True if the documents were kept, false if the source must be read.
+     */
+    public synchronized boolean keep(String key, String hash){
+        seen.add(key);
+        JSONObject snapshot = new JSONObject();
+        snapshot.put("hash", hash);
+        snapshots.put(key, snapshot);
+        return keep(key, (JSONObject) sources.get(key), hash);
+    }
+
+    /**
+     * Method keeping the documents of an unchanged source, if they are all in the previous corpus.
+     * @param key Source key.
+     * @param source Recorded source, null if new.
+     * @param hash Current source content hash.
+     * @return True if the documents were kept.
+     */
+    private boolean keep(String key, JSONObject source, String hash){
+        if(source == null || source.containsKey("removed") || !hash.equals(source.get("hash"))) return false;
+        List<DocIOWrapper> sourceDocs = new ArrayList<>();
+        for(Object id: (JSONArray) source.get("docs")){
+            DocIOWrapper doc = previousDocs.get((String) id);
+            if(doc == null) return false;
+            sourceDocs.add(doc);
+        }
+        docs.addAll(sourceDocs);
+        source.putAll(snapshots.get(key));
+        kept++;
+        return true;
+    }
+
+    /**
+     * Method adding the documents read from a new or changed source. Ids are assigned to the documents, re-using
+     * the source's previous ids first.
+     * @param key Source key, previously checked with one of the keep methods.
+     * @param sourceDocs Documents read from the source.
+     */
+    public synchronized void add(String key, List<DocIOWrapper> sourceDocs){
+        JSONObject source = (JSONObject) sources.get(key);
+        JSONArray previousIds = source != null ? (JSONArray) source.get("docs") : new JSONArray();
+        JSONArray ids = new JSONArray();
+        for(int i = 0; i < sourceDocs.size(); i++){
+            String id = i < previousIds.size() ? (String) previousIds.get(i) : Long.toString(nextId++);
+            sourceDocs.get(i).setId(id);
+            ids.add(id);
+        }
+        source = snapshots.getOrDefault(key, new JSONObject());
+        source.put("docs", ids);
+        sources.put(key, source);
+        docs.addAll(sourceDocs);
+        updated++;
+    }
+
+    /**
+     * Method completing the update: tombstoning the sources not seen during this run, assigning the document indices,
+     * and saving the manifest.
+     * @return The documents of the updated corpus, by id, in index order.
+     */
+    public synchronized LinkedHashMap<String, DocIOWrapper> complete(){
+        for(Object key: sources.keySet()){
+            JSONObject source = (JSONObject) sources.get(key);
+            if(!seen.contains((String) key) && !source.containsKey("removed")){
+                source.put("removed", true);
+                removed++;
+            }
+        }
+        // documents kept from the previous corpus first, in their previous order, then new documents
+        List<DocIOWrapper> ordered = new ArrayList<>(docs);
+        ordered.sort(Comparator.comparingInt(doc -> {
+            DocIOWrapper previous = previousDocs.get(doc.getId());
+            return previous != null ? previous.getIndex() : Integer.MAX_VALUE;
+        }));
+        LinkedHashMap<String, DocIOWrapper> res = new LinkedHashMap<>();
+        for(DocIOWrapper doc: ordered){
+            doc.setIndex(res.size());
+            res.put(doc.getId(), doc);
+        }
+        JSONObject root = new JSONObject();
+        root.put("nextId", nextId);
+        root.put("settings", settings);
+        root.put("sources", sources);
+        JSONIOWrapper.SaveJSON(root, manifestFile, 1);
+        LogPrint.printNote("Sources kept: "+kept+", added or changed: "+updated+", removed: "+removed, 1);
+        return res;
+    }
+
+    /**
+     * Method computing the hash of a CSV row, or any list of values.
+     * @param values Values to hash.
+     * @return The hash, as a hexadecimal SHA-256 hash.
+     */
+    public static String hashValues(Collection<String> values){
+        MessageDigest digest = newDigest();
+        for(String value: values){
+            digest.update(String.valueOf(value).getBytes(StandardCharsets.UTF_8));
+            // separator, so that ["ab", "c"] and ["a", "bc"] differ
+            digest.update((byte) 0);
+        }
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Method computing the content hash of a file.
+     * @param file File to hash.
+     * @return The hash, or "missing" if the file cannot be read.
+     */
+    private static String hashFile(File file){
+        MessageDigest digest = newDigest();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try(InputStream in = new FileInputStream(file)){
+            int read;
+            while((read = in.read(buffer)) > 0){
+                digest.update(buffer, 0, read);
+            }
+        } catch (IOException e){
+            LogPrint.printNoteError("Error while hashing "+file.getPath());
+            return "missing";
+        }
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Method creating a new SHA-256 message digest.
+     * @return The message digest.
+     */
+    private static MessageDigest newDigest(){
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e){
+            // SHA-256 is required on every Java platform
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Method formatting a hash as a hexadecimal string.
+     * @param hash Hash bytes.
+     * @return The hexadecimal string.
+     */
+    private static String toHex(byte[] hash){
+        return String.format("%064x", new BigInteger(1, hash));
+    }
+}
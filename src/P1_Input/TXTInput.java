@@ -1,26 +1,46 @@
 package P1_Input;
 
 import P0_Project.InputModuleSpecs;
+import PX_Data.CompressedFiles;
 import PX_Data.DocIOWrapper;
 import PX_Data.JSONIOWrapper;
 import PY_Helper.LogPrint;
 import PY_Helper.Pair;
+import PY_Helper.WorkerPool;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
 
 /**
  * Class reading a TXT directory input and writing it as a corpus JSON file.
  *
  * @author P. Le Bras
- * @version 1
+ * @version 5
  */
 public class TXTInput {
 
@@ -31,15 +51,40 @@ public class TXTInput {
     /** Increment for the count of documents read. */
     private int docCount = 0;
 
-    /** List of PDF files found in the directory,
+    /** List of TXT files found in the directory,
      * also saves the file's directory name as 'dataset' field in the corpus document data. */
-    private final List<Pair<File,String>> fileList = new ArrayList<>();
+    private final List<Pair<Path,String>> fileList = new ArrayList<>();
 
-    /**
-     * Flag for parsing PDFs in parallel.
-     * WARNING: Running this is parallel will alter the final visualisation due to reordering of processing!
-     */
-    private final static boolean RUN_IN_PARALLEL = false;
+    /** Number of threads parsing files. */
+    private int threads;
+    /** Flag for updating the existing corpus, only parsing new or changed files. */
+    private boolean incremental;
+    /** Near-duplicate detection, null if not used. */
+    private NearDuplicates nearDuplicates = null;
+    /** Flag for dropping near-duplicate documents from the corpus, rather than marking them. */
+    private boolean dropDuplicates;
+    /** Number of near-duplicate documents found. */
+    private int numDuplicates = 0;
+    /** Random sample of the files, null if all files are parsed. */
+    private CorpusSampler<Pair<Path,String>> sampler = null;
+    /** Number of files to sample, 0 if sampling by fraction. */
+    private long sampleSize;
+    /** Fraction of files to sample, 1 if not sampling. */
+    private double sampleFraction;
+    /** Field stratifying the sample ('dataset'), null if not stratified. */
+    private String sampleStratify;
+    /** Seed of the sample. */
+    private long sampleSeed;
+    /** Manifest of the sources of the corpus, null if not updating the existing corpus. */
+    private SourceManifest manifest = null;
+    /** Number of files parsed ahead of the documents being added, per thread. */
+    private final static int FILES_AHEAD = 4;
+    /** Size, in bytes, from which files are memory-mapped rather than read at once. */
+    private final static long MAP_THRESHOLD = 1 << 20;
+    /** Size, in bytes, of the memory-mapped windows. */
+    private final static long MAP_WINDOW = 64 << 20;
+    /** Size, in characters, of the buffer decoding memory-mapped windows. */
+    private final static int DECODE_SIZE = 1 << 16;
 
     // project specs
     /** PDF source directory name. */
@@ -65,7 +110,9 @@ public class TXTInput {
         TXTInput startClass = new TXTInput();
         startClass.ProcessArguments(inputSpecs);
         startClass.FindTXTs();
+        startClass.SampleFiles();
         startClass.ParseTXTs();
+        startClass.DetectDuplicates();
         startClass.OutputJSON();
 
         long timeTaken = (System.currentTimeMillis() - startTime) / (long)1000;
@@ -83,21 +130,33 @@ public class TXTInput {
         sourceDirectory = inputSpecs.source;
         outputFile = inputSpecs.output;
         wordsPerDoc = inputSpecs.wordsPerDoc;
+        threads = inputSpecs.threads;
+        incremental = inputSpecs.incremental;
+        if(!inputSpecs.dedup.equals("none")){
+            nearDuplicates = new NearDuplicates(inputSpecs.dedup_fields, inputSpecs.dedup_threshold,
+                    inputSpecs.dedup_shingleSize, threads);
+            dropDuplicates = inputSpecs.dedup.equals("drop");
+        }
+        sampleSize = inputSpecs.sample_size;
+        sampleFraction = inputSpecs.sample_fraction;
+        sampleStratify = inputSpecs.sample_stratify;
+        sampleSeed = inputSpecs.sample_seed;
         splitEmptyLines = inputSpecs.TXT_splitEmptyLines;
         LogPrint.printCompleteStep();
     }
 
     /**
      * Method exploring the source directory, and it's sub-directories, for all TXT files.
+     * The directory tree is walked with the file attributes read along the way, without further metadata calls.
      */
     private void FindTXTs(){
         LogPrint.printNewStep("Finding all TXTs in "+sourceDirectory, 0);
-        File directory = new File(sourceDirectory);
-        if(!directory.isDirectory()){
+        Path directory = Paths.get(sourceDirectory);
+        if(!Files.isDirectory(directory)){
             // source is not a directory, perhaps a txt file
-            if(directory.getName().toLowerCase().endsWith(".txt")) {
+            if(isTXT(directory.getFileName().toString())) {
                 // source is a txt file, just add this one
-                fileList.add(new Pair<>(directory, directory.getName()));
+                fileList.add(new Pair<>(directory, directory.getFileName().toString()));
                 LogPrint.printCompleteStep();
             } else {
                 // source is not a txt file, throw error
@@ -105,7 +164,14 @@ public class TXTInput {
                 System.exit(1);
             }
         } else {
-            findTXTsInDirectory(directory);
+            try(Stream<Path> files = Files.find(directory, Integer.MAX_VALUE,
+                    (path, attributes) -> attributes.isRegularFile() && isTXT(path.getFileName().toString()))){
+                files.forEach(path -> fileList.add(new Pair<>(path, path.getParent().getFileName().toString())));
+            } catch (IOException | UncheckedIOException e) {
+                LogPrint.printNoteError("Error while exploring "+sourceDirectory);
+                e.printStackTrace();
+                System.exit(1);
+            }
             if(fileList.size() > 0){
                 LogPrint.printCompleteStep();
                 LogPrint.printNote("Found "+fileList.size()+" TXT files.", 0);
@@ -118,132 +184,299 @@ public class TXTInput {
     }
 
     /**
-     * Method recursively exploring a directory for TXT files.
-     * @param directory Directory to explore.
+     * Method drawing a random sample of the files found (see {@link CorpusSampler}), so that only the sampled files
+     * are parsed. A sampling fraction is turned into a number of files, as the number of files found is known.
      */
-    private void findTXTsInDirectory(File directory){
-        for(File file : directory.listFiles()){
-            if(!file.isDirectory()){
-                if(file.getName().toLowerCase().endsWith(".txt"))
-                    fileList.add(new Pair<>(file,directory.getName()));
-            } else {
-                findTXTsInDirectory(file);
+    private void SampleFiles(){
+        if(sampleSize == 0 && sampleFraction >= 1) return;
+        long size = sampleSize > 0 ? sampleSize : Math.max(1, Math.round(sampleFraction * fileList.size()));
+        LogPrint.printNewStep("Sampling "+size+" files"+(sampleStratify != null ? ", stratified by dataset" : ""), 0);
+        sampler = new CorpusSampler<>(size, 1, sampleStratify, sampleSeed);
+        if(sampler.needsCounts()){
+            for(Pair<Path,String> file: fileList){
+                sampler.count(file.getRight());
             }
         }
+        for(Pair<Path,String> file: fileList){
+            sampler.offer(file, file.getRight());
+        }
+        List<Pair<Path,String>> sampled = sampler.sample();
+        fileList.clear();
+        fileList.addAll(sampled);
+        LogPrint.printCompleteStep();
+        LogPrint.printNote("Sampled "+fileList.size()+" TXT files.", 0);
+    }
+
+    /**
+     * Method checking if a file is a TXT file, compressed or not.
+     * @param name File name.
+     * @return True if the name ends with '.txt' or '.txt.gz'.
+     */
+    private static boolean isTXT(String name){
+        name = name.toLowerCase();
+        return name.endsWith(".txt") || name.endsWith(".txt" + CompressedFiles.EXTENSION);
     }
 
     /**
      * Method launching the TXT parsing process.
+     * Files are parsed on a dedicated pool of threads, with a bounded number of files in flight, and documents are
+     * numbered in the order files were found, so the corpus does not depend on the order files complete in.
      */
     private void ParseTXTs(){
         LogPrint.printNewStep("Parsing TXT files:", 0);
-        if(RUN_IN_PARALLEL){
-            fileList.parallelStream().forEach(this::parseTXT);
-        } else{
-            fileList.forEach(this::parseTXT);
+        LogPrint.printCompleteStep();
+        manifest = incremental ? new SourceManifest(outputFile, Map.of("wordsPerDoc", wordsPerDoc, "splitEmptyLines", splitEmptyLines)) : null;
+        ArrayDeque<Pair<Pair<Path, String>, Future<List<DocIOWrapper>>>> pending = new ArrayDeque<>();
+        ExecutorService pool = WorkerPool.Create("input", threads);
+        try {
+            for(Pair<Path, String> txt: fileList){
+                // unchanged files are not parsed again, their documents are kept from the previous corpus
+                if(manifest != null && manifest.keep(sourceKey(txt.getLeft()), txt.getLeft().toFile())) continue;
+                pending.add(new Pair<>(txt, pool.submit(() -> parseTXT(txt))));
+                while(pending.size() > threads * FILES_AHEAD){
+                    addDocs(pending.poll());
+                }
+            }
+            while(!pending.isEmpty()){
+                addDocs(pending.poll());
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            LogPrint.printNoteError("Error while reading TXT.");
+            e.printStackTrace();
+            System.exit(1);
+        } finally {
+            pool.shutdownNow();
         }
+        if(manifest != null) Docs.putAll(manifest.complete());
         numDocs = Docs.size();
         LogPrint.printNote("Number of documents parsed: " + numDocs, 0);
     }
 
+    /**
+     * Method waiting for a file to be parsed, and numbering and adding its documents to our list.
+     * @param txt TXT file, paired with the pending result of its parsing.
+     * @throws InterruptedException If interrupted while waiting.
+     * @throws ExecutionException If the file could not be parsed.
+     */
+    private void addDocs(Pair<Pair<Path, String>, Future<List<DocIOWrapper>>> txt) throws InterruptedException, ExecutionException {
+        List<DocIOWrapper> docs = txt.getRight().get();
+        String note = "Processed: " + txt.getLeft().getLeft().getFileName();
+        if(docs.size() > 1) note += ", number of sub-documents recovered: " + docs.size();
+        LogPrint.printNote(note, 1);
+        if(manifest != null){
+            manifest.add(sourceKey(txt.getLeft().getLeft()), docs);
+            return;
+        }
+        for(DocIOWrapper doc: docs){
+            doc.setId(Integer.toString(docCount));
+            doc.setIndex(docCount);
+            Docs.put(doc.getId(), doc);
+            docCount++;
+        }
+    }
+
+    /**
+     * Method getting the key of a TXT file in the source manifest: its path relative to the source directory.
+     * @param path TXT file.
+     * @return The source key.
+     */
+    private String sourceKey(Path path){
+        Path source = Paths.get(sourceDirectory);
+        return Files.isDirectory(source) ? source.relativize(path).toString() : path.getFileName().toString();
+    }
+
     /**
      * Method parsing a single TXT file.
+     * Small files are read at once, larger files are memory-mapped and decoded window by window, the text being
+     * split as it is decoded. Compressed files are decompressed on a background thread and split as they are decoded.
      * @param txt TXT file to parse, paired with it's dataset value.
+     * @return The documents parsed, numbered later.
+     * @throws IOException If the file cannot be read.
+     */
+    private List<DocIOWrapper> parseTXT(Pair<Path, String> txt) throws IOException {
+        String rootName = txt.getLeft().getFileName().toString();
+        TXTSplitter splitter = new TXTSplitter(rootName.substring(0, rootName.indexOf('.')), txt.getRight());
+        // same decoding as a FileReader
+        CharsetDecoder decoder = Charset.defaultCharset().newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        if(CompressedFiles.IsCompressed(txt.getLeft().toString())){
+            try(Reader reader = new InputStreamReader(CompressedFiles.OpenInput(txt.getLeft().toString()), decoder)){
+                CharBuffer chars = CharBuffer.allocate(DECODE_SIZE);
+                while(reader.read(chars) >= 0){
+                    chars.flip();
+                    splitter.read(chars);
+                    chars.clear();
+                }
+            }
+            splitter.finish();
+            return splitter.docs;
+        }
+        try(FileChannel channel = FileChannel.open(txt.getLeft(), StandardOpenOption.READ)){
+            long size = channel.size();
+            if(size < MAP_THRESHOLD){
+                ByteBuffer bytes = ByteBuffer.allocate((int) size);
+                while(bytes.hasRemaining() && channel.read(bytes) >= 0);
+                bytes.flip();
+                splitter.read(decoder.decode(bytes));
+            } else {
+                CharBuffer chars = CharBuffer.allocate(DECODE_SIZE);
+                long position = 0;
+                while(position < size){
+                    MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAP_WINDOW, size - position));
+                    boolean last = position + window.capacity() == size;
+                    CoderResult result;
+                    do {
+                        result = decoder.decode(window, chars, last);
+                        chars.flip();
+                        splitter.read(chars);
+                        chars.clear();
+                    } while(result.isOverflow());
+                    // bytes of a character cut by the end of the window are decoded with the next window
+                    position += window.position();
+                }
+                decoder.flush(chars);
+                chars.flip();
+                splitter.read(chars);
+            }
+        }
+        splitter.finish();
+        return splitter.docs;
+    }
+
+    /**
+     * Class splitting the text of a TXT file into documents, as it is read: every given number of words and, if set,
+     * with every empty line. Line breaks are the same as {@link java.io.BufferedReader#readLine()}'s, and words are
+     * separated by the same white space characters as the regular expression "\\s".
      */
-    private void parseTXT(Pair<File, String> txt){
-        File file = txt.getLeft();
-        String dataset = txt.getRight();
-        String rootName = file.getName();
-        LogPrint.printNewStep("Processing: "+rootName, 1);
-        rootName = rootName.substring(0, rootName.indexOf('.'));
+    private class TXTSplitter {
+        /** File name, without extension. */
+        final String rootName;
+        /** Dataset value. */
+        final String dataset;
+        /** Documents created, numbered later. */
+        final List<DocIOWrapper> docs = new ArrayList<>();
+        /** Text of the current sub-document, reused between sub-documents. */
+        final StringBuilder text = new StringBuilder();
+        /** Number of words in the current sub-document. */
+        int numWords = 0;
+        /** Number of sub-documents created. */
         int subDocCount = 0;
-        try {
-            // load file
-            BufferedReader reader = new BufferedReader(new FileReader(file));
-            // initialise subtext string and counters
-            int numWordsInString = 0;
-            String newDocString = "";
-            String line;
-            // read the text line by line
-            while ((line = reader.readLine()) != null){
-                if(splitEmptyLines && line.length() == 0){
-                    // if it's an empty line and we need to split
-                    addNewDoc(newDocString, rootName, dataset, subDocCount);
-                    numWordsInString = 0;
-                    subDocCount++;
-                    newDocString = "";
+        /** Number of characters read on the current line. */
+        int lineLength = 0;
+        /** Flag for being inside a word. */
+        boolean inWord = false;
+        /** Flag for the last character read being a carriage return, in case it is followed by a line feed. */
+        boolean afterCarriageReturn = false;
+
+        TXTSplitter(String rootName, String dataset){
+            this.rootName = rootName;
+            this.dataset = dataset;
+        }
+
+        /**
+         * Method reading the next characters of the text.
+         * @param chars Characters read.
+         */
+        void read(CharBuffer chars){
+            while(chars.hasRemaining()){
+                char c = chars.get();
+                if(c == '\n' && afterCarriageReturn){
+                    // end of a "\r\n" line break
+                    afterCarriageReturn = false;
+                    continue;
+                }
+                afterCarriageReturn = c == '\r';
+                if(c == '\n' || c == '\r'){
+                    endWord();
+                    if(splitEmptyLines && lineLength == 0){
+                        // if it's an empty line and we need to split
+                        addSubDoc();
+                    }
+                    lineLength = 0;
                 } else {
-                    // otherwise go through the line word by word
-                    for(String word: line.split("\\s+")){
-                        if(numWordsInString == wordsPerDoc && wordsPerDoc > 0){
-                            // if we've reach the maximum number of words per document, and it's a positive limit
-                            addNewDoc(newDocString, rootName, dataset, subDocCount);
-                            numWordsInString = 0;
-                            subDocCount++;
-                            newDocString = "";
-                        }
-                        if(word.length() >= 1){
-                            // append the new word to the string
-                            newDocString += word + " ";
-                            numWordsInString++;
+                    lineLength++;
+                    if(isSpace(c)){
+                        endWord();
+                    } else {
+                        if(!inWord){
+                            if(numWords == wordsPerDoc && wordsPerDoc > 0){
+                                // if we've reach the maximum number of words per document, and it's a positive limit
+                                addSubDoc();
+                            }
+                            inWord = true;
+                            numWords++;
                         }
+                        text.append(c);
                     }
                 }
             }
-            if(numWordsInString > 0){
-                // if we have some words leftover
+        }
+
+        /**
+         * Method ending the current word, if any.
+         */
+        void endWord(){
+            if(inWord){
+                text.append(' ');
+                inWord = false;
+            }
+        }
+
+        /**
+         * Method ending the text, adding the words leftover as a final document.
+         */
+        void finish(){
+            endWord();
+            if(numWords > 0){
                 if(subDocCount == 0){
                     // the document was never split
-                    addNewDoc(newDocString, rootName, dataset);
+                    DocIOWrapper doc = new DocIOWrapper(null, -1);
+                    doc.addData("fileName", rootName);
+                    doc.addData("dataset", dataset);
+                    doc.addData("text", text.toString().trim());
+                    docs.add(doc);
                 } else {
                     // the document has been split
-                    addNewDoc(newDocString, rootName, dataset, subDocCount);
+                    addSubDoc();
                 }
-
-            }
-        } catch (Exception e) {
-            LogPrint.printNoteError("Error while reading TXT.");
-            e.printStackTrace();
-            System.exit(1);
-        } finally {
-            LogPrint.printCompleteStep();
-            if(subDocCount > 0){
-                LogPrint.printNote("Number of sub-documents recovered: " + subDocCount+1, 1);
             }
         }
+
+        /**
+         * Method creating a corpus document from the current sub-document, and resetting it.
+         */
+        void addSubDoc(){
+            DocIOWrapper doc = new DocIOWrapper(null, -1);
+            String split = String.format("%03d", subDocCount);
+            doc.addData("originalFileName", rootName);
+            doc.addData("splitNumber", split);
+            doc.addData("dataset", dataset);
+            doc.addData("fileName", rootName + "_" + split);
+            doc.addData("text", text.toString().trim());
+            docs.add(doc);
+            numWords = 0;
+            text.setLength(0);
+            subDocCount++;
+        }
     }
 
     /**
-     * Method adding a new corpus document to our list, which has been split by the parser.
-     * @param text Text content of the document.
-     * @param rootName Name of the file the document comes from.
-     * @param dataset Name of the directory where the document's file comes from.
-     * @param subDocNum Sub-document index.
+     * Method checking if a character is a white space character, as for the regular expression "\\s".
+     * @param c Character to check.
+     * @return True if the character is a white space.
      */
-    private void addNewDoc(String text, String rootName, String dataset, int subDocNum){
-        DocIOWrapper doc = new DocIOWrapper(Integer.toString(docCount), docCount);
-        doc.addData("originalFileName", rootName);
-        doc.addData("splitNumber", String.format("%03d", subDocNum));
-        doc.addData("dataset", dataset);
-        doc.addData("fileName", rootName + "_" + String.format("%03d", subDocNum));
-        doc.addData("text", text.trim());
-        Docs.put(doc.getId(), doc);
-        docCount++;
+    private static boolean isSpace(char c){
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
     }
 
     /**
-     * Method adding a new corpus document to our list, complete.
-     * @param text Text content of the document.
-     * @param rootName Name of the file the document comes from.
-     * @param dataset Name of the directory where the document's file comes from.
+     * Method detecting near-duplicate documents, and marking them or dropping them from the corpus.
      */
-    private void addNewDoc(String text, String rootName, String dataset){
-        DocIOWrapper doc = new DocIOWrapper(Integer.toString(docCount), docCount);
-        doc.addData("fileName", rootName);
-        doc.addData("dataset", dataset);
-        doc.addData("text", text.trim());
-        Docs.put(doc.getId(), doc);
-        docCount++;
+    private void DetectDuplicates(){
+        if(nearDuplicates == null) return;
+        numDuplicates = nearDuplicates.Detect(Docs, dropDuplicates);
+        numDocs = Docs.size();
     }
 
     /**
@@ -254,6 +487,13 @@ public class TXTInput {
         JSONArray corpus = new JSONArray();
         JSONObject meta = new JSONObject();
         meta.put("totalDocs", numDocs);
+        if(nearDuplicates != null) meta.put("nDuplicates", numDuplicates);
+        if(sampler != null){
+            JSONObject sample = sampler.metadata();
+            sample.put("unit", "files");
+            if(sampleSize == 0) sample.put("fraction", sampleFraction);
+            meta.put("sample", sample);
+        }
         root.put("metadata", meta);
         for(Map.Entry<String, DocIOWrapper> entry: Docs.entrySet()){
             corpus.add(entry.getValue().toJSON());
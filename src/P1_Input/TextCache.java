@@ -0,0 +1,174 @@
+package P1_Input;
+
+import PY_Helper.LogPrint;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+import java.io.*;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Class implementing a persistent cache of text extracted from source files (e.g. PDFs), so that files which have
+ * not changed are not parsed again when the input module is re-run.
+ * <br>
+ * Entries are addressed by the content hash of the source file, and hold the extracted text page by page, in one
+ * JSON file per entry: {@code {"pages": ["text of page 1", "text of page 2", ...]}}. When the total size of the
+ * entries goes over the limit, the least recently used entries are deleted.
+ *
+ * @author P. Le Bras
+ * @version 1
+ */
+public class TextCache {
+
+    /** Version of the extraction, part of the entries' key: changing it invalidates the existing entries. */
+    private final static String VERSION = "1";
+    /** Extension of the entry files. */
+    private final static String EXTENSION = ".json";
+    /** Size of the buffer used to read files when hashing. */
+    private final static int BUFFER_SIZE = 1 << 20;
+
+    /** Directory holding the entries. */
+    private final File directory;
+    /** Maximum total size of the entries, in bytes. */
+    private final long maxSize;
+    /** Current total size of the entries, in bytes. */
+    private long size = 0;
+    /** Number of entries found in the cache. */
+    private int hits = 0;
+
+    /**
+     * Constructor, creates the cache directory if needed and measures the existing entries.
+     * @param directory Cache directory name.
+     * @param maxSize Maximum total size of the entries, in bytes.
+     */
+    public TextCache(String directory, long maxSize){
+        this.directory = new File(directory);
+        this.maxSize = maxSize;
+        this.directory.mkdirs();
+        for(File entry: listEntries()){
+            size += entry.length();
+        }
+    }
+
+    /**
+     * Method computing the key of a source file, from its content.
+     * @param file Source file.
+     * @return The key, as a hexadecimal SHA-256 hash.
+     * @throws IOException If the file cannot be read.
+     */
+    public String key(File file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e){
+            // SHA-256 is required on every Java platform
+            throw new IllegalStateException(e);
+        }
+        digest.update(VERSION.getBytes(StandardCharsets.UTF_8));
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try(InputStream in = new FileInputStream(file)){
+            int read;
+            while((read = in.read(buffer)) > 0){
+                digest.update(buffer, 0, read);
+            }
+        }
+        return String.format("%064x", new BigInteger(1, digest.digest()));
+    }
+
+    /**
+     * Method looking up an entry, and marking it as recently used.
+     * @param key Source file key.
+     * @return The text of each page, or null if the entry is not in the cache.
+     */
+    public synchronized List<String> get(String key){
+        File entry = new File(directory, key + EXTENSION);
+        if(!entry.exists()) return null;
+        try(Reader reader = new InputStreamReader(new FileInputStream(entry), StandardCharsets.UTF_8)){
+            JSONArray pages = (JSONArray) ((JSONObject) new JSONParser().parse(reader)).get("pages");
+            List<String> res = new ArrayList<>(pages.size());
+            for(Object page: pages) res.add((String) page);
+            entry.setLastModified(System.currentTimeMillis());
+            hits++;
+            return res;
+        } catch (IOException | ParseException | ClassCastException | NullPointerException e){
+            // unreadable entry (e.g. interrupted write), extracted again
+            size -= entry.length();
+            entry.delete();
+            return null;
+        }
+    }
+
+    /**
+     * Method adding an entry, then evicting the least recently used entries if the cache is over its size limit.
+     * @param key Source file key.
+     * @param pages Text of each page.
+     */
+    public synchronized void put(String key, List<String> pages){
+        JSONArray array = new JSONArray();
+        array.addAll(pages);
+        JSONObject root = new JSONObject();
+        root.put("pages", array);
+        File entry = new File(directory, key + EXTENSION);
+        File temp = new File(directory, key + ".tmp");
+        // written to a temporary file first, so an interrupted run does not leave a truncated entry
+        try(Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8))){
+            root.writeJSONString(writer);
+        } catch (IOException e){
+            LogPrint.printNoteError("Error while saving text cache entry "+entry.getName());
+            temp.delete();
+            return;
+        }
+        size -= entry.length();
+        try {
+            Files.move(temp.toPath(), entry.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e){
+            LogPrint.printNoteError("Error while saving text cache entry "+entry.getName());
+            temp.delete();
+            return;
+        }
+        size += entry.length();
+        evict();
+    }
+
+    /**
+     * Method deleting the least recently used entries until the total size is under the limit.
+     */
+    private void evict(){
+        if(size <= maxSize) return;
+        File[] entries = listEntries();
+        Arrays.sort(entries, Comparator.comparingLong(File::lastModified));
+        for(File entry: entries){
+            if(size <= maxSize) break;
+            long length = entry.length();
+            if(entry.delete()) size -= length;
+        }
+    }
+
+    /**
+     * Method listing the entry files.
+     * @return The entry files.
+     */
+    private File[] listEntries(){
+        File[] entries = directory.listFiles((dir, name) -> name.endsWith(EXTENSION));
+        return entries == null ? new File[0] : entries;
+    }
+
+    /**
+     * Getter method for the number of entries found in the cache so far.
+     * @return The number of cache hits.
+     */
+    public synchronized int getHits(){
+        return hits;
+    }
+}
@@ -1,21 +1,24 @@
 package P2_Lemmatise;
 
 import P0_Project.LemmatiseModuleSpecs;
+import P2_Lemmatise.Lemmatizer.LemmatizerPool;
 import P2_Lemmatise.Lemmatizer.StanfordLemmatizer;
 import PX_Data.*;
 import PY_Helper.LogPrint;
+import PY_Helper.WorkerPool;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 /**
  * Class reading a corpus JSON file, processing its document to lemmatise their texts and saving them into a lemma JSON file.
  *
  * @author T. Methven, P. Le Bras
- * @version 2
+ * @version 5
  */
 public class Lemmatise {
 
@@ -24,20 +27,16 @@ public class Lemmatise {
     /** List of documents. */
     private ConcurrentHashMap<String, DocIOWrapper> Documents;
     /** Count of documents processed by the lemmatiser. */
-    private int docsProcessed = 0;
+    private final AtomicInteger docsProcessed = new AtomicInteger();
     /** Total number of documents. */
     private int totalDocs = 0;
     /** Start time for the lemmatiser, to follow progress. */
     private long lemStartTime;
-    /** Lemmatiser. */
-    private StanfordLemmatizer slem;
     /** List of lemmas with a number of occurrences lower than removeLowCounts. */
     private List<String> lowCounts;
 
     /** Rate at which we log an update on the lemmatisation progress. */
     private final static int UPDATE_FREQUENCY = 100;
-    /** Flag for running the lemmatisation in parallel. */
-    private final static boolean RUN_IN_PARALLEL = true;
 
     /** Filename of the input corpus JSON file. */
     private String corpusFile;
@@ -53,12 +52,16 @@ public class Lemmatise {
     private List<String> stopPhrases;
     /** List of custom words to protect from regex processing. */
     private HashMap<String, String> protect;
+    /** Normaliser of the document texts, removing stop phrases and special characters. */
+    private TextNormaliser normaliser;
     /** Minimum number of lemmas a document must have. */
     private int minDocLemmas;
     /** Minimum amount of time a lemma must be used (across all documents) to be kept. */
     private int minLemmaCount;
     /** Number of documents that will be removed from the topic modelling for being too short. */
-    private int totalDocRemoved = 0;
+    private final AtomicInteger totalDocRemoved = new AtomicInteger();
+    /** Number of workers lemmatising documents, each with its own lemmatiser. */
+    private int threads;
 
     /**
      * Main method, reads the specification and launches the sub-methods in order.
@@ -103,9 +106,12 @@ public class Lemmatise {
             String processed = initial.toLowerCase().replaceAll("\\W", " ");
             protect.put(processed, initial.toLowerCase());
         };
+        normaliser = new TextNormaliser(stopPhrases, protect);
         minDocLemmas = lemmaSpecs.minDocLemmas;
         minLemmaCount = lemmaSpecs.minLemmaCount;
+        threads = lemmaSpecs.threads;
         LogPrint.printCompleteStep();
+        LogPrint.printNote("Lemmatising on "+threads+" threads");
         if(minLemmaCount > 0) LogPrint.printNote("Removing lemmas with count less than "+(minLemmaCount +1));
     }
 
@@ -122,6 +128,12 @@ public class Lemmatise {
             Documents.put(doc.getId(), doc);
         }
         LogPrint.printNote("Found "+Documents.size()+" documents to lemmatise", 0);
+        if(metadata != null && metadata.containsKey("sample")){
+            // the sample description is kept in the metadata, and carried over to the lemmas and model files
+            JSONObject sample = (JSONObject) metadata.get("sample");
+            LogPrint.printNote("The corpus is a random sample: "+sample.get("sampled")+" out of "+sample.get("population")+
+                    " "+sample.get("unit")+(sample.containsKey("stratify") ? ", stratified by "+sample.get("stratify") : ""), 0);
+        }
     }
 
     /**
@@ -139,77 +151,75 @@ public class Lemmatise {
     }
 
     /**
-     * Method instantiating the lemmatiser and launching the lemmatisation process.
+     * Method instantiating the lemmatisers and launching the lemmatisation process.
+     * Documents are lemmatised by a pool of workers, each with its own lemmatiser pipeline (sharing the tagger model),
+     * and fed through a bounded queue.
      */
     private void LemmatiseDocuments(){
         LogPrint.printNewStep("Loading lemmatiser", 0);
         LogPrint.printNote("Following output from Stanford CoreNLP\n");
-        slem = new StanfordLemmatizer();
-        LogPrint.printNewStep("Lemmatiser loaded", 0);
-        LogPrint.printCompleteStep();
+        try(LemmatizerPool pool = new LemmatizerPool("lemmatise", threads)){
+            LogPrint.printNewStep("Lemmatiser loaded", 0);
+            LogPrint.printCompleteStep();
 
-        LogPrint.printNewStep("Starting lemmatisation", 0);
+            LogPrint.printNewStep("Starting lemmatisation", 0);
 
-        totalDocs = Documents.size();
-        lemStartTime = System.currentTimeMillis();
+            totalDocs = Documents.size();
+            lemStartTime = System.currentTimeMillis();
 
-        //Parallel version of the lambada-style code. Please note:
-        //1. You need to parallelise the entry set, and pass that to the method
-        //2. You should use a ConcurrentHashMap rather than a usual HashMap. Normal HashMap will work (wrapped in a synchronizedMap) but will likely be slower.
-        if(RUN_IN_PARALLEL)
-            Documents.entrySet().parallelStream().forEach(this::lemmatiseDocument);
-        //Previous, non-parallel version
-        else
-            Documents.entrySet().forEach(this::lemmatiseDocument);
+            for(Map.Entry<String, DocIOWrapper> docEntry: Documents.entrySet()){
+                pool.submit(lemmatizer -> lemmatiseDocument(docEntry, lemmatizer));
+            }
+        } catch (InterruptedException e){
+            LogPrint.printNoteError("Lemmatisation interrupted.");
+            e.printStackTrace();
+            System.exit(1);
+        }
 
         LogPrint.printNewStep("Lemmatisation", 0);
         LogPrint.printCompleteStep();
     }
 
     /**
-     * Method lemmatising the document from the corpus.
-     * @param docEntry Document to lemmatise.
+     * Method logging the lemmatisation progress, every {@link Lemmatise#UPDATE_FREQUENCY} documents.
+     * @param processed Number of documents processed so far.
      */
-    private void lemmatiseDocument(Map.Entry<String, DocIOWrapper> docEntry){
-
-        if(docsProcessed % UPDATE_FREQUENCY == 0 && docsProcessed != 0) {
+    private void logProgress(int processed){
+        if(processed % UPDATE_FREQUENCY == 0) {
             long lemTimeTaken = (System.currentTimeMillis() - lemStartTime) / (long)1000;
             String timeTakenStr = "time: " + Math.floorDiv(lemTimeTaken, 60) + " m, " + lemTimeTaken % 60 + " s.";
-            float lemTimeLeft = ((float) lemTimeTaken / (float) docsProcessed) * (totalDocs - docsProcessed);
+            float lemTimeLeft = ((float) lemTimeTaken / (float) processed) * (totalDocs - processed);
             String timeToGoStr = "remaining (est.)): " + Math.floor(lemTimeLeft / 60) + " m, " + Math.floor(lemTimeLeft % 60) + " s.";
-            float percentage = (((float) docsProcessed / (float) totalDocs) * 100);
-            LogPrint.printNewStep("Lemmatised: " + docsProcessed +
+            float percentage = (((float) processed / (float) totalDocs) * 100);
+            LogPrint.printNewStep("Lemmatised: " + processed +
                     " documents | % complete: " + (Math.round(percentage * 100f) / 100f) + "%", 1);
             LogPrint.printLog(timeTakenStr + " | " + timeToGoStr, 1);
         }
+    }
+
+    /**
+     * Method lemmatising the document from the corpus.
+     * @param docEntry Document to lemmatise.
+     * @param slem Lemmatiser of the worker thread.
+     */
+    private void lemmatiseDocument(Map.Entry<String, DocIOWrapper> docEntry, StanfordLemmatizer slem){
 
         // getting the text from document
         DocIOWrapper doc = docEntry.getValue();
+        // near-duplicates are excluded from the model, they are not lemmatised
+        if(doc.getDuplicateOf() != null){
+            doc.setLemmas(new ArrayList<>());
+            logProgress(docsProcessed.incrementAndGet());
+            return;
+        }
         String rawText = "";
         for (String textField : textFields) {
             if (doc.getText(textField) != null) {
                 rawText += " " + doc.getText(textField);
             }
         }
-        // trim whit spaces and put everything lower case
-        rawText = rawText.trim();
-        rawText = rawText.toLowerCase();
-
-        // remove stop-phrases
-        for(String phrase: stopPhrases){
-            rawText = rawText.replaceAll(phrase.toLowerCase(), " ");
-        }
-
-        // removing special characters
-        rawText = rawText.replaceAll("\\n", " "); // returns
-        rawText = rawText.replaceAll("\\r", " "); // carriage returns
-        rawText = rawText.replaceAll("\\W", " "); // non word characters
-        for(Map.Entry<String,String> p: protect.entrySet()){       // reverse protected words
-            String processed = p.getKey();
-            String initial = p.getValue();
-            rawText = rawText.replaceAll("(^|\\s)"+processed+"($|\\s)", " "+initial+" ");
-        }
-        rawText = rawText.trim().replaceAll(" +", " "); //Trim all white space to single spaces
+        // lower case, remove stop-phrases and special characters, reverse protected words and trim white spaces
+        rawText = normaliser.normalise(rawText);
 
         // lemmatising
         List<String> inputLemmas = StanfordLemmatizer.removeStopWords((slem.lemmatise(rawText)));
@@ -223,10 +233,10 @@ public class Lemmatise {
         // checking length of lemmas
         if(inputLemmas.size() < minDocLemmas){
             doc.setTooShort(true);
-            totalDocRemoved++;
+            totalDocRemoved.incrementAndGet();
         }
 
-        docsProcessed++;
+        logProgress(docsProcessed.incrementAndGet());
     }
 
     /**
@@ -253,19 +263,19 @@ public class Lemmatise {
                     .map(e -> e.getKey())
                     .collect(Collectors.toList());
 
-            Documents.entrySet().parallelStream().forEach(e -> e.getValue().removeLemmas(lowCounts));
+            WorkerPool.Run("lemmatise", threads, () -> Documents.entrySet().parallelStream().forEach(e -> e.getValue().removeLemmas(lowCounts)));
             LogPrint.printCompleteStep();
             LogPrint.printNote("Found and removed " + lowCounts.size() + " lemmas with count less than " + (minLemmaCount + 1));
         }
         // Re-checking that documents have the required number of lemmas.
-        Documents.entrySet().parallelStream().forEach(e->{
+        WorkerPool.Run("lemmatise", threads, () -> Documents.entrySet().parallelStream().forEach(e->{
             DocIOWrapper doc = e.getValue();
             if(doc.getLemmas().size() < minDocLemmas && !doc.isRemoved()){
                 doc.setTooShort(true);
-                totalDocRemoved++;
+                totalDocRemoved.incrementAndGet();
             }
             doc.makeLemmaString();
-        });
+        }));
     }
 
     /**
@@ -274,7 +284,7 @@ public class Lemmatise {
     private void OutputJSON(){
         JSONObject root = new JSONObject();
         JSONArray lemmas = new JSONArray();
-        metadata.put("nDocsTooShort", totalDocRemoved);
+        metadata.put("nDocsTooShort", totalDocRemoved.get());
         metadata.put("minDocSize", minDocLemmas);
         JSONArray stopWordsArray = new JSONArray();
         for(String w: stopWords){
@@ -296,9 +306,8 @@ public class Lemmatise {
             metadata.put("minLemmaCount", minLemmaCount);
         }
         root.put("metadata", metadata);
-        DocIOWrapper.PrintLemmas();
         for(Map.Entry<String, DocIOWrapper> entry: Documents.entrySet()){
-            lemmas.add(entry.getValue().toJSON());
+            lemmas.add(entry.getValue().toJSON(DocIOWrapper.PRINT_LEVEL.LEMMAS));
         }
         root.put("lemmas", lemmas);
         JSONIOWrapper.SaveJSON(root, outputFile, 0);
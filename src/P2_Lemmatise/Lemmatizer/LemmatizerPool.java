@@ -0,0 +1,106 @@
+package P2_Lemmatise.Lemmatizer;
+
+import edu.stanford.nlp.tagger.maxent.MaxentTagger;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Consumer;
+
+/**
+ * Class running lemmatisation tasks on a fixed number of worker threads, each worker having its own lemmatiser
+ * pipeline, so that workers do not contend on a shared pipeline. The part-of-speech tagger model is loaded once and
+ * shared by all pipelines (see {@link StanfordLemmatizer#StanfordLemmatizer(MaxentTagger)}).
+ * <br>
+ * Tasks wait in a bounded queue: submitting a task blocks while the queue is full, so that tasks (and the data they
+ * hold) are not all created ahead of the workers.
+ *
+ * @author P. Le Bras
+ * @version 2
+ */
+public class LemmatizerPool implements AutoCloseable {
+
+    /** Number of tasks queued, per worker. */
+    private final static int TASKS_AHEAD = 4;
+    /** Task stopping a worker. */
+    private final static Consumer<StanfordLemmatizer> STOP = lemmatizer -> {};
+
+    /** Tasks waiting for a worker. */
+    private final BlockingQueue<Consumer<StanfordLemmatizer>> tasks;
+    /** Worker threads. */
+    private final Thread[] workers;
+    /** First error thrown by a task, remaining tasks are then skipped. */
+    private volatile Throwable error = null;
+
+    /**
+     * Constructor, loads the tagger, builds one lemmatiser per worker and starts the workers.
+     * @param name Name of the worker threads (e.g. "lemmatise-3").
+     * @param workers Number of workers.
+     */
+    public LemmatizerPool(String name, int workers){
+        tasks = new ArrayBlockingQueue<>(workers * TASKS_AHEAD);
+        MaxentTagger tagger = StanfordLemmatizer.getTagger();
+        this.workers = new Thread[workers];
+        for(int i = 0; i < workers; i++){
+            StanfordLemmatizer lemmatizer = new StanfordLemmatizer(tagger);
+            this.workers[i] = new Thread(() -> work(lemmatizer), name+"-"+(i+1));
+            this.workers[i].setDaemon(true);
+            this.workers[i].start();
+        }
+    }
+
+    /**
+     * Method run by each worker, running tasks with the worker's lemmatiser until stopped.
+     * @param lemmatizer The worker's lemmatiser.
+     */
+    private void work(StanfordLemmatizer lemmatizer){
+        while(true){
+            Consumer<StanfordLemmatizer> task;
+            try {
+                task = tasks.take();
+            } catch (InterruptedException e){
+                return;
+            }
+            if(task == STOP) return;
+            if(error != null) continue;
+            try {
+                task.accept(lemmatizer);
+            } catch (RuntimeException | Error e){
+                synchronized(this){
+                    if(error == null) error = e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Method submitting a task, waiting for room in the queue if needed.
+     * @param task Task, run with the lemmatiser of the worker picking it up.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    public void submit(Consumer<StanfordLemmatizer> task) throws InterruptedException {
+        tasks.put(task);
+    }
+
+    /**
+     * Method waiting for all submitted tasks to complete, then stopping the workers.
+     * The first error thrown by a task, if any, is rethrown.
+     * @throws IllegalStateException If interrupted while waiting, with the thread's interrupt flag set again.
+     */
+    @Override
+    public void close(){
+        try {
+            for(int i = 0; i < workers.length; i++){
+                tasks.put(STOP);
+            }
+            for(Thread worker: workers){
+                worker.join();
+            }
+        } catch (InterruptedException e){
+            // AutoCloseable.close() should not throw InterruptedException, the interrupt is passed on to the caller
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the lemmatisation tasks", e);
+        }
+        if(error instanceof RuntimeException) throw (RuntimeException) error;
+        if(error instanceof Error) throw (Error) error;
+    }
+}
@@ -4,54 +4,79 @@ import edu.stanford.nlp.ling.CoreAnnotations.LemmaAnnotation;
 import edu.stanford.nlp.ling.CoreAnnotations.SentencesAnnotation;
 import edu.stanford.nlp.ling.CoreAnnotations.TokensAnnotation;
 import edu.stanford.nlp.ling.CoreLabel;
-import edu.stanford.nlp.pipeline.Annotation;
-import edu.stanford.nlp.pipeline.StanfordCoreNLP;
+import edu.stanford.nlp.pipeline.*;
+import edu.stanford.nlp.tagger.maxent.MaxentTagger;
 import edu.stanford.nlp.util.CoreMap;
 
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Properties;
 
 /**
  * Class instantiating and launching the lemmatizer provided by the CoreNLP library from Stanford
  * (<a href="https://stanfordnlp.github.io/CoreNLP/"> https://stanfordnlp.github.io/CoreNLP/ </a>).
+ * <br>
+ * A lemmatiser can be built around a part-of-speech tagger shared with other lemmatisers: the tagger model, the
+ * largest part of the pipeline, is then only loaded once, while each lemmatiser has its own annotators, so that
+ * lemmatisers used by different threads do not contend (see {@link LemmatizerPool}).
  *
  * @author S. Padilla, T. Methven, P. Le Bras
- * @version 2
+ * @version 4
  */
 public class StanfordLemmatizer {
 
+    /** Options of the tokeniser. */
+    private final static String TOKENIZE_OPTIONS = "splitHyphenated=false,americanize=false";
+
     /** Lemmatizer pipeline, eg annotating + tokenising + PoS tagging + lemmatising. */
-    protected StanfordCoreNLP pipeline;
+    protected AnnotationPipeline pipeline;
+
+    /** Flag for sharing a single part-of-speech tagger across module runs, defaults to false. */
+    private static boolean sharing = false;
+    /** Part-of-speech tagger shared across module runs, if sharing is on. */
+    private static MaxentTagger sharedTagger;
 
     /**
-     * Constructor, instantiates the lemmatisation pipeline.
+     * Method switching on the sharing of a single part-of-speech tagger across module runs (e.g. when running several
+     * projects in the same process), so the CoreNLP tagger model is only loaded once.
+     */
+    public static synchronized void EnableSharing(){
+        sharing = true;
+    }
+
+    /**
+     * Method getting a part-of-speech tagger: the shared one if sharing is on (loading it on first use), a new one
+     * otherwise. The tagger can be used by several threads at once.
+     * @return The tagger.
+     */
+    public static synchronized MaxentTagger getTagger(){
+        if(!sharing) return new MaxentTagger(MaxentTagger.DEFAULT_JAR_PATH);
+        if(sharedTagger == null) sharedTagger = new MaxentTagger(MaxentTagger.DEFAULT_JAR_PATH);
+        return sharedTagger;
+    }
+
+    /**
+     * Constructor, instantiates the lemmatisation pipeline, with the part-of-speech tagger given by
+     * {@link StanfordLemmatizer#getTagger()}.
      */
     public StanfordLemmatizer() {
-        // Create StanfordCoreNLP object properties, with POS tagging
-        // (required for lemmatization), and lemmatization
-        Properties props;
-        props = new Properties();
-        props.put("annotators", "tokenize, cleanxml, ssplit, pos, lemma");
-        props.setProperty("tokenize.options", "splitHyphenated=false,americanize=false");
-
-        /*
-         * This is a pipeline that takes in a string and returns various analyzed linguistic forms.
-         * The String is tokenized via a tokenizer (such as PTBTokenizerAnnotator),
-         * and then other sequence model style annotation can be used to add things like lemmas,
-         * POS tags, and named entities. These are returned as a list of CoreLabels.
-         * Other analysis components build and store parse trees, dependency graphs, etc.
-         *
-         * This class is designed to apply multiple Annotators to an Annotation.
-         * The idea is that you first build up the pipeline by adding Annotators,
-         * and then you take the objects you wish to annotate and pass them in and
-         * get in return a fully annotated object.
-         *
-         *  StanfordCoreNLP loads a lot of models, so you probably
-         *  only want to do this once per execution
-         */
-        this.pipeline = new StanfordCoreNLP(props);
+        this(getTagger());
+    }
 
+    /**
+     * Constructor, instantiates a lemmatisation pipeline around a given part-of-speech tagger. The pipeline is built
+     * annotator by annotator, as CoreNLP would build it from the properties "annotators: tokenize, cleanxml, ssplit,
+     * pos, lemma" (with the tokeniser options above), but with its own instances, except for the tagger: CoreNLP
+     * would otherwise hand the same annotator instances over to every pipeline.
+     * @param tagger Part-of-speech tagger, possibly shared with other lemmatisers.
+     */
+    public StanfordLemmatizer(MaxentTagger tagger) {
+        AnnotationPipeline annotators = new AnnotationPipeline();
+        annotators.addAnnotator(new TokenizerAnnotator(false, "en", TOKENIZE_OPTIONS));
+        annotators.addAnnotator(new CleanXmlAnnotator());
+        annotators.addAnnotator(new WordsToSentencesAnnotator(false));
+        annotators.addAnnotator(new POSTaggerAnnotator(tagger));
+        annotators.addAnnotator(new MorphaAnnotator(false));
+        this.pipeline = annotators;
     }
 
     /**
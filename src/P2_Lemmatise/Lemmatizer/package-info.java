@@ -1,5 +1,6 @@
 /**
  * P2_Lemmatise.Lemmatizer is a package implementing the Stanford CoreMLP lemmatizer ({@link P2_Lemmatise.Lemmatizer.StanfordLemmatizer})
+ * run by a pool of workers each with its own pipeline ({@link P2_Lemmatise.Lemmatizer.LemmatizerPool}),
  * and integrating custom lists of common stop words ({@link P2_Lemmatise.Lemmatizer.StopWords}) and lemmatisation
  * corrections ({@link P2_Lemmatise.Lemmatizer.ReplaceWords}).
  */
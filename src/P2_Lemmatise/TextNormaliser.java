@@ -0,0 +1,150 @@
+package P2_Lemmatise;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Class normalising the text of documents ahead of lemmatisation: the text is lower-cased, stop phrases are removed,
+ * non-word characters (anything but ASCII letters, digits and '_') are replaced by spaces, protected terms are
+ * restored to their initial form, and white spaces are collapsed.
+ * <br>
+ * Patterns are compiled once, and protected terms are held in a character trie, so that the text is processed by
+ * scanning its characters over a buffer reused by each thread, rather than by a chain of regular expressions.
+ * <br>
+ * A protected term is restored where its processed form (lower-cased, with non-word characters replaced by spaces,
+ * see {@link Lemmatise}) appears in the text between white spaces (or the start/end of the text). Where several
+ * protected terms could be restored at the same place, the longest is.
+ *
+ * @author P. Le Bras
+ * @version 1
+ */
+public class TextNormaliser {
+
+    /** Stop phrases, removed from the lower-cased text. */
+    private final List<Pattern> stopPhrases = new ArrayList<>();
+    /** Trie of the processed forms of protected terms. */
+    private final Node protect = new Node();
+    /** Buffers of the normalised characters, by thread. */
+    private final ThreadLocal<char[]> buffers = ThreadLocal.withInitial(() -> new char[1024]);
+    /** Buffers of the output text, by thread. */
+    private final ThreadLocal<StringBuilder> outputs = ThreadLocal.withInitial(StringBuilder::new);
+
+    /**
+     * Constructor, compiling the stop phrases and building the trie of protected terms.
+     * @param stopPhrases Stop phrases, as regular expressions (matched against the lower-cased text).
+     * @param protect Protected terms: initial form, by processed form.
+     */
+    public TextNormaliser(List<String> stopPhrases, Map<String, String> protect){
+        for(String phrase: stopPhrases){
+            this.stopPhrases.add(Pattern.compile(phrase.toLowerCase(Locale.ROOT)));
+        }
+        for(Map.Entry<String, String> p: protect.entrySet()){
+            // terms without any word character would only match white spaces
+            if(p.getKey().trim().isEmpty()) continue;
+            Node node = this.protect;
+            for(int i = 0; i < p.getKey().length(); i++){
+                int slot = slot(p.getKey().charAt(i));
+                if(node.next[slot] == null) node.next[slot] = new Node();
+                node = node.next[slot];
+            }
+            node.initial = p.getValue();
+        }
+    }
+
+    /**
+     * Method normalising a text.
+     * @param text Text to normalise.
+     * @return The normalised text: lower-cased words and protected terms, separated by single spaces.
+     */
+    public String normalise(String text){
+        text = text.trim();
+        if(!stopPhrases.isEmpty()){
+            text = text.toLowerCase(Locale.ROOT);
+            for(Pattern phrase: stopPhrases){
+                text = phrase.matcher(text).replaceAll(" ");
+            }
+        }
+
+        // lower-casing and replacing non-word characters, up to 2 characters per input character
+        char[] buffer = buffers.get();
+        if(buffer.length < 2 * text.length()){
+            buffer = new char[2 * text.length()];
+            buffers.set(buffer);
+        }
+        int length = 0;
+        for(int i = 0; i < text.length(); i++){
+            char c = text.charAt(i);
+            if(c == '\u0130'){
+                // capital I with dot, lower-cased as an 'i' followed by a combining (non-word) dot
+                buffer[length++] = 'i';
+                buffer[length++] = ' ';
+                continue;
+            }
+            c = Character.toLowerCase(c);
+            buffer[length++] = (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '_' ? c : ' ';
+        }
+
+        // restoring protected terms and collapsing spaces
+        StringBuilder output = outputs.get();
+        output.setLength(0);
+        int i = 0;
+        while(i < length){
+            if(i == 0 || buffer[i - 1] == ' '){
+                String initial = null;
+                int end = i;
+                Node node = protect;
+                for(int j = i; j < length && node != null; j++){
+                    node = node.next[slot(buffer[j])];
+                    if(node != null && node.initial != null && (j + 1 == length || buffer[j + 1] == ' ')){
+                        initial = node.initial;
+                        end = j + 1;
+                    }
+                }
+                if(initial != null){
+                    // the space following the term is kept, so that a term right after can be restored too
+                    append(output, ' ');
+                    for(int j = 0; j < initial.length(); j++) append(output, initial.charAt(j));
+                    append(output, ' ');
+                    i = end;
+                    continue;
+                }
+            }
+            append(output, buffer[i++]);
+        }
+        return output.toString().trim();
+    }
+
+    /**
+     * Method appending a character to the output text, skipping leading and repeated spaces.
+     * @param output Output text.
+     * @param c Character.
+     */
+    private static void append(StringBuilder output, char c){
+        if(c == ' ' && (output.length() == 0 || output.charAt(output.length() - 1) == ' ')) return;
+        output.append(c);
+    }
+
+    /**
+     * Method getting the trie slot of a normalised character.
+     * @param c Character: a lower-case ASCII letter, a digit, '_' or a space.
+     * @return The slot.
+     */
+    private static int slot(char c){
+        if(c >= 'a' && c <= 'z') return c - 'a';
+        if(c >= '0' && c <= '9') return 26 + c - '0';
+        return c == '_' ? 36 : 37;
+    }
+
+    /**
+     * Class holding a node of the trie of protected terms.
+     */
+    private static class Node {
+        /** Child nodes, by slot. */
+        final Node[] next = new Node[38];
+        /** Initial form of the protected term ending at the node, null if none. */
+        String initial = null;
+    }
+}
@@ -1,6 +1,7 @@
 /**
  * P2_Lemmatise is the package implementing the Lemmatise module of the pipeline ({@link P2_Lemmatise.Lemmatise}).
  * Using a Stanford CoreNLP lemmatiser ({@link P2_Lemmatise.Lemmatizer.StanfordLemmatizer}), it transforms the text
- * of documents into a list of lemmatised terms ahead of the topic modelling module.
+ * of documents into a list of lemmatised terms ahead of the topic modelling module. Texts are first normalised by a
+ * {@link P2_Lemmatise.TextNormaliser}.
  */
 package P2_Lemmatise;
\ No newline at end of file
@@ -11,9 +11,12 @@ import de.siegmar.fastcsv.writer.CsvAppender;
 import de.siegmar.fastcsv.writer.CsvWriter;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
 
 import java.io.*;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
@@ -28,7 +31,7 @@ import java.util.stream.Collectors;
  * - (optional) Inferred documents CSV file.
  *
  * @author P. Le Bras
- * @version 2
+ * @version 4
  */
 public class InferDocuments {
 
@@ -106,6 +109,19 @@ public class InferDocuments {
     /** Number of iterations the inference process has to run. */
     private int iterations;
 
+    /** Filename where to save the inferred documents checkpoints, "" if not saved. */
+    private String checkpointFile;
+    /** Number of inferred documents between checkpoints, 0 if not saved. */
+    private int checkpointDocuments;
+    /** Boolean flag for resuming the inference from the last checkpoint. */
+    private boolean resume;
+    /** Topic distributions inferred before the run was interrupted, by document id, read from the checkpoint. */
+    private HashMap<String, JSONObject> inferredCheckpoint;
+    /** Topic distributions inferred since the last checkpoint was saved, one JSON object per line. */
+    private final StringBuilder pendingCheckpoint = new StringBuilder();
+    /** Number of documents inferred since the last checkpoint was saved. */
+    private int docsSinceCheckpoint = 0;
+
     /** List of main topics top words to use as identifier. */
     private HashMap<Integer, String> mainTopicWords;
     /** List of sub topics top words to use as identifier. */
@@ -173,9 +189,16 @@ public class InferDocuments {
 
         iterations = specs.iterations;
 
+        checkpointDocuments = specs.checkpointDocuments;
+        if(checkpointDocuments > 0){
+            checkpointFile = specs.checkpointFile;
+            resume = specs.resume;
+        }
+
         LogPrint.printCompleteStep();
         String serSubModelStr = inferFromSubModel ? " and from sub-model" : "";
-        LogPrint.printNote("Inferring "+ DocumentsToInfer.size()+" document(s) distributions from main model"+serSubModelStr);
+        LogPrint.printNote("Inferring document(s) distributions from main model"+serSubModelStr);
+        if(checkpointDocuments > 0) LogPrint.printNote("Saving inference checkpoints every "+checkpointDocuments+" documents");
         if(exportCSV) LogPrint.printNote("Exporting inferred topic distributions in CSV format");
         if(mergeMainTopics) LogPrint.printNote("Merging inferred main topic data with model main topic data");
         if(mergeSubTopics) LogPrint.printNote("Merging inferred sub topic data with model sub topic data");
@@ -289,7 +312,7 @@ public class InferDocuments {
         LogPrint.printNewStep("Loading serialised main model", 0);
         mainModel = new TopicModel();
         try{
-            mainModel = (TopicModel) (new ObjectInputStream(new FileInputStream(mainModelFile))).readObject();
+            mainModel = TopicModel.Load(mainModelFile);
             LogPrint.printCompleteStep();
         } catch (Exception e){
             LogPrint.printNoteError("Enable to load model from "+mainModelFile);
@@ -300,7 +323,7 @@ public class InferDocuments {
             LogPrint.printNewStep("Loading serialised sub model", 0);
             subModel = new TopicModel();
             try{
-                subModel = (TopicModel) (new ObjectInputStream(new FileInputStream(subModelFile))).readObject();
+                subModel = TopicModel.Load(subModelFile);
                 LogPrint.printCompleteStep();
             } catch (Exception e){
                 LogPrint.printNoteError("Enable to load model from "+subModelFile);
@@ -344,12 +367,95 @@ public class InferDocuments {
         LogPrint.printNewStep("Inferring documents", 0);
 
         totalDocs = DocumentsToInfer.size();
+        LogPrint.printNote("Inferring "+totalDocs+" document(s)");
         inferStartTime = System.currentTimeMillis();
 
+        loadCheckpoint();
         DocumentsToInfer.entrySet().forEach(this::inferDocument);
 
         LogPrint.printNewStep("Inferring documents", 0);
         LogPrint.printCompleteStep();
+
+        // the checkpoint is deleted once the module is recorded as completed (see P0_Project.Checkpoint)
+        if(checkpointDocuments > 0) saveCheckpoint();
+    }
+
+    /**
+     * Method loading the topic distributions saved in the checkpoint, if resuming, or starting a new checkpoint.
+     * <br>
+     * The checkpoint is a JSON lines file, one document per line: {@code {"id": ..., "main": [...], "sub": [...]}}.
+     * A last line cut by an interruption is discarded.
+     */
+    private void loadCheckpoint(){
+        inferredCheckpoint = new HashMap<>();
+        if(checkpointDocuments <= 0) return;
+        File file = new File(checkpointFile);
+        if(!resume || !file.exists()){
+            file.delete();
+            return;
+        }
+        try {
+            byte[] bytes = Files.readAllBytes(file.toPath());
+            int end = bytes.length;
+            while(end > 0 && bytes[end - 1] != '\n') end--;
+            if(end < bytes.length){
+                // truncated to the last complete line, so that new lines are appended after it
+                try(RandomAccessFile raf = new RandomAccessFile(file, "rw")){
+                    raf.setLength(end);
+                }
+            }
+            JSONParser parser = new JSONParser();
+            for(String line: new String(bytes, 0, end, StandardCharsets.UTF_8).split("\n")){
+                if(line.isEmpty()) continue;
+                JSONObject inferred = (JSONObject) parser.parse(line);
+                inferredCheckpoint.put((String) inferred.get("id"), inferred);
+            }
+        } catch (IOException | ParseException | ClassCastException e){
+            LogPrint.printNoteError("Could not read checkpoint "+checkpointFile+", inferring all documents");
+            inferredCheckpoint.clear();
+            file.delete();
+            return;
+        }
+        LogPrint.printNote("Resuming from checkpoint, "+inferredCheckpoint.size()+" document(s) already inferred");
+    }
+
+    /**
+     * Method appending the topic distributions inferred since the last checkpoint to the checkpoint file, so the
+     * inference can resume from this point.
+     */
+    private void saveCheckpoint(){
+        if(pendingCheckpoint.length() == 0) return;
+        // appended directly, in a single write, so it is on disk whatever happens to the rest of the run
+        try(Writer writer = new OutputStreamWriter(new FileOutputStream(checkpointFile, true), StandardCharsets.UTF_8)){
+            writer.write(pendingCheckpoint.toString());
+        } catch (IOException e){
+            LogPrint.printNoteError("Error while saving "+checkpointFile);
+            e.printStackTrace();
+        }
+        pendingCheckpoint.setLength(0);
+        docsSinceCheckpoint = 0;
+    }
+
+    /**
+     * Method converting a topic distribution into a JSON array.
+     * @param distribution Topic distribution to convert.
+     * @return The JSON array.
+     */
+    private static JSONArray toJSONArray(double[] distribution){
+        JSONArray res = new JSONArray();
+        for(double p: distribution) res.add(p);
+        return res;
+    }
+
+    /**
+     * Method converting a JSON array into a topic distribution.
+     * @param array JSON array to convert.
+     * @return The topic distribution.
+     */
+    private static double[] fromJSONArray(JSONArray array){
+        double[] res = new double[array.size()];
+        for(int i = 0; i < res.length; i++) res[i] = ((Number) array.get(i)).doubleValue();
+        return res;
     }
 
     /**
@@ -376,9 +482,25 @@ public class InferDocuments {
         DocIOWrapper doc = document.getValue();
         doc.setInferred(true);
         if(!doc.isRemoved()){
-            doc.setMainTopicDistribution(mainModel.InferTopics(doc.getLemmaString(), iterations));
-            if(inferFromSubModel){
-                doc.setSubTopicDistribution((subModel.InferTopics(doc.getLemmaString(), iterations)));
+            JSONObject saved = inferredCheckpoint.get(doc.getId());
+            if(saved != null){
+                doc.setMainTopicDistribution(fromJSONArray((JSONArray) saved.get("main")));
+                if(inferFromSubModel){
+                    doc.setSubTopicDistribution(fromJSONArray((JSONArray) saved.get("sub")));
+                }
+            } else {
+                doc.setMainTopicDistribution(mainModel.InferTopics(doc.getLemmaString(), iterations));
+                if(inferFromSubModel){
+                    doc.setSubTopicDistribution((subModel.InferTopics(doc.getLemmaString(), iterations)));
+                }
+                if(checkpointDocuments > 0){
+                    JSONObject inferred = new JSONObject();
+                    inferred.put("id", doc.getId());
+                    inferred.put("main", toJSONArray(doc.getMainTopicDistribution()));
+                    if(inferFromSubModel) inferred.put("sub", toJSONArray(doc.getSubTopicDistribution()));
+                    pendingCheckpoint.append(inferred.toJSONString()).append('\n');
+                    if(++docsSinceCheckpoint >= checkpointDocuments) saveCheckpoint();
+                }
             }
         }
         docsProcessed++;
@@ -484,12 +606,11 @@ public class InferDocuments {
         meta.put("nDocsTooShort", getNDocsRemoved(DocumentsToInfer) + getNDocsRemoved(ModelDocuments));
         meta.put("totalDocs", DocumentsToInfer.size()+ModelDocuments.size());
         root.put("metadata", meta);
-        DocIOWrapper.PrintModel();
         for(Map.Entry<String, DocIOWrapper> entry: ModelDocuments.entrySet()){
-            documents.add(entry.getValue().toJSON());
+            documents.add(entry.getValue().toJSON(DocIOWrapper.PRINT_LEVEL.MODEL));
         }
         for(Map.Entry<String, DocIOWrapper> entry: DocumentsToInfer.entrySet()){
-            documents.add(entry.getValue().toJSON());
+            documents.add(entry.getValue().toJSON(DocIOWrapper.PRINT_LEVEL.MODEL));
         }
         root.put("documents", documents);
         JSONIOWrapper.SaveJSON(root, documentsOutput, 1);
@@ -0,0 +1,297 @@
+package P3_TopicModelling;
+
+import P3_TopicModelling.TopicModelCore.TopicModel;
+import PY_Helper.LogPrint;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Class running a resident inference service: serialised topic models are loaded once and the service answers
+ * inference requests over HTTP, on the local host only.
+ * <br>
+ * Requests:
+ * <br>- {@code GET /models}: lists the models loaded, with their number of topics;
+ * <br>- {@code POST /infer}: infers the topic distributions of lemmatised documents, with a JSON body
+ * {@code {"model": "main", "documents": ["lemma lemma ...", ...]}} ("model" is optional if only one model is
+ * loaded), and answers {@code {"model": "main", "distributions": [[0.1, ...], ...]}}.
+ * <br>
+ * Requests on the same model are batched: while the model is busy, incoming documents are queued and then inferred
+ * together, up to a maximum batch size.
+ *
+ * @author P. Le Bras
+ * @version 1
+ */
+public class InferenceServer {
+
+    /**
+     * Class holding a pending inference request.
+     */
+    private static class Request {
+        /** Lemmatised documents to infer. */
+        final List<String> documents;
+        /** Result, completed with the documents' topic distributions. */
+        final CompletableFuture<double[][]> result = new CompletableFuture<>();
+
+        Request(List<String> documents){
+            this.documents = documents;
+        }
+    }
+
+    /**
+     * Class batching and running the inference requests on one model, on a dedicated thread.
+     */
+    private class ModelWorker implements Runnable {
+        /** Model name. */
+        final String name;
+        /** Deserialised model. */
+        final TopicModel model;
+        /** Pending requests. */
+        final LinkedBlockingQueue<Request> queue = new LinkedBlockingQueue<>();
+
+        ModelWorker(String name, TopicModel model){
+            this.name = name;
+            this.model = model;
+        }
+
+        @Override
+        public void run(){
+            List<Request> batch = new ArrayList<>();
+            try {
+                while(true){
+                    // waiting for a request, then taking the ones queued meanwhile, up to the batch size
+                    batch.add(queue.take());
+                    int size = batch.get(0).documents.size();
+                    Request next;
+                    while(size < maxBatch && (next = queue.peek()) != null && size + next.documents.size() <= maxBatch){
+                        batch.add(queue.poll());
+                        size += next.documents.size();
+                    }
+                    List<String> documents = new ArrayList<>(size);
+                    for(Request request: batch) documents.addAll(request.documents);
+                    try {
+                        double[][] distributions = model.InferTopics(documents, iterations);
+                        int offset = 0;
+                        for(Request request: batch){
+                            int count = request.documents.size();
+                            request.result.complete(Arrays.copyOfRange(distributions, offset, offset + count));
+                            offset += count;
+                        }
+                    } catch (RuntimeException e){
+                        for(Request request: batch) request.result.completeExceptionally(e);
+                    }
+                    batch.clear();
+                }
+            } catch (InterruptedException e){
+                // server stopping
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /** Port to listen to. */
+    private final int port;
+    /** Number of iterations for the inferencer to go through. */
+    private final int iterations;
+    /** Maximum number of documents inferred in one batch. */
+    private final int maxBatch;
+    /** Loaded models, by name. */
+    private final LinkedHashMap<String, ModelWorker> workers = new LinkedHashMap<>();
+    /** HTTP server. */
+    private HttpServer server;
+
+    /**
+     * Constructor.
+     * @param port Port to listen to, on the local host.
+     * @param iterations Number of iterations for the inferencer to go through.
+     * @param maxBatch Maximum number of documents inferred in one batch.
+     */
+    public InferenceServer(int port, int iterations, int maxBatch){
+        this.port = port;
+        this.iterations = iterations;
+        this.maxBatch = maxBatch;
+    }
+
+    /**
+     * Method loading a serialised model, to be served under a given name.
+     * @param name Model name, used in requests.
+     * @param filename Serialised model file name.
+     */
+    public void LoadModel(String name, String filename){
+        LogPrint.printNewStep("Loading serialised model "+name+" from "+filename, 0);
+        try {
+            TopicModel model = TopicModel.Load(filename);
+            workers.put(name, new ModelWorker(name, model));
+            LogPrint.printCompleteStep();
+        } catch (Exception e){
+            LogPrint.printNoteError("Enable to load model from "+filename);
+            LogPrint.printNoteError(e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Method starting the model workers and the HTTP server.
+     */
+    public void Start(){
+        for(ModelWorker worker: workers.values()){
+            Thread thread = new Thread(worker, "infer-"+worker.name);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        try {
+            server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        } catch (IOException e){
+            LogPrint.printNoteError("Error while starting the server on port "+port);
+            e.printStackTrace();
+            System.exit(1);
+        }
+        server.createContext("/models", exchange -> guard(exchange, this::handleModels));
+        server.createContext("/infer", exchange -> guard(exchange, this::handleInfer));
+        server.setExecutor(Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors())));
+        server.start();
+        LogPrint.printNote("Inference server listening on http://localhost:"+server.getAddress().getPort()+"/");
+    }
+
+    /**
+     * Method stopping the HTTP server.
+     */
+    public void Stop(){
+        server.stop(0);
+    }
+
+    /**
+     * Method running a request handler, answering with an error if it fails unexpectedly, so that the client is not
+     * left waiting for a response.
+     * @param exchange HTTP exchange.
+     * @param handler Request handler.
+     * @throws IOException If the response cannot be sent.
+     */
+    private static void guard(HttpExchange exchange, HttpHandler handler) throws IOException {
+        try {
+            handler.handle(exchange);
+        } catch (RuntimeException e){
+            LogPrint.printNoteError("Error while answering "+exchange.getRequestURI()+": "+e);
+            respondError(exchange, 500, "Internal error: "+e);
+        }
+    }
+
+    /**
+     * Method answering the request listing the models.
+     * @param exchange HTTP exchange.
+     * @throws IOException If the response cannot be sent.
+     */
+    private void handleModels(HttpExchange exchange) throws IOException {
+        JSONArray models = new JSONArray();
+        for(ModelWorker worker: workers.values()){
+            JSONObject model = new JSONObject();
+            model.put("name", worker.name);
+            model.put("numTopics", worker.model.TOPICS);
+            models.add(model);
+        }
+        JSONObject root = new JSONObject();
+        root.put("models", models);
+        respond(exchange, 200, root);
+    }
+
+    /**
+     * Method answering an inference request.
+     * @param exchange HTTP exchange.
+     * @throws IOException If the response cannot be sent.
+     */
+    private void handleInfer(HttpExchange exchange) throws IOException {
+        if(!exchange.getRequestMethod().equals("POST")){
+            respondError(exchange, 405, "Use POST");
+            return;
+        }
+        JSONObject body;
+        try(Reader reader = new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8)){
+            body = (JSONObject) new JSONParser().parse(reader);
+        } catch (ParseException | RuntimeException e){
+            // the parser can also fail with runtime exceptions on truncated input, e.g. "{"
+            respondError(exchange, 400, "Invalid JSON body");
+            return;
+        }
+        if(body == null){
+            respondError(exchange, 400, "Invalid JSON body");
+            return;
+        }
+        Object model = body.getOrDefault("model", workers.size() == 1 ? workers.keySet().iterator().next() : null);
+        if(model != null && !(model instanceof String)){
+            respondError(exchange, 400, "\"model\" must be a model name");
+            return;
+        }
+        String name = (String) model;
+        ModelWorker worker = name == null ? null : workers.get(name);
+        if(worker == null){
+            respondError(exchange, 404, "Unknown model: "+name);
+            return;
+        }
+        Object documents = body.get("documents");
+        if(!(documents instanceof JSONArray)){
+            respondError(exchange, 400, "Missing \"documents\" list");
+            return;
+        }
+        List<String> texts = new ArrayList<>();
+        for(Object doc: (JSONArray) documents) texts.add(String.valueOf(doc));
+        Request request = new Request(texts);
+        worker.queue.add(request);
+        double[][] distributions;
+        try {
+            distributions = request.result.get();
+        } catch (InterruptedException | ExecutionException e){
+            respondError(exchange, 500, "Error while inferring documents: "+e.getMessage());
+            return;
+        }
+        JSONArray distributionsJSON = new JSONArray();
+        for(double[] distribution: distributions){
+            JSONArray distributionJSON = new JSONArray();
+            for(double p: distribution) distributionJSON.add(p);
+            distributionsJSON.add(distributionJSON);
+        }
+        JSONObject root = new JSONObject();
+        root.put("model", name);
+        root.put("distributions", distributionsJSON);
+        respond(exchange, 200, root);
+    }
+
+    /**
+     * Method sending an error response.
+     * @param exchange HTTP exchange.
+     * @param status HTTP status code.
+     * @param message Error message.
+     * @throws IOException If the response cannot be sent.
+     */
+    private static void respondError(HttpExchange exchange, int status, String message) throws IOException {
+        JSONObject root = new JSONObject();
+        root.put("error", message);
+        respond(exchange, status, root);
+    }
+
+    /**
+     * Method sending a JSON response.
+     * @param exchange HTTP exchange.
+     * @param status HTTP status code.
+     * @param root JSON response.
+     * @throws IOException If the response cannot be sent.
+     */
+    private static void respond(HttpExchange exchange, int status, JSONObject root) throws IOException {
+        byte[] bytes = root.toJSONString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try(OutputStream out = exchange.getResponseBody()){
+            out.write(bytes);
+        }
+    }
+}
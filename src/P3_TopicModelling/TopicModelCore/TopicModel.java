@@ -1,6 +1,7 @@
 package P3_TopicModelling.TopicModelCore;
 
 import PY_Helper.LogPrint;
+import PY_Helper.Pair;
 import PY_Helper.SparseVector;
 import cc.mallet.pipe.CharSequence2TokenSequence;
 import cc.mallet.pipe.Pipe;
@@ -14,6 +15,8 @@ import cc.mallet.topics.TopicInferencer;
 import cc.mallet.types.*;
 
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -22,12 +25,20 @@ import java.util.stream.Collectors;
  * Class running a Topic Model using MALLET.
  *
  * @author S. Padilla, T. Methven, P. Le Bras, A. Vidal
- * @version 4
+ * @version 5
  */
 public class TopicModel implements Serializable {
 
-    /** Number of threads to use for parallel topic modelling. */
-    public static final int PROC = 8;
+    /** Default number of threads to use for parallel topic modelling, one per available processor. */
+    public static final int PROC = Runtime.getRuntime().availableProcessors();
+    /** Interval, in iterations, at which MALLET logs the topics. */
+    private static final int TOPIC_PRINT_INTERVAL = 50;
+    /** Number of words per topic MALLET logs. */
+    private static final int WORDS_PER_TOPIC_PRINT = 10;
+    /** MALLET's default number of iterations before hyperparameters optimisation starts. */
+    private static final int DEFAULT_BURNIN = 200;
+    /** Suffix of the checkpoint holding the completed model's final state. */
+    private static final String FINAL_CHECKPOINT = ".final";
 
     /** Serialisation ID. */
     private static final long serialVersionUID = -8983749417082119056L;
@@ -53,6 +64,15 @@ public class TopicModel implements Serializable {
     public boolean SYMMETRICALPHA = false;
     /** Number of iterations between hyperparameters optimisations. */
     public int OPTIMINTERVAL = 50;
+    /** Number of threads for the sampler, not serialised. */
+    public transient int THREADS = PROC;
+
+    /** Filename prefix for the sampler state checkpoints, not serialised. */
+    public transient String checkpointFile = "";
+    /** Number of sampling iterations between checkpoints, 0 for no checkpoints, not serialised. */
+    public transient int checkpointInterval = 0;
+    /** Flag for resuming the sampling from the last checkpoint, not serialised. */
+    public transient boolean resume = false;
 
     /** Flag for calculating the word distribution differences between documents and topics. */
     public boolean getWordDistances = false;
@@ -79,6 +99,54 @@ public class TopicModel implements Serializable {
     /** Un-serialised record of the topics evolution throughout the modelling process. */
     public transient TopicRecord topicRecord;
 
+    /** Flag for sharing deserialised models across module runs, defaults to false. */
+    private static boolean sharing = false;
+    /** Deserialised models shared across module runs, keyed by file name, with the file's size and modification time. */
+    private static final HashMap<String, Pair<String, TopicModel>> loadedModels = new HashMap<>();
+
+    /**
+     * Method switching on the sharing of deserialised models across module runs (e.g. when running several projects
+     * in the same process), so each serialised model file is only read once, unless it changes.
+     */
+    public static synchronized void EnableSharing(){
+        sharing = true;
+    }
+
+    /**
+     * Method loading a serialised model, from the shared models if sharing is on and the file has not changed.
+     * @param filename Serialised model file name.
+     * @return The deserialised model.
+     * @throws IOException If the file cannot be read.
+     * @throws ClassNotFoundException If the file does not contain a serialised model.
+     */
+    public static TopicModel Load(String filename) throws IOException, ClassNotFoundException {
+        if(!sharing) return deserialise(filename);
+        File file = new File(filename);
+        String key = file.getCanonicalPath();
+        String stamp = file.length()+":"+file.lastModified();
+        synchronized (loadedModels){
+            Pair<String, TopicModel> loaded = loadedModels.get(key);
+            if(loaded == null || !loaded.getLeft().equals(stamp)){
+                loaded = new Pair<>(stamp, deserialise(filename));
+                loadedModels.put(key, loaded);
+            }
+            return loaded.getRight();
+        }
+    }
+
+    /**
+     * Method reading a serialised model.
+     * @param filename Serialised model file name.
+     * @return The deserialised model.
+     * @throws IOException If the file cannot be read.
+     * @throws ClassNotFoundException If the file does not contain a serialised model.
+     */
+    private static TopicModel deserialise(String filename) throws IOException, ClassNotFoundException {
+        try(ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(filename)))){
+            return (TopicModel) in.readObject();
+        }
+    }
+
     /**
      * Empty constructor for inference, attributes loaded from serialised model.
      */
@@ -92,110 +160,34 @@ public class TopicModel implements Serializable {
         this.inputDocuments = docs;
     }
 
+    /**
+     * Constructor creating a new model on the corpus already imported by another model, e.g. to train several models
+     * with different parameters on the same corpus.
+     * @param corpus Model whose corpus has been imported with {@link #ImportCorpus(String)}.
+     */
+    public TopicModel(TopicModel corpus) {
+        this.inputDocuments = corpus.inputDocuments;
+        this.numIDtoStringID = corpus.numIDtoStringID;
+        this.stringIDtoNumID = corpus.stringIDtoNumID;
+        this.instances = corpus.instances;
+    }
+
     /**
      * Method modelling topics from the input documents.
      * @param outputDir Name of directory for writing MALLET files (corpus and diagnostics).
      */
     public void Model(String outputDir){
 
-        // Filenames for MALLET's corpus and diagnostic files
-        String corpusFile = outputDir + File.separator + "malletCorpus.txt";
+        // Filename for MALLET's diagnostic file
         String diagnosticFile = outputDir + File.separator + "malletDiagnostics.xml";
 
-        // ==================================================
-        // Writing the corpus in MALLET's format (tsv: document ID, language, lemmas)
-        // ==================================================
-        try {
-            File file = new File(corpusFile);
-            file.getParentFile().mkdirs();
-            FileWriter writer = new FileWriter(file);
-            int count = 0;
-            for (InputDocument entry : inputDocuments) {
-                if(entry != null) {
-                    writer.write(entry.ID + "\ten\t" + entry.inputLemmas + "\r\n");
-                    numIDtoStringID.add(entry.ID);
-                    stringIDtoNumID.put(entry.ID, count);
-                    count++;
-                }
-            }
-            writer.close();
-        } catch (IOException e) {
-            LogPrint.printNoteError("Could not write file corpus file");
-            LogPrint.printNoteError(e.getMessage());
-            System.exit(1);
-        }
-
-        // ==================================================
-        // Importing the corpus from file
-        // ==================================================
-        ArrayList<Pipe> pipeList = new ArrayList<>();
-
-        // Pipes: lowercase, tokenize, remove stopwords, map to features
-        pipeList.add(new CharSequence2TokenSequence(Pattern.compile("\\p{L}[\\p{L}\\p{P}]+\\p{L}")));
-        pipeList.add(new TokenSequence2FeatureSequence());
-
-        instances = new InstanceList(new SerialPipes(pipeList));
-
-        Reader fileReader = null;
-        try{
-            fileReader = new InputStreamReader(new FileInputStream(corpusFile), "UTF-8");
-        } catch(Exception e){
-            LogPrint.printNoteError("Error: Could not open "+corpusFile);
-            LogPrint.printNoteError(e.getMessage());
-            System.exit(1);
-        }
-
-        instances.addThruPipe(new CsvIterator(fileReader, Pattern.compile("^(\\S*)[\\s,]*(\\S*)[\\s,]*(.*)$"),
-                3, 2, 1)); // data, label, name fields
-
-        // ==================================================
-        // Preparing up the model
-        // ==================================================
-
-        // Create a model with n topics, alpha sum and beta
-        //   Note that alpha is passed as the sum over topics, while
-        //   beta is for a single dimension of the Dirichlet prior.
-        model = new ParallelTopicModel(TOPICS, ALPHASUM, BETA);
-        // set the random seed
-        model.setRandomSeed(SEED);
-        // set the alpha values symmetrical optimisation
-        model.setSymmetricAlpha(SYMMETRICALPHA);
-        // add the documents
-        model.addInstances(instances);
-        // set the number of iterations
-        model.setNumIterations(ITERSAMPLING);
-        // set the number of threads
-        model.setNumThreads(PROC);
-
-        // setting the interval for displaying words when logging,
-        //   first the interval of print, eg. every 100 iterations
-        //   second the number of words to print per topics
-        int topicPrintInterval = 50;
-        int wordPerTopicPrint = 10;
-        model.setTopicDisplay(topicPrintInterval, wordPerTopicPrint);
-        // setting the interval for optimising alpha and beta parameters
-        model.setOptimizeInterval(OPTIMINTERVAL);
+        ImportCorpus(outputDir);
 
         // adding custom log handler to capture model data
         MalletLogHandler logHandler = new MalletLogHandler();
         ParallelTopicModel.logger.addHandler(logHandler);
 
-        // ==================================================
-        // Running the model
-        // ==================================================
-
-        try {
-            // Sample the model, i.e. find more likely solution from sample space
-            model.estimate();
-            if(ITERMAXIMISE > 0){
-                // Run a few extra maximisation steps, i.e. find the local maximum of the solution sampled above
-                model.maximize(ITERMAXIMISE);
-            }
-        } catch (Exception e) {
-            LogPrint.printNoteError("Error: Mallet could not estimate the model!");
-            LogPrint.printNoteError(e.getMessage());
-            System.exit(1);
-        }
+        Estimate();
 
         // ==================================================
         // Recording Mallet logs
@@ -206,7 +198,7 @@ public class TopicModel implements Serializable {
         // recording history log-likelihood
         logLikelihoodRecord = new LogLikelihoodRecord(logHandler.getLLRecords(), model.totalTokens, model.modelLogLikelihood(), ITERSAMPLING);
         // recording history of topics
-        topicRecord = new TopicRecord(logHandler.getTopicRecords(), TOPICS, ITERSAMPLING, topicPrintInterval);
+        topicRecord = new TopicRecord(logHandler.getTopicRecords(), TOPICS, ITERSAMPLING, TOPIC_PRINT_INTERVAL);
 
         // ==================================================
         // Writing Mallet's diagnostics on file
@@ -332,13 +324,252 @@ public class TopicModel implements Serializable {
         }
     }
 
+    /**
+     * Method writing the input documents in MALLET's format and importing them as model instances.
+     * @param outputDir Name of directory for writing MALLET's corpus file.
+     */
+    public void ImportCorpus(String outputDir){
+
+        // Filename for MALLET's corpus file
+        String corpusFile = outputDir + File.separator + "malletCorpus.txt";
+
+        // ==================================================
+        // Writing the corpus in MALLET's format (tsv: document ID, language, lemmas)
+        // ==================================================
+        try {
+            File file = new File(corpusFile);
+            file.getParentFile().mkdirs();
+            FileWriter writer = new FileWriter(file);
+            int count = 0;
+            for (InputDocument entry : inputDocuments) {
+                if(entry != null) {
+                    writer.write(entry.ID + "\ten\t" + entry.inputLemmas + "\r\n");
+                    numIDtoStringID.add(entry.ID);
+                    stringIDtoNumID.put(entry.ID, count);
+                    count++;
+                }
+            }
+            writer.close();
+        } catch (IOException e) {
+            LogPrint.printNoteError("Could not write file corpus file");
+            LogPrint.printNoteError(e.getMessage());
+            System.exit(1);
+        }
+
+        // ==================================================
+        // Importing the corpus from file
+        // ==================================================
+        ArrayList<Pipe> pipeList = new ArrayList<>();
+
+        // Pipes: lowercase, tokenize, remove stopwords, map to features
+        pipeList.add(new CharSequence2TokenSequence(Pattern.compile("\\p{L}[\\p{L}\\p{P}]+\\p{L}")));
+        pipeList.add(new TokenSequence2FeatureSequence());
+
+        instances = new InstanceList(new SerialPipes(pipeList));
+
+        Reader fileReader = null;
+        try{
+            fileReader = new InputStreamReader(new FileInputStream(corpusFile), "UTF-8");
+        } catch(Exception e){
+            LogPrint.printNoteError("Error: Could not open "+corpusFile);
+            LogPrint.printNoteError(e.getMessage());
+            System.exit(1);
+        }
+
+        instances.addThruPipe(new CsvIterator(fileReader, Pattern.compile("^(\\S*)[\\s,]*(\\S*)[\\s,]*(.*)$"),
+                3, 2, 1)); // data, label, name fields
+    }
+
+    /**
+     * Method setting up the MALLET model with this model's parameters and running it on the imported instances.
+     * If checkpoints are on, the sampler state is saved every {@link #checkpointInterval} iterations, and the
+     * sampling can resume from the last saved state. Once completed, the model's final state replaces these
+     * checkpoints, so that resuming does not sample a completed model again.
+     */
+    public void Estimate(){
+
+        if(resume && checkpointInterval > 0 && loadFinalCheckpoint()) return;
+        int doneIterations = resume && checkpointInterval > 0 ? loadCheckpoint() : 0;
+        if(doneIterations > 0){
+            resumeEstimate(doneIterations);
+            return;
+        }
+        deleteCheckpoints();
+
+        // ==================================================
+        // Preparing up the model
+        // ==================================================
+
+        // Create a model with n topics, alpha sum and beta
+        //   Note that alpha is passed as the sum over topics, while
+        //   beta is for a single dimension of the Dirichlet prior.
+        model = new ParallelTopicModel(TOPICS, ALPHASUM, BETA);
+        // set the random seed
+        model.setRandomSeed(SEED);
+        // set the alpha values symmetrical optimisation
+        model.setSymmetricAlpha(SYMMETRICALPHA);
+        // add the documents
+        model.addInstances(instances);
+        // set the number of iterations
+        model.setNumIterations(ITERSAMPLING);
+        // set the number of threads
+        model.setNumThreads(THREADS);
+
+        // setting the interval for displaying words when logging,
+        //   first the interval of print, eg. every 100 iterations
+        //   second the number of words to print per topics
+        model.setTopicDisplay(TOPIC_PRINT_INTERVAL, WORDS_PER_TOPIC_PRINT);
+        // setting the interval for optimising alpha and beta parameters
+        model.setOptimizeInterval(OPTIMINTERVAL);
+        // setting the checkpoints, MALLET appends the iteration number to the file name
+        if(checkpointInterval > 0){
+            model.setSaveSerializedModel(checkpointInterval, checkpointFile + ".0");
+        }
+
+        // ==================================================
+        // Running the model
+        // ==================================================
+
+        try {
+            // Sample the model, i.e. find more likely solution from sample space
+            model.estimate();
+            if(ITERMAXIMISE > 0){
+                // Run a few extra maximisation steps, i.e. find the local maximum of the solution sampled above
+                model.maximize(ITERMAXIMISE);
+            }
+            saveFinalCheckpoint();
+        } catch (Exception e) {
+            LogPrint.printNoteError("Error: Mallet could not estimate the model!");
+            LogPrint.printNoteError(e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Method resuming the sampling from a checkpoint, running the remaining iterations.
+     * @param doneIterations Number of iterations completed at the checkpoint.
+     */
+    private void resumeEstimate(int doneIterations){
+        LogPrint.printNote("Resuming topic model from iteration "+doneIterations);
+        model.setNumThreads(THREADS);
+        model.setTopicDisplay(TOPIC_PRINT_INTERVAL, WORDS_PER_TOPIC_PRINT);
+        model.setOptimizeInterval(OPTIMINTERVAL);
+        // MALLET counts iterations from 1 again, the burn-in period (before optimisation starts) is shortened
+        model.setBurninPeriod(Math.max(0, DEFAULT_BURNIN - doneIterations));
+        model.setSaveSerializedModel(checkpointInterval, checkpointFile + "." + doneIterations);
+        try {
+            if(ITERSAMPLING > doneIterations){
+                model.setNumIterations(ITERSAMPLING - doneIterations);
+                model.estimate();
+            }
+            if(ITERMAXIMISE > 0){
+                model.maximize(ITERMAXIMISE);
+            }
+            saveFinalCheckpoint();
+        } catch (Exception e) {
+            LogPrint.printNoteError("Error: Mallet could not estimate the model!");
+            LogPrint.printNoteError(e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Method loading the most advanced sampler state checkpoint.
+     * @return The number of iterations completed at the checkpoint, 0 if no checkpoint could be loaded.
+     */
+    private int loadCheckpoint(){
+        File latest = null;
+        int latestIterations = 0;
+        for(File f: listCheckpoints()){
+            // checkpoint files are named <checkpointFile>.<iterations before resuming>.<iterations since resuming>
+            String[] counts = f.getName().substring(new File(checkpointFile).getName().length()+1).split("\\.");
+            try {
+                int iterations = Integer.parseInt(counts[0]) + Integer.parseInt(counts[1]);
+                if(iterations > latestIterations){
+                    latest = f;
+                    latestIterations = iterations;
+                }
+            } catch (NumberFormatException | ArrayIndexOutOfBoundsException e){
+                // not a checkpoint
+            }
+        }
+        if(latest == null) return 0;
+        try {
+            model = ParallelTopicModel.read(latest);
+            return latestIterations;
+        } catch (Exception e) {
+            LogPrint.printNoteError("Could not load checkpoint "+latest.getPath()+", sampling from the start");
+            return 0;
+        }
+    }
+
+    /**
+     * Method loading the completed model's final state, if saved before the run was interrupted.
+     * @return True if the final state was loaded, false otherwise.
+     */
+    private boolean loadFinalCheckpoint(){
+        File file = new File(checkpointFile + FINAL_CHECKPOINT);
+        if(!file.exists()) return false;
+        try {
+            model = ParallelTopicModel.read(file);
+            LogPrint.printNote("Model completed before the run was interrupted, sampling skipped");
+            return true;
+        } catch (Exception e) {
+            LogPrint.printNoteError("Could not load checkpoint "+file.getPath()+", sampling from the last checkpoint");
+            return false;
+        }
+    }
+
+    /**
+     * Method saving the completed model's final state, replacing the sampling checkpoints.
+     * @throws IOException If the state cannot be saved.
+     */
+    private void saveFinalCheckpoint() throws IOException {
+        if(checkpointInterval <= 0) return;
+        File file = new File(checkpointFile + FINAL_CHECKPOINT);
+        File temp = new File(checkpointFile + FINAL_CHECKPOINT + ".tmp");
+        // written to a temporary file first, so an interrupted write does not leave a truncated state
+        try(ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))){
+            out.writeObject(model);
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        for(File f: listCheckpoints()){
+            if(!f.getName().equals(file.getName())) f.delete();
+        }
+    }
+
+    /**
+     * Method deleting the sampler state checkpoints, e.g. before sampling a model from the start.
+     */
+    public void deleteCheckpoints(){
+        for(File f: listCheckpoints()){
+            f.delete();
+        }
+    }
+
+    /**
+     * Method listing the sampler state checkpoint files.
+     * @return The list of checkpoint files.
+     */
+    private List<File> listCheckpoints(){
+        List<File> res = new ArrayList<>();
+        if(checkpointInterval <= 0) return res;
+        File prefix = new File(checkpointFile);
+        File[] files = prefix.getAbsoluteFile().getParentFile().listFiles();
+        if(files == null) return res;
+        for(File f: files){
+            if(f.getName().startsWith(prefix.getName()+".")) res.add(f);
+        }
+        return res;
+    }
+
     /**
      * Method inferencing a new document's topic distributions from the model.
      * @param lemmatisedText Lemmatised document to infer.
      * @param iterations Number of iterations.
      * @return The new document's topic probabilities.
      */
-    public double[] InferTopics(String lemmatisedText, int iterations){
+    public synchronized double[] InferTopics(String lemmatisedText, int iterations){
 
         double[] newProbabilities;
 
@@ -364,6 +595,34 @@ public class TopicModel implements Serializable {
         return newProbabilities;
     }
 
+    /**
+     * Method inferencing the topic distributions of a batch of new documents from the model, piping the documents
+     * and creating the inferencer once for the whole batch. Gives the same results as {@link #InferTopics(String, int)}
+     * on each document.
+     * @param lemmatisedTexts Lemmatised documents to infer.
+     * @param iterations Number of iterations.
+     * @return The new documents' topic probabilities, an empty array for documents which could not be inferred.
+     */
+    public synchronized double[][] InferTopics(List<String> lemmatisedTexts, int iterations){
+
+        double[][] newProbabilities = new double[lemmatisedTexts.size()][];
+
+        InstanceList newInstances = new InstanceList(instances.getPipe());
+        TopicInferencer inferencer = model.getInferencer();
+        for(int i = 0; i < lemmatisedTexts.size(); i++){
+            try {
+                newInstances.addThruPipe(new Instance(lemmatisedTexts.get(i), null, "infer", null));
+                inferencer.setRandomSeed(20);
+                newProbabilities[i] = inferencer.getSampledDistribution(newInstances.get(newInstances.size()-1), iterations, 1, 5);
+            } catch (Exception e) {
+                LogPrint.printNoteError("Error while inferring document: " + e.getMessage());
+                newProbabilities[i] = new double[0];
+            }
+        }
+
+        return newProbabilities;
+    }
+
     /** OLD CODE */
     //
     // /** Launch modelling with defaults */
@@ -1,12 +1,14 @@
 package P3_TopicModelling;
 
 import P0_Project.ModelSpecs;
+import P0_Project.SweepSpecs;
 import P0_Project.TopicModelModuleSpecs;
 import P3_TopicModelling.Similarity.TopicsSimilarity;
 import P3_TopicModelling.TopicModelCore.*;
 import PX_Data.*;
 import PY_Helper.LogPrint;
 import PY_Helper.Pair;
+import cc.mallet.topics.TopicModelDiagnostics;
 import de.siegmar.fastcsv.writer.CsvAppender;
 import de.siegmar.fastcsv.writer.CsvWriter;
 import org.json.simple.JSONArray;
@@ -15,7 +17,7 @@ import org.json.simple.JSONObject;
 import java.io.*;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.*;
 
 /**
  * Class reading a lemma JSON file, generating topics from these documents and saving several model files.
@@ -25,7 +27,9 @@ import java.util.concurrent.ConcurrentHashMap;
  * - Topics and Documents JSON files;<br>
  * - (optional) The topic-to-topic similarity matrix CSV file;<br>
  * - (optional) Model's logs of its log-likelihood and topic (JSON files);<br>
- * - (optional) The topic model object serialised (SER file).
+ * - (optional) The topic model object serialised (SER file).<br>
+ * Also runs parameter sweeps, training a model per combination of parameters on the same imported corpus and
+ * saving a comparison table (CSV file).
  *
  * @author T. Methven, P. Le Bras
  * @version 2
@@ -45,6 +49,71 @@ public class TopicModelling {
             -637117566,  1420898137,  366206483,   213561271,   1791833142,  -919814411,  1104666572,  1089758161,  -513481178,  291291728,
             -1821691956, -1915769653, 132274482,   1199014123,  1864061694,  -1589540732, 295595372,   -131466196,  -2096364649, -699552916};
 
+    /**
+     * Class holding the parameters and results of a model trained in a parameter sweep.
+     */
+    private class SweepRun {
+        /** Number of topics. */
+        final int topics;
+        /** Sum of the alpha hyperparameters. */
+        final double alphaSum;
+        /** Beta hyperparameter. */
+        final double beta;
+        /** Index of the random seed. */
+        final int seedIndex;
+        /** Final log-likelihood. */
+        double ll;
+        /** Final log-likelihood per token. */
+        double llPerToken;
+        /** Number of tokens in the model. */
+        int tokens;
+        /** Mean topic coherence, from MALLET's diagnostics. */
+        double coherence;
+        /** Mean topic exclusivity, from MALLET's diagnostics. */
+        double exclusivity;
+        /** Mean effective number of words per topic, from MALLET's diagnostics. */
+        double effectiveWords;
+        /** Training time, in milliseconds. */
+        long timeMs;
+
+        SweepRun(int topics, double alphaSum, double beta, int seedIndex){
+            this.topics = topics;
+            this.alphaSum = alphaSum;
+            this.beta = beta;
+            this.seedIndex = seedIndex;
+        }
+
+        /**
+         * Method training the model on the imported corpus and recording its results, the model is then discarded.
+         * @param corpus Model holding the imported corpus.
+         * @param threads Number of threads for the sampler.
+         */
+        void train(TopicModel corpus, int threads){
+            long startTime = System.currentTimeMillis();
+            TopicModel model = new TopicModel(corpus);
+            model.TOPICS = topics;
+            model.SEED = RANDOM_SEEDS[seedIndex];
+            model.ITERSAMPLING = nIterationsSampling;
+            model.ITERMAXIMISE = nIterationsMaximisation;
+            model.OPTIMINTERVAL = optimInterval;
+            model.ALPHASUM = alphaSum;
+            model.BETA = beta;
+            model.SYMMETRICALPHA = symmetricAlpha;
+            model.THREADS = threads;
+            model.Estimate();
+            timeMs = System.currentTimeMillis() - startTime;
+            ll = model.model.modelLogLikelihood();
+            tokens = model.model.totalTokens;
+            llPerToken = ll / tokens;
+            TopicModelDiagnostics diagnostics = new TopicModelDiagnostics(model.model, 10);
+            coherence = Arrays.stream(diagnostics.getCoherence().scores).average().orElse(0);
+            exclusivity = Arrays.stream(diagnostics.getExclusivity().scores).average().orElse(0);
+            effectiveWords = Arrays.stream(diagnostics.getEffectiveNumberOfWords().scores).average().orElse(0);
+            LogPrint.printNote("Sweep model with "+topics+" topics, alphaSum "+alphaSum+", beta "+beta+" and seed "
+                    +seedIndex+" completed in "+timeMs+" ms");
+        }
+    }
+
     /** Number of documents skipped for the model, ie, with too few lemmas. */
     private int skipCount = 0;
 
@@ -62,6 +131,8 @@ public class TopicModelling {
     private double[][] SimilarityMatrix;
     /** Topic model object. */
     private TopicModel tModel;
+    /** Models trained in a parameter sweep. */
+    private List<SweepRun> SweepRuns;
 
     // Model settings
 
@@ -118,6 +189,14 @@ public class TopicModelling {
     private String serialiseFile = "";
     /** Boolean flag for writing the serialised model on file. */
     private boolean serialise = false;
+    /** Number of threads for the sampler. */
+    private int threads;
+    /** Filename prefix for the sampler state checkpoints, "" if not saved. */
+    private String checkpointFile = "";
+    /** Number of sampling iterations between checkpoints, 0 if not saved. */
+    private int checkpointIterations = 0;
+    /** Boolean flag for resuming the sampling from the last checkpoint. */
+    private boolean resume = false;
 
     /**
      * Method running a topic model as sub-module, eg, for hierarchical modelling.
@@ -166,6 +245,32 @@ public class TopicModelling {
         return "Simple topic modelling: "+Math.floorDiv(timeTaken, 60) + " m, " + timeTaken % 60 + " s";
     }
 
+    /**
+     * Main method for a parameter sweep (if class used as a module and sweep specifications are given), reads the
+     * specification, trains a model for each combination of parameters and saves a comparison table.
+     * @param specs Specifications.
+     * @return String indicating the time taken to read the lemmas JSON file, train the models and save the table.
+     */
+    public static String Sweep(TopicModelModuleSpecs specs){
+
+        LogPrint.printModuleStart("Topic model sweep");
+
+        long startTime = System.currentTimeMillis();
+
+        TopicModelling startClass = new TopicModelling();
+        LemmaReader reader = new LemmaReader(specs.lemmas);
+        startClass.ProcessArguments(specs, specs.mainModel, reader);
+        startClass.AddLemmasToModel();
+        startClass.RunSweep(specs.sweep);
+        startClass.SaveSweep(specs.sweep.output);
+
+        long timeTaken = (System.currentTimeMillis() - startTime) / (long)1000;
+
+        LogPrint.printModuleEnd("Topic model sweep");
+
+        return "Topic model sweep: "+Math.floorDiv(timeTaken, 60) + " m, " + timeTaken % 60 + " s";
+    }
+
     /**
      * Method processing the specification parameters.
      * @param specs Module specifications.
@@ -211,12 +316,19 @@ public class TopicModelling {
         if(outputTopicLog){
             topicLogOutput = modelSpecs.topicLogOutput;
         }
+        threads = specs.threads;
+        checkpointIterations = specs.checkpointIterations;
+        if(checkpointIterations > 0){
+            checkpointFile = specs.getCheckpointFile(modelSpecs);
+            resume = specs.resume;
+        }
 
         LogPrint.printCompleteStep();
         String iter = " in "+nIterationsSampling+" sampling iterations";
         if(nIterationsMaximisation > 0) iter += " and "+nIterationsMaximisation+" maximisation iterations";
         LogPrint.printNote("Modelling "+nTopics+" topics"+iter);
         LogPrint.printNote("Saving "+nWords+" words and "+nDocs+" docs");
+        LogPrint.printNote("Sampling on "+threads+" threads");
         String sym = "";
         if(symmetricAlpha) sym += " (symmetrical) ";
         LogPrint.printNote("Using AlphaSum of "+alphaSum+sym+" and Beta of "+beta);
@@ -232,6 +344,9 @@ public class TopicModelling {
         if(serialise){
             LogPrint.printNote("Serialising model");
         }
+        if(checkpointIterations > 0){
+            LogPrint.printNote("Saving model checkpoints every "+checkpointIterations+" iterations");
+        }
     }
 
     /**
@@ -286,8 +401,15 @@ public class TopicModelling {
         tModel.BETA = beta;
         tModel.SYMMETRICALPHA = symmetricAlpha;
         tModel.getWordDistances = getWordDistances;
+        tModel.THREADS = threads;
+        tModel.checkpointFile = checkpointFile;
+        tModel.checkpointInterval = checkpointIterations;
+        tModel.resume = resume;
 
         tModel.Model(outputDir);
+        // the completed model's state is kept until the module is recorded as completed (see P0_Project.Checkpoint),
+        // a failed model is sampled again from the start
+        resume = false;
 
         if(tModel.modelledDocuments == null || tModel.modelledDocuments.isEmpty()){
             LogPrint.printNote("Model failed! Trying again");
@@ -304,6 +426,78 @@ public class TopicModelling {
         if(serialise) serialiseModel();
     }
 
+    /**
+     * Method importing the corpus once and training a model for each combination of the sweep parameters,
+     * concurrently within the sweep's thread budget.
+     * @param sweep Sweep specifications.
+     */
+    private void RunSweep(SweepSpecs sweep){
+        LogPrint.printNewStep("Importing corpus", 0);
+        TopicModel corpus = new TopicModel(ModelInput);
+        corpus.ImportCorpus(outputDir);
+        LogPrint.printCompleteStep();
+
+        SweepRuns = new ArrayList<>();
+        for(int topics: sweep.topics)
+            for(double alpha: sweep.alphaSum)
+                for(double b: sweep.beta)
+                    for(int seed: sweep.seedIndex)
+                        SweepRuns.add(new SweepRun(topics, alpha, b, seed));
+        int concurrent = Math.min(sweep.threads, SweepRuns.size());
+        int threadsPerModel = Math.max(1, sweep.threads / concurrent);
+        LogPrint.printNote("Training "+SweepRuns.size()+" models, "+concurrent+" at a time, with "+threadsPerModel+" threads each");
+
+        LogPrint.printNewStep("Topic modelling", 0);
+        LogPrint.printNote("Following output from Mallet\n");
+        ExecutorService executor = Executors.newFixedThreadPool(concurrent);
+        List<Future<?>> futures = new ArrayList<>();
+        for(SweepRun run: SweepRuns){
+            futures.add(executor.submit(() -> run.train(corpus, threadsPerModel)));
+        }
+        try {
+            for(Future<?> future: futures){
+                future.get();
+            }
+        } catch (InterruptedException | ExecutionException e){
+            LogPrint.printNoteError("Error while training the sweep models");
+            e.printStackTrace();
+            System.exit(1);
+        } finally {
+            executor.shutdown();
+        }
+        LogPrint.printNewStep("Topic modelling", 0);
+        LogPrint.printCompleteStep();
+
+        SweepRun best = Collections.max(SweepRuns, Comparator.comparingDouble(r -> r.llPerToken));
+        LogPrint.printNote("Best log-likelihood per token: "+best.llPerToken+" with "+best.topics+" topics, alphaSum "
+                +best.alphaSum+", beta "+best.beta+" and seed "+best.seedIndex);
+    }
+
+    /**
+     * Method writing the sweep comparison table on file (CSV).
+     * @param sweepOutput Filename for the table.
+     */
+    private void SaveSweep(String sweepOutput){
+        LogPrint.printNewStep("Saving sweep comparison table", 0);
+        File file = new File(sweepOutput);
+        file.getParentFile().mkdirs();
+        CsvWriter writer = new CsvWriter();
+        try(CsvAppender appender = writer.append(file, StandardCharsets.UTF_8)){
+            appender.appendLine("topics", "alphaSum", "beta", "seed", "logLikelihood", "logLikelihoodPerToken",
+                    "tokens", "coherence", "exclusivity", "effectiveNumberOfWords", "timeMs");
+            for(SweepRun run: SweepRuns){
+                appender.appendLine(String.valueOf(run.topics), String.valueOf(run.alphaSum), String.valueOf(run.beta),
+                        String.valueOf(run.seedIndex), String.valueOf(run.ll), String.valueOf(run.llPerToken),
+                        String.valueOf(run.tokens), String.valueOf(run.coherence), String.valueOf(run.exclusivity),
+                        String.valueOf(run.effectiveWords), String.valueOf(run.timeMs));
+            }
+            LogPrint.printCompleteStep();
+        } catch (Exception e){
+            LogPrint.printNoteError("Error while saving sweep comparison table\n");
+            e.printStackTrace();
+        }
+    }
+
     /**
      * Method writing the model's log-likelihood logs on file (JSON).
      */
@@ -518,9 +712,8 @@ public class TopicModelling {
             meta.put("nTopicsSub", nTopicsSub);
         }
         root.put("metadata", meta);
-        DocIOWrapper.PrintModel();
         for(Map.Entry<String, DocIOWrapper> entry: Documents.entrySet()){
-            documents.add(entry.getValue().toJSON());
+            documents.add(entry.getValue().toJSON(DocIOWrapper.PRINT_LEVEL.MODEL));
         }
         root.put("documents", documents);
         JSONIOWrapper.SaveJSON(root, docOutput, 0);
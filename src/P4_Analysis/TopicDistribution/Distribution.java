@@ -3,18 +3,14 @@ package P4_Analysis.TopicDistribution;
 import P0_Project.DistribSpecs;
 import PX_Data.DocIOWrapper;
 import PX_Data.JSONIOWrapper;
+import PX_Data.ParallelCSVReader;
 import PX_Data.TopicIOWrapper;
 import PY_Helper.LogPrint;
-import de.siegmar.fastcsv.reader.CsvParser;
-import de.siegmar.fastcsv.reader.CsvReader;
-import de.siegmar.fastcsv.reader.CsvRow;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 
-import java.io.File;
 import java.io.IOException;
 import java.math.RoundingMode;
-import java.nio.charset.StandardCharsets;
 import java.text.DecimalFormat;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
@@ -95,6 +91,8 @@ public class Distribution {
     private String domainDataId;
     /** In the domain data file, which fields to read as data. */
     private HashMap<String, String> domainDataFields;
+    /** Number of threads parsing the domain data file. */
+    private int threads;
     /** Distribution domain data, for each domain entry, list of data keys and values. */
     private HashMap<String, HashMap<String, String>> domainData;
 
@@ -121,6 +119,7 @@ public class Distribution {
             domainDataFile = specs.domainDataFile;
             domainDataId = specs.domainDataId;
             domainDataFields = specs.domainDataFields;
+            threads = specs.threads;
             // loadDomainData();
         }
     }
@@ -392,20 +391,16 @@ public class Distribution {
     public void loadDomainData(int depth){
         if(includeDomainData && !this.saveInTopics()){
             domainData = new HashMap<>();
-            File file = new File(domainDataFile);
-            CsvReader csvReader = new CsvReader();
-            csvReader.setContainsHeader(true);
             LogPrint.printNewStep("Reading distribution domain data: "+domainDataFile, depth);
-            try(CsvParser csvParser = csvReader.parse(file, StandardCharsets.UTF_8)){
-                CsvRow row;
-                while((row = csvParser.nextRow()) != null){
+            try {
+                ParallelCSVReader.Read(domainDataFile, threads, (row, rowNum) -> {
                     String domainId = row.getField(domainDataId);
                     HashMap<String,String> domainDataEntry = new HashMap<>();
                     for(Map.Entry<String, String> fieldsEntry: domainDataFields.entrySet()){
                         domainDataEntry.put(fieldsEntry.getKey(), row.getField(fieldsEntry.getValue()));
                     }
                     domainData.put(domainId, domainDataEntry);
-                }
+                });
             } catch (IOException e){
                 LogPrint.printNoteError("Error while reading the distribution domain data CSV file.");
                 e.printStackTrace();
@@ -0,0 +1,283 @@
+package PX_Data;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Class opening files for reading or writing, transparently (de)compressing files with a '.gz' extension.
+ * <br>
+ * Compressed files are (de)compressed on a background thread, handing chunks of data over to (or from) the caller
+ * through a bounded queue, so that parsing (or serialising) the data overlaps with the file I/O and the
+ * (de)compression. Other files are simply buffered.
+ *
+ * @author P. Le Bras
+ * @version 1
+ */
+public class CompressedFiles {
+
+    /** Extension of compressed files. */
+    public final static String EXTENSION = ".gz";
+    /** Size, in bytes, of the chunks handed over between threads, and of the buffers of uncompressed files. */
+    private final static int CHUNK_SIZE = 1 << 20;
+    /** Number of chunks queued between threads. */
+    private final static int CHUNKS_AHEAD = 8;
+    /** Size, in bytes, of the (de)compression buffers. */
+    private final static int GZIP_BUFFER_SIZE = 1 << 16;
+    /** Marker of the end of the data in the queue. */
+    private final static byte[] END = new byte[0];
+
+    /**
+     * Method checking if a file is compressed, from its name.
+     * @param filename File name.
+     * @return True if the file name ends with '.gz'.
+     */
+    public static boolean IsCompressed(String filename){
+        return filename.toLowerCase().endsWith(EXTENSION);
+    }
+
+    /**
+     * Method opening a file for reading, decompressing it on a background thread if compressed.
+     * @param filename File name.
+     * @return The input stream on the (decompressed) data.
+     * @throws IOException If the file cannot be opened, or is not a valid compressed file.
+     */
+    public static InputStream OpenInput(String filename) throws IOException {
+        if(!IsCompressed(filename)) return new BufferedInputStream(new FileInputStream(filename), CHUNK_SIZE);
+        return new DecompressingInput(new FileInputStream(filename));
+    }
+
+    /**
+     * Method opening a file for writing, compressing it on a background thread if its name ends with '.gz'.
+     * The stream must be closed for the file to be complete.
+     * @param filename File name.
+     * @return The output stream on the (uncompressed) data.
+     * @throws IOException If the file cannot be opened.
+     */
+    public static OutputStream OpenOutput(String filename) throws IOException {
+        if(!IsCompressed(filename)) return new BufferedOutputStream(new FileOutputStream(filename), CHUNK_SIZE);
+        return new CompressingOutput(new FileOutputStream(filename));
+    }
+
+    /**
+     * Class reading a compressed file, decompressed ahead by a background thread.
+     */
+    private static class DecompressingInput extends InputStream {
+        /** Chunks decompressed, waiting to be read. */
+        private final BlockingQueue<byte[]> chunks = new ArrayBlockingQueue<>(CHUNKS_AHEAD);
+        /** Thread decompressing the file. */
+        private final Thread thread;
+        /** Error met while decompressing, thrown to the reader once the chunks before it are read. */
+        private volatile IOException error = null;
+        /** Chunk being read. */
+        private byte[] chunk = END;
+        /** Position in the chunk being read. */
+        private int position = 0;
+        /** Flag set once the end of the data is reached. */
+        private boolean ended = false;
+
+        DecompressingInput(InputStream file) throws IOException {
+            GZIPInputStream in;
+            try {
+                // reads the header, so that a file which is not compressed fails straight away
+                in = new GZIPInputStream(file, GZIP_BUFFER_SIZE);
+            } catch (IOException e){
+                file.close();
+                throw e;
+            }
+            thread = new Thread(() -> decompress(in), "gzip-read");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        /**
+         * Method decompressing the file chunk by chunk, run on the background thread.
+         * @param in Decompressing stream on the file.
+         */
+        private void decompress(GZIPInputStream in){
+            try(InputStream gz = in){
+                int read;
+                do {
+                    byte[] buffer = new byte[CHUNK_SIZE];
+                    read = gz.readNBytes(buffer, 0, CHUNK_SIZE);
+                    if(read > 0) chunks.put(read < CHUNK_SIZE ? Arrays.copyOf(buffer, read) : buffer);
+                } while(read == CHUNK_SIZE);
+            } catch (IOException e){
+                error = e;
+            } catch (InterruptedException e){
+                // stream closed by the reader
+                return;
+            }
+            try {
+                chunks.put(END);
+            } catch (InterruptedException e){
+                // stream closed by the reader
+            }
+        }
+
+        /**
+         * Method making sure there is data left in the current chunk, waiting for the next chunk if needed.
+         * @return False once the end of the data is reached.
+         * @throws IOException If the decompression failed.
+         */
+        private boolean next() throws IOException {
+            while(position == chunk.length){
+                if(ended) return false;
+                try {
+                    chunk = chunks.take();
+                } catch (InterruptedException e){
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while decompressing");
+                }
+                position = 0;
+                if(chunk == END){
+                    ended = true;
+                    if(error != null) throw new IOException("Error while decompressing", error);
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if(!next()) return -1;
+            return chunk[position++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if(len == 0) return 0;
+            if(!next()) return -1;
+            int read = Math.min(len, chunk.length - position);
+            System.arraycopy(chunk, position, b, off, read);
+            position += read;
+            return read;
+        }
+
+        @Override
+        public void close(){
+            ended = true;
+            chunk = END;
+            position = 0;
+            thread.interrupt();
+        }
+    }
+
+    /**
+     * Class writing a compressed file, compressed by a background thread.
+     */
+    private static class CompressingOutput extends OutputStream {
+        /** Chunks written, waiting to be compressed. */
+        private final BlockingQueue<byte[]> chunks = new ArrayBlockingQueue<>(CHUNKS_AHEAD);
+        /** Thread compressing the file. */
+        private final Thread thread;
+        /** Error met while compressing, thrown to the writer. */
+        private volatile IOException error = null;
+        /** Chunk being written. */
+        private byte[] chunk = new byte[CHUNK_SIZE];
+        /** Position in the chunk being written. */
+        private int position = 0;
+        /** Flag set once the stream is closed. */
+        private boolean closed = false;
+
+        CompressingOutput(OutputStream file){
+            thread = new Thread(() -> compress(file), "gzip-write");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        /**
+         * Method compressing the chunks written until the end marker, run on the background thread.
+         * @param file Stream on the file.
+         */
+        private void compress(OutputStream file){
+            try(GZIPOutputStream gz = new GZIPOutputStream(file, GZIP_BUFFER_SIZE)){
+                byte[] data;
+                while((data = chunks.take()) != END){
+                    // after a failure, chunks are still taken so that the writer is not blocked
+                    if(error == null){
+                        try {
+                            gz.write(data);
+                        } catch (IOException e){
+                            error = e;
+                        }
+                    }
+                }
+            } catch (IOException e){
+                if(error == null) error = e;
+            } catch (InterruptedException e){
+                if(error == null) error = new InterruptedIOException("Interrupted while compressing");
+            }
+        }
+
+        /**
+         * Method handing the current chunk over to the background thread.
+         * @throws IOException If the compression failed.
+         */
+        private void handOver() throws IOException {
+            if(error != null) throw new IOException("Error while compressing", error);
+            if(position == 0) return;
+            try {
+                chunks.put(position < chunk.length ? Arrays.copyOf(chunk, position) : chunk);
+            } catch (InterruptedException e){
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while compressing");
+            }
+            if(position == chunk.length) chunk = new byte[CHUNK_SIZE];
+            position = 0;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if(position == chunk.length) handOver();
+            chunk[position++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while(len > 0){
+                if(position == chunk.length) handOver();
+                int written = Math.min(len, chunk.length - position);
+                System.arraycopy(b, off, chunk, position, written);
+                position += written;
+                off += written;
+                len -= written;
+            }
+        }
+
+        /**
+         * Method handing the data written so far over to the background thread, the data is only written on file
+         * when closing the stream.
+         * @throws IOException If the compression failed.
+         */
+        @Override
+        public void flush() throws IOException {
+            if(!closed) handOver();
+        }
+
+        /**
+         * Method handing the remaining data over, and waiting for the file to be compressed and closed.
+         * @throws IOException If the compression failed.
+         */
+        @Override
+        public void close() throws IOException {
+            if(closed) return;
+            try {
+                handOver();
+            } finally {
+                closed = true;
+                try {
+                    chunks.put(END);
+                    thread.join();
+                } catch (InterruptedException e){
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while compressing");
+                }
+            }
+            if(error != null) throw new IOException("Error while compressing", error);
+        }
+    }
+}
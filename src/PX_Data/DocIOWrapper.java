@@ -13,19 +13,17 @@ import java.util.*;
  * and transform it into a JSON format to write on file.
  *
  * @author P. Le Bras
- * @version 1
+ * @version 3
  */
 public class DocIOWrapper {
 
-    /** Indicators of the level of information to save:
-     * <br>"" -> basic document data
-     * <br>"Lemmas" -> above + lemmatised text
-     * <br>"Model" -> above + topic weights */
-    private static String ToPrint = "";
-    /** Sets {@link DocIOWrapper#ToPrint} to "Lemmas" */
-    public static void PrintLemmas(){ToPrint = "Lemmas";}
-    /** Sets {@link DocIOWrapper#ToPrint} to "Model" */
-    public static void PrintModel(){ToPrint = "Model";}
+    /** Levels of information to save:
+     * <br>INPUT -> basic document data
+     * <br>LEMMAS -> above + lemmatised text
+     * <br>MODEL -> above + topic weights
+     * <br>Given with each call to {@link DocIOWrapper#toJSON(PRINT_LEVEL)}, as modules from different projects may
+     * save documents concurrently, from any thread. */
+    public enum PRINT_LEVEL {INPUT, LEMMAS, MODEL};
 
     /** The document id. */
     private String docId;
@@ -46,6 +44,9 @@ public class DocIOWrapper {
     /** Flag set by the {@link P2_Lemmatise.Lemmatise} module, marking the document as too short, excluding it from
      * the model. */
     private boolean tooShort = false;
+    /** Id of the document this document is a near-duplicate of, set by the {@link P1_Input} modules, excluding it
+     * from the model, null if not a duplicate. */
+    private String duplicateOf = null;
     // used or set by topic modelling module
     /** The distribution of main topics in the document. */
     private double[] mainTopicDistribution;
@@ -85,6 +86,8 @@ public class DocIOWrapper {
         this.docData = JSONIOWrapper.getStringMap((JSONObject) jsonDoc.get("docData"));
         // set by lemmatise module
         this.tooShort = (boolean) jsonDoc.getOrDefault("tooShort", false);
+        // set by input modules
+        this.duplicateOf = (String) jsonDoc.get("duplicateOf");
         this.lemmaString = (String) jsonDoc.getOrDefault("lemmas", "");
         this.numLemmas = Math.toIntExact((long) jsonDoc.getOrDefault("numLemmas", (long) 0));
         // set by model module
@@ -130,6 +133,7 @@ public class DocIOWrapper {
         this.lemmaString = doc.lemmaString;
         this.numLemmas = doc.numLemmas;
         this.tooShort = doc.tooShort;
+        this.duplicateOf = doc.duplicateOf;
         if(doc.mainTopicDistribution != null){
             this.mainTopicDistribution = doc.mainTopicDistribution;
             if(doc.subTopicDistribution != null){
@@ -352,12 +356,28 @@ public class DocIOWrapper {
         tooShort = b;
     }
 
+    /**
+     * Setter for the id of the document this document is a near-duplicate of.
+     * @param id Id of the original document.
+     */
+    public void setDuplicateOf(String id){
+        duplicateOf = id;
+    }
+
+    /**
+     * Getter for the id of the document this document is a near-duplicate of.
+     * @return The id of the original document, null if not a duplicate.
+     */
+    public String getDuplicateOf(){
+        return duplicateOf;
+    }
+
     /**
      * Getter for removed flag.
-     * @return The removed flag.
+     * @return The removed flag: true if the document is too short or a near-duplicate.
      */
     public boolean isRemoved(){
-        return tooShort;
+        return tooShort || duplicateOf != null;
     }
 
     /**
@@ -528,10 +548,19 @@ public class DocIOWrapper {
     }
 
     /**
-     * Formats the document into a JSON object to write on file.
+     * Formats the document's basic data into a JSON object to write on file.
      * @return The JSON formatted document.
      */
     public JSONObject toJSON(){
+        return toJSON(PRINT_LEVEL.INPUT);
+    }
+
+    /**
+     * Formats the document into a JSON object to write on file.
+     * @param level Level of information to save.
+     * @return The JSON formatted document.
+     */
+    public JSONObject toJSON(PRINT_LEVEL level){
         JSONObject root = new JSONObject();
         // Saving id and index
         root.put("docId", docId);
@@ -546,17 +575,20 @@ public class DocIOWrapper {
         if(tooShort){
             root.put("tooShort", true);
         }
+        if(duplicateOf != null){
+            root.put("duplicateOf", duplicateOf);
+        }
         // Saving inferred data
         if(inferred){
             root.put("inferred", true);
         }
         // Saving Lemmas
-        if(ToPrint.equals("Lemmas")){
+        if(level == PRINT_LEVEL.LEMMAS){
             root.put("numLemmas", numLemmas);
             root.put("lemmas", lemmaString);
         }
         // Saving Model
-        else if(ToPrint.equals("Model") && !this.isRemoved()){
+        else if(level == PRINT_LEVEL.MODEL && !this.isRemoved()){
             root.put("numLemmas", numLemmas);
             JSONArray topicDistrib = getDistribJSON(mainTopicDistribution);
             root.put("mainTopicDistribution", topicDistrib);
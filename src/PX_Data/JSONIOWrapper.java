@@ -6,22 +6,252 @@ import org.json.simple.JSONObject;
 import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
 
-import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
-import java.io.IOException;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * This class provides static methods for reading and writing JSON files.
  * It also includes static methods to parse JSON objects and arrays (from {@link org.json.simple})
  * to Java data structures.
+ * <br>
+ * Files with a '.gz' extension are transparently compressed and decompressed.
  *
  * @author P. Le Bras
- * @version 1
+ * @version 2
  */
 public class JSONIOWrapper {
 
+    /** Flag for keeping saved JSON data in memory and handing it over to later loads of the same file. */
+    private static boolean inMemory = false;
+    /** JSON data (JSONObject or JSONArray) saved during the run, keyed by file name, used if in-memory mode is on. */
+    private static final ConcurrentHashMap<String, Object> memoryStore = new ConcurrentHashMap<>();
+    /** Pending asynchronous writes, keyed by file name, used if in-memory mode is on. */
+    private static final ConcurrentHashMap<String, Future<?>> pendingWrites = new ConcurrentHashMap<>();
+    /** Number of expected loads of a file not done yet, keyed by file name, used if in-memory mode is on.
+     * Once all have been done, the file's data is released from memory. */
+    private static final ConcurrentHashMap<String, Integer> readsLeft = new ConcurrentHashMap<>();
+    /** Background writer, used if in-memory mode is on. */
+    private static ExecutorService writer;
+
+    /**
+     * Method switching on the in-memory mode: saved JSON data is kept in memory and written on file by a background
+     * thread, later loads of the same file name are served from memory instead of parsing the file again.
+     * {@link JSONIOWrapper#FlushWrites()} should be called before the process exits; pending writes are also
+     * completed when the process exits early (e.g. on an error), so that files reported as saved are on disk.
+     */
+    public static synchronized void EnableInMemory(){
+        if(!inMemory){
+            inMemory = true;
+            writer = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "json-writer");
+                t.setDaemon(true);
+                return t;
+            });
+            Runtime.getRuntime().addShutdownHook(new Thread(JSONIOWrapper::completeWritesOnExit, "json-writer-exit"));
+        }
+    }
+
+    /**
+     * Method completing the pending writes when the process exits, run by a shutdown hook.
+     * The background writer keeps running until the hook returns.
+     */
+    private static void completeWritesOnExit(){
+        if(pendingWrites.isEmpty()) return;
+        LogPrint.printNote("Completing "+pendingWrites.size()+" pending JSON file writes before exiting");
+        for(String filename: pendingWrites.keySet()){
+            waitForWrite(filename);
+        }
+    }
+
+    /**
+     * Method declaring that a file will be loaded once more during the run (e.g. by a module taking it as input).
+     * Once all expected loads have been done, the data saved in memory is released, the file being read from disk if
+     * loaded again. Files with no expected loads are kept in memory until released.
+     * Does nothing if the in-memory mode is off.
+     * @param filename JSON file name.
+     */
+    public static void ExpectLoad(String filename){
+        if(inMemory) readsLeft.merge(filename, 1, Integer::sum);
+    }
+
+    /**
+     * Method cancelling an expected load of a file (e.g. when the module taking it as input is skipped), releasing
+     * the data saved in memory if no load is expected anymore.
+     * Does nothing if the in-memory mode is off.
+     * @param filename JSON file name.
+     */
+    public static void CancelLoad(String filename){
+        if(inMemory) countLoad(filename);
+    }
+
+    /**
+     * Method counting a load of a file, and releasing its data once all expected loads have been done.
+     * The data is released only once written on file.
+     * @param filename JSON file name.
+     */
+    private static void countLoad(String filename){
+        boolean[] last = {false};
+        readsLeft.computeIfPresent(filename, (f, n) -> {
+            if(n > 1) return n - 1;
+            last[0] = true;
+            return null;
+        });
+        if(last[0]){
+            waitForWrite(filename);
+            memoryStore.remove(filename);
+        }
+    }
+
+    /**
+     * Method waiting for all pending asynchronous writes to be completed and releasing the in-memory data.
+     * Does nothing if the in-memory mode is off.
+     */
+    public static synchronized void FlushWrites(){
+        if(!inMemory) return;
+        LogPrint.printNewStep("Writing pending JSON files", 0);
+        for(String filename: pendingWrites.keySet()){
+            waitForWrite(filename);
+        }
+        writer.shutdown();
+        memoryStore.clear();
+        readsLeft.clear();
+        inMemory = false;
+        LogPrint.printCompleteStep();
+    }
+
+    /**
+     * Method making sure a file saved in in-memory mode has been written on file.
+     * Does nothing if the in-memory mode is off or the file has no pending write.
+     * @param filename JSON file name.
+     */
+    public static void FlushWrite(String filename){
+        if(inMemory) waitForWrite(filename);
+    }
+
+    /**
+     * Method making sure a file saved in in-memory mode has been written on file and releasing its in-memory data,
+     * e.g. once a project run is completed. Does nothing if the in-memory mode is off.
+     * @param filename JSON file name.
+     */
+    public static void Release(String filename){
+        if(inMemory){
+            waitForWrite(filename);
+            memoryStore.remove(filename);
+            readsLeft.remove(filename);
+        }
+    }
+
+    /**
+     * Method waiting for a pending asynchronous write of a given file to complete.
+     * @param filename JSON file name.
+     */
+    private static void waitForWrite(String filename){
+        Future<?> write = pendingWrites.remove(filename);
+        if(write != null){
+            try {
+                write.get();
+            } catch (InterruptedException | ExecutionException e){
+                LogPrint.printNoteError("Error while saving "+filename);
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Method storing JSON data in memory and scheduling it to be written on file in the background.
+     * @param obj JSON data to store (JSONObject or JSONArray).
+     * @param filename JSON file name.
+     * @param depth Depth level for logs.
+     */
+    private static void storeInMemory(Object obj, String filename, int depth){
+        LogPrint.printNewStep("Saving "+filename+" (in memory)", depth);
+        // a previous write of the same file must be done before scheduling the new one
+        waitForWrite(filename);
+        memoryStore.put(filename, obj);
+        pendingWrites.put(filename, writer.submit(() -> {
+            writeJSON(obj, filename);
+            return null;
+        }));
+        LogPrint.printCompleteStep();
+    }
+
+    /**
+     * Method fetching JSON data previously saved during the run.
+     * The pending write of that file is completed first, so that the caller can safely modify the data returned.
+     * The root object and its nested objects (e.g. metadata) are shallow copies, other nested data is shared.
+     * @param filename JSON file name.
+     * @param depth Depth level for logs.
+     * @return The JSON data, or null if not found in memory.
+     */
+    private static Object fetchFromMemory(String filename, int depth){
+        Object obj = memoryStore.get(filename);
+        if(obj == null){
+            // released from memory, or saved without in-memory mode: the file must be complete before reading it
+            waitForWrite(filename);
+            return null;
+        }
+        LogPrint.printNewStep("Loading "+filename+" (from memory)", depth);
+        waitForWrite(filename);
+        if(obj instanceof JSONObject){
+            JSONObject copy = (JSONObject) ((JSONObject) obj).clone();
+            for(Map.Entry<Object, Object> entry: (Set<Map.Entry<Object, Object>>) copy.entrySet()){
+                if(entry.getValue() instanceof JSONObject){
+                    entry.setValue(((JSONObject) entry.getValue()).clone());
+                }
+            }
+            obj = copy;
+        } else {
+            obj = ((JSONArray) obj).clone();
+        }
+        countLoad(filename);
+        LogPrint.printCompleteStep();
+        return obj;
+    }
+
+    /**
+     * Method serialising JSON data on file, without logging (used by the background writer).
+     * @param obj JSON data to write (JSONObject or JSONArray).
+     * @param filename JSON file name.
+     * @throws IOException If the file cannot be written.
+     */
+    private static void writeJSON(Object obj, String filename) throws IOException {
+        File file = new File(filename);
+        file.getParentFile().mkdirs();
+        try(Writer fileWriter = openWriter(filename)){
+            if(obj instanceof JSONObject){
+                ((JSONObject) obj).writeJSONString(fileWriter);
+            } else {
+                ((JSONArray) obj).writeJSONString(fileWriter);
+            }
+        }
+    }
+
+    /**
+     * Method opening a JSON file for reading, decompressed on a background thread if its name ends with '.gz'
+     * (see {@link CompressedFiles}).
+     * @param filename JSON file name.
+     * @return The reader.
+     * @throws IOException If the file cannot be opened.
+     */
+    private static Reader openReader(String filename) throws IOException {
+        return new InputStreamReader(CompressedFiles.OpenInput(filename));
+    }
+
+    /**
+     * Method opening a JSON file for writing, compressed on a background thread if its name ends with '.gz'
+     * (see {@link CompressedFiles}).
+     * @param filename JSON file name.
+     * @return The writer, to be closed for the file to be complete.
+     * @throws IOException If the file cannot be opened.
+     */
+    private static Writer openWriter(String filename) throws IOException {
+        return new OutputStreamWriter(CompressedFiles.OpenOutput(filename));
+    }
+
     /**
      * Method to parse a JSONArray containing integers and return an integer array.
      * @param array JSON Array to parse.
@@ -145,7 +375,7 @@ public class JSONIOWrapper {
         JSONObject root = new JSONObject();
 
         JSONParser parser = new JSONParser();
-        try (FileReader file = new FileReader(filename)){
+        try (Reader file = openReader(filename)){
             root = (JSONObject) parser.parse(file);
         }
         catch (IOException | ParseException e){
@@ -167,10 +397,9 @@ public class JSONIOWrapper {
         try {
             File file = new File(filename);
             file.getParentFile().mkdirs();
-            FileWriter writer = new FileWriter(file);
-            String str = obj.toJSONString();
-            writer.write(str);
-            writer.flush();
+            try(Writer writer = openWriter(filename)){
+                obj.writeJSONString(writer);
+            }
         }
         catch(IOException e){
             e.printStackTrace();
@@ -187,12 +416,16 @@ public class JSONIOWrapper {
      * @return The JSONObject.
      */
     public static JSONObject LoadJSON(String filename, int depth){
+        if(inMemory){
+            Object stored = fetchFromMemory(filename, depth);
+            if(stored instanceof JSONObject) return (JSONObject) stored;
+        }
         LogPrint.printNewStep("Loading "+filename, depth);
 
         JSONObject root = new JSONObject();
 
         JSONParser parser = new JSONParser();
-        try (FileReader file = new FileReader(filename)){
+        try (Reader file = openReader(filename)){
             root = (JSONObject) parser.parse(file);
             LogPrint.printCompleteStep();
         }
@@ -210,12 +443,16 @@ public class JSONIOWrapper {
      * @return The JSONArray.
      */
     public static JSONArray LoadJSONArray(String filename, int depth){
+        if(inMemory){
+            Object stored = fetchFromMemory(filename, depth);
+            if(stored instanceof JSONArray) return (JSONArray) stored;
+        }
         LogPrint.printNewStep("Loading "+filename, depth);
 
         JSONArray root = new JSONArray();
 
         JSONParser parser = new JSONParser();
-        try (FileReader file = new FileReader(filename)){
+        try (Reader file = openReader(filename)){
             root = (JSONArray) parser.parse(file);
             LogPrint.printCompleteStep();
         }
@@ -233,14 +470,17 @@ public class JSONIOWrapper {
      * @param depth Depth level for logs.
      */
     public static void SaveJSON(JSONObject obj, String filename, int depth){
+        if(inMemory){
+            storeInMemory(obj, filename, depth);
+            return;
+        }
         LogPrint.printNewStep("Saving "+filename, depth);
         try {
             File file = new File(filename);
             file.getParentFile().mkdirs();
-            FileWriter writer = new FileWriter(file);
-            String str = obj.toJSONString();
-            writer.write(str);
-            writer.flush();
+            try(Writer writer = openWriter(filename)){
+                obj.writeJSONString(writer);
+            }
 
             LogPrint.printCompleteStep();
         }
@@ -250,6 +490,30 @@ public class JSONIOWrapper {
         }
     }
 
+    /**
+     * Method writing a JSONObject instance onto a JSON file straight away, bypassing the in-memory mode, e.g. for
+     * records that must be on disk whatever happens to the rest of the run.
+     * The object is written (in UTF-8) to a temporary file which is then moved into place, so an interrupted write
+     * never leaves a truncated file.
+     * @param obj JSONObject to write.
+     * @param filename JSON file name.
+     * @throws IOException If the file cannot be written.
+     */
+    public static void SaveJSONAtomic(JSONObject obj, String filename) throws IOException {
+        File file = new File(filename);
+        if(file.getAbsoluteFile().getParentFile() != null) file.getAbsoluteFile().getParentFile().mkdirs();
+        File temp = new File(filename + "." + Thread.currentThread().getId() + ".tmp");
+        try {
+            try(Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8))){
+                obj.writeJSONString(writer);
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e){
+            temp.delete();
+            throw e;
+        }
+    }
+
     /**
      * Method to write a JSONArray instance onto a JSON file, uses {@link LogPrint} for logging.
      * @param obj JSONArray to write.
@@ -257,14 +521,17 @@ public class JSONIOWrapper {
      * @param depth Depth level for logs.
      */
     public static void SaveJSONArray(JSONArray obj, String filename, int depth){
+        if(inMemory){
+            storeInMemory(obj, filename, depth);
+            return;
+        }
         LogPrint.printNewStep("Saving "+filename, depth);
         try {
             File file = new File(filename);
             file.getParentFile().mkdirs();
-            FileWriter writer = new FileWriter(file);
-            String str = obj.toJSONString();
-            writer.write(str);
-            writer.flush();
+            try(Writer writer = openWriter(filename)){
+                obj.writeJSONString(writer);
+            }
 
             LogPrint.printCompleteStep();
         }
@@ -0,0 +1,93 @@
+package PX_Data;
+
+import org.json.simple.JSONObject;
+import org.json.simple.JSONValue;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Class writing a JSON file incrementally, one array entry at a time, so that large files (e.g. corpus files) can be
+ * produced without holding their content in memory.
+ * <br>
+ * The file written is a JSON object with one array (e.g. "corpus") followed by other entries (e.g. "metadata"),
+ * these are set during writing and written when the writer is closed:
+ * {@code {"corpus": [{...}, {...}, ...], "metadata": {...}}}.
+ * The file can then be read with {@link JSONIOWrapper#LoadJSON(String, int)}. Files with a '.gz' extension are
+ * compressed on a background thread (see {@link CompressedFiles}).
+ *
+ * @author P. Le Bras
+ * @version 2
+ */
+public class JSONStreamWriter implements Closeable {
+
+    /** Buffered writer on the JSON file. */
+    private final Writer writer;
+    /** Entries written after the array, on closing. */
+    private final Map<String, Object> trailingEntries = new LinkedHashMap<>();
+    /** Number of entries written in the array. */
+    private int count = 0;
+
+    /**
+     * Constructor, opens the file and starts the array.
+     * @param filename JSON file name.
+     * @param arrayName Name of the array written incrementally.
+     * @throws IOException If the file cannot be written.
+     */
+    public JSONStreamWriter(String filename, String arrayName) throws IOException {
+        // data previously saved in memory for this file would shadow the new file
+        JSONIOWrapper.Release(filename);
+        File file = new File(filename);
+        file.getAbsoluteFile().getParentFile().mkdirs();
+        writer = new BufferedWriter(new OutputStreamWriter(CompressedFiles.OpenOutput(filename), StandardCharsets.UTF_8), 1 << 16);
+        writer.write("{\"" + JSONValue.escape(arrayName) + "\":[");
+    }
+
+    /**
+     * Method writing an entry in the array.
+     * @param entry JSON object to write.
+     * @throws IOException If the file cannot be written.
+     */
+    public void write(JSONObject entry) throws IOException {
+        if(count > 0) writer.write(',');
+        entry.writeJSONString(writer);
+        count++;
+    }
+
+    /**
+     * Method setting an entry written after the array, when closing the writer.
+     * @param key Entry name.
+     * @param value Entry value (JSON object, array, string, number or boolean).
+     */
+    public void put(String key, Object value){
+        trailingEntries.put(key, value);
+    }
+
+    /**
+     * Getter method for the number of entries written in the array so far.
+     * @return The number of entries.
+     */
+    public int getCount(){
+        return count;
+    }
+
+    /**
+     * Method ending the array, writing the trailing entries and closing the file.
+     * @throws IOException If the file cannot be written.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            writer.write(']');
+            for(Map.Entry<String, Object> entry: trailingEntries.entrySet()){
+                writer.write(",\"" + JSONValue.escape(entry.getKey()) + "\":");
+                JSONValue.writeJSONString(entry.getValue(), writer);
+            }
+            writer.write('}');
+        } finally {
+            writer.close();
+        }
+    }
+}
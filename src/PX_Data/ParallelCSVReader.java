@@ -0,0 +1,235 @@
+package PX_Data;
+
+import de.siegmar.fastcsv.reader.CsvParser;
+import de.siegmar.fastcsv.reader.CsvReader;
+import de.siegmar.fastcsv.reader.CsvRow;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Class reading a CSV file (with a header row) on several threads: the file is read once, cut into chunks at record
+ * boundaries, and chunks are parsed (with {@link CsvReader}) on worker threads. Rows are then handed over to the
+ * caller in the file's order, with their row number, on the calling thread.
+ * <br>
+ * Record boundaries are quote-aware: line breaks inside quoted fields do not end a record. Only a bounded number of
+ * chunks are held at once, so memory use does not depend on the file size (unless the caller keeps the rows).
+ * Compressed files ('.gz') are decompressed on a background thread (see {@link CompressedFiles}).
+ *
+ * @author P. Le Bras
+ * @version 3
+ */
+public class ParallelCSVReader {
+
+    /**
+     * Interface for the caller's processing of each row.
+     */
+    public interface RowHandler {
+        /**
+         * Method processing a row.
+         * @param row Row read, fields can be accessed by column name.
+         * @param rowNum Row number, starting at 0 after the header row.
+         * @throws IOException If the processing fails, stops the reading.
+         */
+        void accept(Row row, int rowNum) throws IOException;
+    }
+
+    /**
+     * Class holding a row's fields, accessible by column name.
+     */
+    public static class Row {
+        /** Column indices, by column name. */
+        private final Map<String, Integer> header;
+        /** Field values. */
+        private final List<String> fields;
+
+        Row(Map<String, Integer> header, List<String> fields){
+            this.header = header;
+            this.fields = fields;
+        }
+
+        /**
+         * Getter method for a field value.
+         * @param name Column name.
+         * @return The field value, or null if the column does not exist or the row is too short.
+         */
+        public String getField(String name){
+            Integer col = header.get(name);
+            if(col != null && col < fields.size()) return fields.get(col);
+            return null;
+        }
+
+        /**
+         * Getter method for the column names, from the header row.
+         * @return The set of column names.
+         */
+        public Set<String> getColumns(){
+            return header.keySet();
+        }
+
+        /**
+         * Getter method for all field values.
+         * @return The list of field values, in column order.
+         */
+        public List<String> getFields(){
+            return fields;
+        }
+    }
+
+    /** Size, in bytes, from which a chunk is cut at the next record boundary. */
+    private final static int CHUNK_SIZE = 4 << 20;
+    /** Size, in bytes, of the buffer reading the file. */
+    private final static int BUFFER_SIZE = 1 << 20;
+    /** Number of chunks read ahead, per thread. */
+    private final static int CHUNKS_AHEAD = 2;
+
+    // states of the record boundary detection
+    /** At the start of a field. */
+    private final static int FIELD_START = 0;
+    /** Inside an unquoted field. */
+    private final static int UNQUOTED = 1;
+    /** Inside a quoted field. */
+    private final static int QUOTED = 2;
+    /** On a quote inside a quoted field: either the closing quote or the first half of an escaped quote. */
+    private final static int QUOTE_IN_QUOTED = 3;
+
+    /**
+     * Method reading a CSV file with a header row, and handing each row over to the caller, in order.
+     * @param filename CSV file name.
+     * @param threads Number of threads parsing chunks.
+     * @param handler Processing of each row, called on the calling thread.
+     * @return The number of rows read, excluding the header.
+     * @throws IOException If the file cannot be read or parsed, or if the handler fails.
+     */
+    public static int Read(String filename, int threads, RowHandler handler) throws IOException {
+        AtomicInteger count = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "csv-"+count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        ArrayDeque<Future<List<List<String>>>> pending = new ArrayDeque<>();
+        Consumer consumer = new Consumer(handler);
+        try(InputStream in = CompressedFiles.OpenInput(filename)){
+            byte[] buffer = new byte[BUFFER_SIZE];
+            byte[] chunk = new byte[CHUNK_SIZE + BUFFER_SIZE];
+            int chunkLength = 0;
+            int lastRecordEnd = 0;
+            int state = FIELD_START;
+            int read;
+            while((read = in.read(buffer)) > 0){
+                if(chunkLength + read > chunk.length){
+                    chunk = Arrays.copyOf(chunk, Math.max(chunk.length * 2, chunkLength + read));
+                }
+                System.arraycopy(buffer, 0, chunk, chunkLength, read);
+                // '"', ',' and '\n' are single bytes in UTF-8, they cannot appear inside a multi-byte character
+                for(int i = chunkLength; i < chunkLength + read; i++){
+                    byte b = chunk[i];
+                    switch(state){
+                        case FIELD_START:
+                        case UNQUOTED:
+                            if(b == '"' && state == FIELD_START) state = QUOTED;
+                            else if(b == ',') state = FIELD_START;
+                            else if(b == '\n'){ state = FIELD_START; lastRecordEnd = i + 1; }
+                            else if(b != '\r') state = UNQUOTED;
+                            break;
+                        case QUOTED:
+                            if(b == '"') state = QUOTE_IN_QUOTED;
+                            break;
+                        case QUOTE_IN_QUOTED:
+                            if(b == '"') state = QUOTED;
+                            else if(b == ',') state = FIELD_START;
+                            else if(b == '\n'){ state = FIELD_START; lastRecordEnd = i + 1; }
+                            else if(b != '\r') state = UNQUOTED;
+                            break;
+                    }
+                }
+                chunkLength += read;
+                if(chunkLength >= CHUNK_SIZE && lastRecordEnd > 0){
+                    pending.add(pool.submit(parse(Arrays.copyOf(chunk, lastRecordEnd))));
+                    System.arraycopy(chunk, lastRecordEnd, chunk, 0, chunkLength - lastRecordEnd);
+                    chunkLength -= lastRecordEnd;
+                    lastRecordEnd = 0;
+                    while(pending.size() > threads * CHUNKS_AHEAD){
+                        consumer.consume(pending.poll());
+                    }
+                }
+            }
+            if(chunkLength > 0){
+                pending.add(pool.submit(parse(Arrays.copyOf(chunk, chunkLength))));
+            }
+            while(!pending.isEmpty()){
+                consumer.consume(pending.poll());
+            }
+        } finally {
+            for(Future<?> f: pending) f.cancel(true);
+            pool.shutdownNow();
+        }
+        return consumer.rowNum;
+    }
+
+    /**
+     * Method creating the task parsing a chunk of the file.
+     * @param bytes Chunk content, ending at a record boundary.
+     * @return The task, returning the chunk's rows.
+     */
+    private static Callable<List<List<String>>> parse(byte[] bytes){
+        return () -> {
+            List<List<String>> rows = new ArrayList<>();
+            CsvReader csvReader = new CsvReader();
+            csvReader.setContainsHeader(false);
+            try(CsvParser csvParser = csvReader.parse(new StringReader(new String(bytes, StandardCharsets.UTF_8)))){
+                CsvRow row;
+                while((row = csvParser.nextRow()) != null){
+                    rows.add(row.getFields());
+                }
+            }
+            return rows;
+        };
+    }
+
+    /**
+     * Class handing the parsed rows over to the caller, in order, reading the header from the first row.
+     */
+    private static class Consumer {
+        /** Caller's row processing. */
+        private final RowHandler handler;
+        /** Column indices, by column name, null until the header row is read. */
+        private Map<String, Integer> header;
+        /** Number of rows handed over. */
+        private int rowNum = 0;
+
+        Consumer(RowHandler handler){
+            this.handler = handler;
+        }
+
+        /**
+         * Method waiting for a chunk to be parsed and handing its rows over.
+         * @param chunk Pending chunk.
+         * @throws IOException If the chunk could not be parsed, or if the handler fails.
+         */
+        void consume(Future<List<List<String>>> chunk) throws IOException {
+            List<List<String>> rows;
+            try {
+                rows = chunk.get();
+            } catch (InterruptedException e){
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while reading CSV file");
+            } catch (ExecutionException e){
+                if(e.getCause() instanceof IOException) throw (IOException) e.getCause();
+                throw new IOException(e.getCause());
+            }
+            for(List<String> fields: rows){
+                if(header == null){
+                    header = new HashMap<>();
+                    for(int i = 0; i < fields.size(); i++) header.putIfAbsent(fields.get(i), i);
+                    continue;
+                }
+                handler.accept(new Row(header, fields), rowNum++);
+            }
+        }
+    }
+}
@@ -216,10 +216,14 @@ public class LogPrint {
 
     /**
      * Method logging the start of a new step in a module's process, ie log with a bullet, at a given indentation.
+     * Steps at depth 0 are measured in the {@link PerformanceReport}.
      * @param msg Step message.
      * @param depth Indentation level, insert a double space per level.
      */
     public static void printNewStep(String msg, int depth){
+        if(depth == 0){
+            PerformanceReport.NewStep(msg);
+        }
         String tab = "  ".repeat(depth);
         System.out.print("\n"+tab+" - "+msg);
     }
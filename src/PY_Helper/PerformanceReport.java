@@ -0,0 +1,233 @@
+package PY_Helper;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+import java.io.IOException;
+import java.lang.management.*;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.function.Supplier;
+
+/**
+ * Class measuring the performance of the pipeline modules and of their main steps (logged with
+ * {@link LogPrint#printNewStep(String, int)} at depth 0).
+ * <br>
+ * Records wall time, CPU time, peak heap, garbage collection pauses and bytes read/written. CPU time, garbage collection
+ * and I/O bytes are measured for the whole process: when modules (or projects) run concurrently, their measures
+ * overlap. Peak heap is the sum of the heap memory pools' peak usage. I/O bytes are only available on Linux.
+ * <br>
+ * Measures are kept per project, so several projects can be measured in the same process.
+ *
+ * @author P. Le Bras
+ * @version 1
+ */
+public class PerformanceReport {
+
+    /**
+     * Class holding the measures of a module or step.
+     */
+    private static class Record {
+        /** Module or step name. */
+        final String name;
+        /** Project the module belongs to. */
+        final String project;
+        /** Measures at the start. */
+        final long[] start;
+        /** Measures at the end, null while running. */
+        long[] end;
+        /** Peak heap usage observed while running, in bytes. */
+        long peakHeap = 0;
+        /** Steps of a module. */
+        final List<Record> steps = new ArrayList<>();
+        /** Step currently running in a module. */
+        Record currentStep;
+
+        Record(String project, String name){
+            this.project = project;
+            this.name = name;
+            sampleHeapPeak();
+            this.start = measure();
+            open.add(this);
+        }
+
+        void close(){
+            sampleHeapPeak();
+            end = measure();
+            open.remove(this);
+        }
+    }
+
+    /** Indices of the measures. */
+    private final static int WALL = 0, CPU = 1, GC_TIME = 2, GC_COUNT = 3, READ = 4, WRITTEN = 5;
+
+    /** Measures of the whole run, for each project measured. */
+    private final static Map<String, Record> pipelines = new HashMap<>();
+    /** Measures of the modules, of all projects, in starting order. */
+    private final static List<Record> modules = new ArrayList<>();
+    /** Modules and steps currently running. */
+    private final static Set<Record> open = new HashSet<>();
+    /** Module running on the current thread. */
+    private final static ThreadLocal<Record> currentModule = new ThreadLocal<>();
+
+    /**
+     * Method starting the performance measures for the whole run of a project.
+     * @param project Project file name.
+     */
+    public static synchronized void Enable(String project){
+        pipelines.putIfAbsent(project, new Record(project, "Pipeline"));
+    }
+
+    /**
+     * Method indicating if performance is being measured for a project.
+     * @param project Project file name.
+     * @return Flag for measuring performance.
+     */
+    public static synchronized boolean isEnabled(String project){
+        return pipelines.containsKey(project);
+    }
+
+    /**
+     * Method running a module and measuring its performance, and the performance of its steps.
+     * @param project Project file name.
+     * @param name Module name.
+     * @param module Module run.
+     * @return The module run's result.
+     */
+    public static String Measure(String project, String name, Supplier<String> module){
+        if(!isEnabled(project)) return module.get();
+        Record record;
+        synchronized (PerformanceReport.class){
+            record = new Record(project, name);
+            modules.add(record);
+        }
+        currentModule.set(record);
+        try {
+            return module.get();
+        } finally {
+            currentModule.remove();
+            synchronized (PerformanceReport.class){
+                if(record.currentStep != null) record.currentStep.close();
+                record.currentStep = null;
+                record.close();
+            }
+        }
+    }
+
+    /**
+     * Method marking the start of a new step in the module running on the current thread, ending the previous step.
+     * Does nothing if no module is measured on this thread.
+     * @param msg Step name.
+     */
+    static void NewStep(String msg){
+        Record module = currentModule.get();
+        if(module == null) return;
+        synchronized (PerformanceReport.class){
+            if(module.currentStep != null) module.currentStep.close();
+            module.currentStep = new Record(module.project, msg);
+            module.steps.add(module.currentStep);
+        }
+    }
+
+    /**
+     * Method ending the performance measures of a project and producing its report.
+     * @param project Project file name.
+     * @return The JSON report, with the measures of the whole run and of each module.
+     */
+    public static synchronized JSONObject GetReport(String project){
+        Record pipeline = pipelines.remove(project);
+        pipeline.close();
+        JSONObject root = new JSONObject();
+        JSONObject metadata = new JSONObject();
+        metadata.put("processors", Runtime.getRuntime().availableProcessors());
+        metadata.put("maxHeapBytes", Runtime.getRuntime().maxMemory());
+        JSONArray jvmArguments = new JSONArray();
+        jvmArguments.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+        metadata.put("jvmArguments", jvmArguments);
+        metadata.put("total", toJSON(pipeline));
+        root.put("metadata", metadata);
+        JSONArray modulesJSON = new JSONArray();
+        Iterator<Record> it = modules.iterator();
+        while(it.hasNext()){
+            Record module = it.next();
+            if(module.project.equals(project)){
+                modulesJSON.add(toJSON(module));
+                it.remove();
+            }
+        }
+        root.put("modules", modulesJSON);
+        return root;
+    }
+
+    /**
+     * Method converting a record into a JSON object.
+     * @param record Record to convert.
+     * @return JSON object with the record's measures.
+     */
+    private static JSONObject toJSON(Record record){
+        long[] end = record.end != null ? record.end : measure();
+        JSONObject root = new JSONObject();
+        root.put("name", record.name);
+        root.put("wallMs", (end[WALL] - record.start[WALL]) / 1000000);
+        if(record.start[CPU] >= 0) root.put("cpuMs", (end[CPU] - record.start[CPU]) / 1000000);
+        root.put("peakHeapBytes", record.peakHeap);
+        root.put("gcPauseMs", end[GC_TIME] - record.start[GC_TIME]);
+        root.put("gcCount", end[GC_COUNT] - record.start[GC_COUNT]);
+        if(record.start[READ] >= 0){
+            root.put("bytesRead", end[READ] - record.start[READ]);
+            root.put("bytesWritten", end[WRITTEN] - record.start[WRITTEN]);
+        }
+        if(!record.steps.isEmpty()){
+            JSONArray steps = new JSONArray();
+            for(Record step: record.steps){
+                steps.add(toJSON(step));
+            }
+            root.put("steps", steps);
+        }
+        return root;
+    }
+
+    /**
+     * Method taking the current process wide measures.
+     * @return Measures, indexed by {@link #WALL}, {@link #CPU}, etc., -1 if unavailable.
+     */
+    private static long[] measure(){
+        long[] res = new long[6];
+        res[WALL] = System.nanoTime();
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        res[CPU] = os instanceof com.sun.management.OperatingSystemMXBean ?
+                ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime() : -1;
+        for(GarbageCollectorMXBean gc: ManagementFactory.getGarbageCollectorMXBeans()){
+            res[GC_TIME] += Math.max(0, gc.getCollectionTime());
+            res[GC_COUNT] += Math.max(0, gc.getCollectionCount());
+        }
+        res[READ] = -1;
+        res[WRITTEN] = -1;
+        try {
+            for(String line: Files.readAllLines(Paths.get("/proc/self/io"))){
+                if(line.startsWith("rchar:")) res[READ] = Long.parseLong(line.substring(6).trim());
+                else if(line.startsWith("wchar:")) res[WRITTEN] = Long.parseLong(line.substring(6).trim());
+            }
+        } catch (IOException | NumberFormatException e){
+            // not on Linux, I/O bytes unavailable
+        }
+        return res;
+    }
+
+    /**
+     * Method reading and resetting the heap memory pools' peak usage, updating the peak of every running record.
+     */
+    private static void sampleHeapPeak(){
+        long peak = 0;
+        for(MemoryPoolMXBean pool: ManagementFactory.getMemoryPoolMXBeans()){
+            if(pool.getType() == MemoryType.HEAP && pool.isValid()){
+                peak += pool.getPeakUsage().getUsed();
+                pool.resetPeakUsage();
+            }
+        }
+        for(Record record: open){
+            record.peakHeap = Math.max(record.peakHeap, peak);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package PY_Helper;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Class running parallel work on a dedicated, named pool of threads rather than the JVM's common fork-join pool,
+ * so each stage gets its own thread budget and stages running concurrently do not compete for the same pool.
+ * <br>
+ * Parallel streams started from within {@link #Run(String, int, Runnable)} use the dedicated pool.
+ *
+ * @author P. Le Bras
+ * @version 1
+ */
+public class WorkerPool {
+
+    /**
+     * Method creating a fork-join pool whose threads are named after the stage (e.g. "lemmatise-3").
+     * @param name Pool name.
+     * @param threads Number of threads.
+     * @return The pool.
+     */
+    public static ForkJoinPool Create(String name, int threads){
+        AtomicInteger count = new AtomicInteger();
+        return new ForkJoinPool(threads, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName(name+"-"+count.incrementAndGet());
+            return thread;
+        }, null, false);
+    }
+
+    /**
+     * Method running a task on a dedicated pool, waiting for it to complete, then shutting the pool down.
+     * Runtime exceptions thrown by the task are rethrown to the caller.
+     * @param name Pool name.
+     * @param threads Number of threads.
+     * @param task Task to run, typically iterating over a parallel stream.
+     */
+    public static void Run(String name, int threads, Runnable task){
+        ForkJoinPool pool = Create(name, threads);
+        try {
+            pool.submit(task).get();
+        } catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e){
+            if(e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            if(e.getCause() instanceof Error) throw (Error) e.getCause();
+            throw new RuntimeException(e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
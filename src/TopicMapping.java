@@ -1,6 +1,10 @@
 import P1_Input.*;
 import P2_Lemmatise.Lemmatise;
+import P0_Project.Checkpoint;
 import P0_Project.ProjectManager;
+import P0_Project.StageCache;
+import P0_Project.StageScheduler;
+import P0_Project.StageSpecs;
 import P3_TopicModelling.HierarchicalTopicModelling;
 import P3_TopicModelling.InferDocuments;
 import P3_TopicModelling.TopicModelling;
@@ -12,16 +16,22 @@ import P5_TopicMapping.BubbleMapping.BubbleMapJS;
 import P5_TopicMapping.BubbleMapping.BubbleMap;
 import P3_TopicModelling.ExportTopicModel;
 import P5_TopicMapping.OverwriteMap;
+import PX_Data.JSONIOWrapper;
 import PY_Helper.LogPrint;
+import PY_Helper.PerformanceReport;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Supplier;
 
-public class TopicMapping {
+public class TopicMapping implements StageSpecs {
 
     private String projectFile;
+    private boolean resume = false;
     private ProjectManager projectManager;
-    private static List<String> times = new ArrayList<>();
+    private StageScheduler scheduler;
+    private List<StageSpecs> stages = new ArrayList<>();
+    private List<String> times = new ArrayList<>();
 
     public static void main(String[] args) {
         LogPrint.printModuleStart("Pipeline");
@@ -32,7 +42,9 @@ public class TopicMapping {
         startClass.CheckArgs(args);
         startClass.LoadProject();
         startClass.Run();
-        for(String t: times){
+        JSONIOWrapper.FlushWrites();
+        startClass.SaveReport();
+        for(String t: startClass.times){
             LogPrint.printNote(t);
         }
 
@@ -44,117 +56,254 @@ public class TopicMapping {
     }
 
     private void CheckArgs(String[] args){
-        if(args.length == 1){
-            projectFile = args[0];
+        for(String arg: args){
+            if(arg.equals("--resume")){
+                resume = true;
+            } else {
+                projectFile = arg;
+            }
         }
     }
 
-    private void LoadProject(){
-        projectManager = new ProjectManager(projectFile);
+    TopicMapping(){}
+
+    TopicMapping(String projectFile){
+        this.projectFile = projectFile;
+    }
+
+    void LoadProject(){
+        projectManager = new ProjectManager(projectFile, resume);
+        if(projectManager.metaSpecs.doPerformanceReport()){
+            PerformanceReport.Enable(projectFile);
+        }
+        PlanStages();
+    }
+
+    String RunProject(){
+        long startTime = System.currentTimeMillis();
+        Run();
+        SaveReport();
+        ReleaseFiles();
+        long timeTaken = (System.currentTimeMillis() - startTime) / (long)1000;
+        return projectFile+": "+Math.floorDiv(timeTaken, 60) + " m, " + timeTaken % 60 + " s.";
+    }
+
+    List<String> getTimes(){
+        return times;
+    }
+
+    ProjectManager getProjectManager(){
+        return projectManager;
+    }
+
+    @Override
+    public List<String> getInputFiles(){
+        List<String> files = new ArrayList<>();
+        for(StageSpecs stage: stages){
+            files.addAll(stage.getInputFiles());
+        }
+        return files;
+    }
+
+    @Override
+    public List<String> getOutputFiles(){
+        List<String> files = new ArrayList<>();
+        for(StageSpecs stage: stages){
+            files.addAll(stage.getOutputFiles());
+        }
+        return files;
+    }
+
+    private void SaveReport(){
+        if(PerformanceReport.isEnabled(projectFile)){
+            JSONIOWrapper.SaveJSON(PerformanceReport.GetReport(projectFile), projectManager.metaSpecs.getOutputDir()+"performanceReport.json", 0);
+        }
+    }
+
+    private void ReleaseFiles(){
+        for(String file: getInputFiles()){
+            JSONIOWrapper.Release(file);
+        }
+        for(String file: getOutputFiles()){
+            JSONIOWrapper.Release(file);
+        }
+        JSONIOWrapper.Release(projectManager.metaSpecs.getOutputDir()+"performanceReport.json");
     }
 
     private void Run(){
+        if(projectManager.metaSpecs.getMaxParallelModules() > 1){
+            LogPrint.printNote("Running up to "+projectManager.metaSpecs.getMaxParallelModules()+" independent modules concurrently");
+        }
+        times.addAll(scheduler.run());
+    }
+
+    private void PlanStages(){
+        scheduler = new StageScheduler(projectManager.metaSpecs.getMaxParallelModules());
         if(projectManager.runInput){
-            this.RunInput();
+            addStage(scheduler, "input", projectManager.input, this::RunInput);
         }
         if(projectManager.runLemmatise){
-            this.RunLemmatise();
+            addStage(scheduler, "lemmatise", projectManager.lemmatise, this::RunLemmatise);
         }
         if(projectManager.runModel){
-            this.RunModel();
+            addStage(scheduler, "model", projectManager.model, this::RunModel);
         }
         if(projectManager.runDocumentInfer){
-            this.RunDocumentInference();
+            addStage(scheduler, "inferDocuments", projectManager.documentInfer, this::RunDocumentInference);
         }
         if(projectManager.runTopicModelExport){
-            this.RunExport();
+            addStage(scheduler, "exportTopicModel", projectManager.topicModelExport, this::RunExport);
         }
         if(projectManager.runLabelIndex){
-            this.RunLabelIndex();
+            addStage(scheduler, "indexLabels", projectManager.labelIndex, this::RunLabelIndex);
         }
         if(projectManager.runTopicDistrib){
-            this.RunTopicDistrib();
+            addStage(scheduler, "distributeTopics", projectManager.topicDistrib, this::RunTopicDistrib);
         }
         if(projectManager.runCompareDistrib){
-            this.RunCompareDistrib();
+            addStage(scheduler, "compareDistributions", projectManager.compareDistrib, this::RunCompareDistrib);
         }
         if(projectManager.runTopicCluster){
-            this.RunTopicCluster();
+            addStage(scheduler, "clusterTopics", projectManager.topicCluster, this::RunTopicCluster);
         }
         if(projectManager.runTopicMap){
-            this.RunTopicMap();
+            addStage(scheduler, "mapTopics", projectManager.topicMap, this::RunTopicMap);
         }
         if(projectManager.runOverwriteMap){
-            this.RunOverwriteMap();
+            addStage(scheduler, "overwriteMap", projectManager.overwriteMap, this::RunOverwriteMap);
         }
     }
 
-    private void RunInput(){
+    private void addStage(StageScheduler scheduler, String name, StageSpecs specs, Supplier<String> module){
+        stages.add(specs);
+        // data handed over in memory is released once the last module reading it is done with it
+        for(String file: specs.getInputFiles()){
+            JSONIOWrapper.ExpectLoad(file);
+        }
+        Supplier<String> cached = withCache(name, specs, module);
+        Supplier<String> checkpointed = withCheckpoint(name, specs, cached);
+        scheduler.addStage(name, specs, () -> PerformanceReport.Measure(projectFile, name, checkpointed));
+    }
+
+    private Supplier<String> withCache(String name, StageSpecs specs, Supplier<String> module){
+        StageCache cache = projectManager.stageCache;
+        if(cache == null){
+            return module;
+        }
+        return () -> {
+            String fingerprint = cache.fingerprint(name, specs);
+            if(cache.isUpToDate(name, fingerprint)){
+                LogPrint.printNote("Skipping "+name+": inputs and parameters unchanged since last run");
+                cancelLoads(specs);
+                return name+": cached, skipped.";
+            }
+            String time = module.get();
+            cache.record(name, fingerprint, specs);
+            return time;
+        };
+    }
+
+    private Supplier<String> withCheckpoint(String name, StageSpecs specs, Supplier<String> module){
+        Checkpoint checkpoint = projectManager.checkpoint;
+        if(checkpoint == null){
+            return module;
+        }
+        return () -> {
+            if(checkpoint.isCompleted(name)){
+                LogPrint.printNote("Skipping "+name+": completed before the run was interrupted");
+                cancelLoads(specs);
+                return name+": completed before interruption, skipped.";
+            }
+            String time = module.get();
+            // the module only counts as completed once its outputs are on disk
+            for(String file: specs.getOutputFiles()){
+                JSONIOWrapper.FlushWrite(file);
+            }
+            checkpoint.markCompleted(name, specs.getCheckpointFiles());
+            return time;
+        };
+    }
+
+    private void cancelLoads(StageSpecs specs){
+        for(String file: specs.getInputFiles()){
+            JSONIOWrapper.CancelLoad(file);
+        }
+    }
+
+    // Module classes are only referenced from the Run methods below, so the JVM only loads the modules (and their
+    // libraries: MALLET, CoreNLP, PDFBox, jbox2d) that the project actually runs.
+
+    private String RunInput(){
         switch (projectManager.input.module){
             case "CSV":
-                times.add(CSVInput.CSVInput(projectManager.input));
-                break;
+                return CSVInput.CSVInput(projectManager.input);
             case "GTR":
-                times.add(GTRInput.GTRInput(projectManager.input));
-                break;
+                return GTRInput.GTRInput(projectManager.input);
             case "HTML":
-                times.add(HTMLInput.HTMLInput(projectManager.input));
-                break;
+                return HTMLInput.HTMLInput(projectManager.input);
             case "PDF":
-                times.add(PDFInput.PDFInput(projectManager.input));
-                break;
+                return PDFInput.PDFInput(projectManager.input);
             case "TXT":
-                times.add(TXTInput.TXTInput(projectManager.input));
-                break;
+                return TXTInput.TXTInput(projectManager.input);
         }
+        LogPrint.printNoteError("Error: unknown input module "+projectManager.input.module+", no input run");
+        return "Input: unknown module "+projectManager.input.module;
     }
 
-    private void RunLemmatise(){
-        times.add(Lemmatise.Lemmatise(projectManager.lemmatise));
+    private String RunLemmatise(){
+        return Lemmatise.Lemmatise(projectManager.lemmatise);
     }
 
-    private void RunModel(){
-        if(projectManager.model.modelType.equals("simple")){
-            times.add(TopicModelling.SingleModel(projectManager.model));
-        } else if(projectManager.model.modelType.equals("hierarchical")){
-            times.add(HierarchicalTopicModelling.HierarchicalModel(projectManager.model));
+    private String RunModel(){
+        if(projectManager.model.sweep != null){
+            return TopicModelling.Sweep(projectManager.model);
         }
-
+        switch (projectManager.model.modelType){
+            case "simple":
+                return TopicModelling.SingleModel(projectManager.model);
+            case "hierarchical":
+                return HierarchicalTopicModelling.HierarchicalModel(projectManager.model);
+        }
+        LogPrint.printNoteError("Error: unknown model type "+projectManager.model.modelType+", no model run");
+        return "Model: unknown model type "+projectManager.model.modelType;
     }
 
-    private void RunDocumentInference(){
-        times.add(InferDocuments.InferDocuments(projectManager.documentInfer));
+    private String RunDocumentInference(){
+        return InferDocuments.InferDocuments(projectManager.documentInfer);
     }
 
-    private void RunExport(){
-        times.add(ExportTopicModel.ExportTopicModel(projectManager.topicModelExport));
+    private String RunExport(){
+        return ExportTopicModel.ExportTopicModel(projectManager.topicModelExport);
     }
 
-    private void RunLabelIndex(){
-        times.add(LabelIndexing.Index(projectManager.labelIndex));
+    private String RunLabelIndex(){
+        return LabelIndexing.Index(projectManager.labelIndex);
     }
 
-    private void RunTopicDistrib(){
-        times.add(TopicDistribution.Distribute(projectManager.topicDistrib));
+    private String RunTopicDistrib(){
+        return TopicDistribution.Distribute(projectManager.topicDistrib);
     }
 
-    private void RunCompareDistrib(){
-        times.add(CompareDistributions.Compare(projectManager.compareDistrib));
+    private String RunCompareDistrib(){
+        return CompareDistributions.Compare(projectManager.compareDistrib);
     }
 
-    private void RunTopicCluster(){
-        times.add(TopicClustering.Cluster(projectManager.topicCluster));
+    private String RunTopicCluster(){
+        return TopicClustering.Cluster(projectManager.topicCluster);
     }
 
-    private void RunTopicMap() {
-        if(projectManager.topicMap.mapType.equals("bubbleJS")){
-            times.add(BubbleMapJS.MapTopics(projectManager.topicMap));
-        } else if(projectManager.topicMap.mapType.equals("bubble")){
-            times.add(BubbleMap.MapTopics(projectManager.topicMap));
+    private String RunTopicMap() {
+        switch (projectManager.topicMap.mapType){
+            case "bubbleJS":
+                return BubbleMapJS.MapTopics(projectManager.topicMap);
+            case "bubble":
+                return BubbleMap.MapTopics(projectManager.topicMap);
         }
+        LogPrint.printNoteError("Error: unknown map type "+projectManager.topicMap.mapType+", no map run");
+        return "Map: unknown map type "+projectManager.topicMap.mapType;
     }
 
-    private void RunOverwriteMap(){
-        times.add(OverwriteMap.Overwrite(projectManager.overwriteMap));
+    private String RunOverwriteMap(){
+        return OverwriteMap.Overwrite(projectManager.overwriteMap);
     }
 }
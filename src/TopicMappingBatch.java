@@ -0,0 +1,131 @@
+import P0_Project.StageScheduler;
+import P2_Lemmatise.Lemmatizer.StanfordLemmatizer;
+import P3_TopicModelling.TopicModelCore.TopicModel;
+import PX_Data.JSONIOWrapper;
+import PY_Helper.LogPrint;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Entry point running several project files in the same process, e.g.:
+ * <br>{@code java TopicMappingBatch --threads 4 projects/*.json other/project.json @nightly.txt}
+ * <br>
+ * Arguments are project files, glob patterns matching project files, or list files (prefixed with "@") with a project
+ * file per line. Projects share the lemmatiser and the deserialised topic models, so these are only loaded once.
+ * Projects which do not read or write each other's files run concurrently, up to the number given with "--threads"
+ * (defaults to 1, i.e. projects run one after the other, in the given order).
+ */
+public class TopicMappingBatch {
+
+    private int threads = 1;
+    private List<String> projectFiles = new ArrayList<>();
+
+    public static void main(String[] args) {
+        LogPrint.printModuleStart("Batch");
+
+        long startTime = System.currentTimeMillis();
+
+        TopicMappingBatch startClass = new TopicMappingBatch();
+        startClass.CheckArgs(args);
+        List<String> times = startClass.Run();
+        JSONIOWrapper.FlushWrites();
+        for(String t: times){
+            LogPrint.printNote(t);
+        }
+
+        long timeTaken = (System.currentTimeMillis() - startTime) / (long)1000;
+
+        LogPrint.printNote("Total: "+Math.floorDiv(timeTaken, 60) + " m, " + timeTaken % 60 + " s.");
+
+        LogPrint.printModuleEnd("Batch");
+    }
+
+    private void CheckArgs(String[] args){
+        for(int i = 0; i < args.length; i++){
+            if(args[i].equals("--threads") && i+1 < args.length){
+                threads = Integer.parseInt(args[++i]);
+            } else if(args[i].startsWith("@")){
+                try {
+                    for(String line: Files.readAllLines(Paths.get(args[i].substring(1)))){
+                        if(line.trim().length() > 0) AddProjects(line.trim());
+                    }
+                } catch (IOException e){
+                    LogPrint.printNoteError("Error while reading the list of projects "+args[i].substring(1));
+                    e.printStackTrace();
+                    System.exit(1);
+                }
+            } else {
+                AddProjects(args[i]);
+            }
+        }
+        if(projectFiles.isEmpty()){
+            LogPrint.printNoteError("No project file given");
+            System.exit(1);
+        }
+        LogPrint.printNote("Found "+projectFiles.size()+" projects, running up to "+threads+" concurrently");
+    }
+
+    private void AddProjects(String pattern){
+        if(!pattern.contains("*") && !pattern.contains("?") && !pattern.contains("[") && !pattern.contains("{")){
+            projectFiles.add(pattern);
+            return;
+        }
+        // matching paths relative to the working directory, as walked
+        while(pattern.startsWith("./")) pattern = pattern.substring(2);
+        // walking from the deepest directory without glob characters
+        Path root = Paths.get(".");
+        String[] parts = pattern.split("/");
+        for(int i = 0; i < parts.length-1 && !parts[i].matches(".*[*?\\[{].*"); i++){
+            root = i == 0 && parts[i].isEmpty() ? Paths.get("/") : root.resolve(parts[i]);
+        }
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:"+pattern);
+        Path base = Paths.get(".");
+        try(Stream<Path> paths = Files.walk(root)){
+            // walked paths are relative to the working directory (e.g. './a.json' becomes 'a.json'), unless absolute
+            List<String> matches = paths
+                    .map(p -> p.isAbsolute() ? p : base.relativize(p))
+                    .filter(p -> Files.isRegularFile(p) && matcher.matches(p.normalize()))
+                    .map(Path::toString)
+                    .sorted()
+                    .collect(Collectors.toList());
+            if(matches.isEmpty()) LogPrint.printNote("No project file matching "+pattern);
+            projectFiles.addAll(matches);
+        } catch (IOException e){
+            LogPrint.printNoteError("Error while listing project files matching "+pattern);
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    private List<String> Run(){
+        StageScheduler scheduler = new StageScheduler(threads);
+        List<TopicMapping> projects = new ArrayList<>();
+        for(String projectFile: projectFiles){
+            TopicMapping project = new TopicMapping(projectFile);
+            project.LoadProject();
+            projects.add(project);
+            scheduler.addStage(projectFile, project, project::RunProject);
+        }
+        // only loading the lemmatiser and topic model classes if a project needs them
+        if(projects.stream().anyMatch(p -> p.getProjectManager().runLemmatise)){
+            StanfordLemmatizer.EnableSharing();
+        }
+        if(projects.stream().anyMatch(p -> p.getProjectManager().runModel || p.getProjectManager().runDocumentInfer)){
+            TopicModel.EnableSharing();
+        }
+        List<String> projectTimes = scheduler.run();
+        List<String> times = new ArrayList<>();
+        for(int i = 0; i < projects.size(); i++){
+            times.add(projectTimes.get(i));
+            for(String t: projects.get(i).getTimes()){
+                times.add("  "+t);
+            }
+        }
+        return times;
+    }
+}
@@ -0,0 +1,67 @@
+import P3_TopicModelling.InferenceServer;
+import PY_Helper.LogPrint;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Entry point running the resident inference service ({@link InferenceServer}), e.g.:
+ * <br>{@code java TopicMappingServer --port 8642 --iterations 100 --batch 256 main=data/mainModel.ser sub=data/subModel.ser}
+ * <br>
+ * Models are given as name=file pairs, or as files (named after the file name, without extension).
+ * Port defaults to 8642, iterations to 100 and the maximum batch size to 256 documents.
+ */
+public class TopicMappingServer {
+
+    private int port = 8642;
+    private int iterations = 100;
+    private int maxBatch = 256;
+    private Map<String, String> models = new LinkedHashMap<>();
+
+    public static void main(String[] args) {
+        LogPrint.printModuleStart("Inference Server");
+
+        TopicMappingServer startClass = new TopicMappingServer();
+        startClass.CheckArgs(args);
+
+        InferenceServer server = new InferenceServer(startClass.port, startClass.iterations, startClass.maxBatch);
+        for(Map.Entry<String, String> model: startClass.models.entrySet()){
+            server.LoadModel(model.getKey(), model.getValue());
+        }
+        server.Start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.Stop();
+            LogPrint.printModuleEnd("Inference Server");
+        }));
+    }
+
+    private void CheckArgs(String[] args){
+        for(int i = 0; i < args.length; i++){
+            if(args[i].equals("--port") && i+1 < args.length){
+                port = Integer.parseInt(args[++i]);
+            } else if(args[i].equals("--iterations") && i+1 < args.length){
+                iterations = Integer.parseInt(args[++i]);
+            } else if(args[i].equals("--batch") && i+1 < args.length){
+                maxBatch = Integer.parseInt(args[++i]);
+            } else if(args[i].contains("=")){
+                models.put(args[i].substring(0, args[i].indexOf('=')), args[i].substring(args[i].indexOf('=')+1));
+            } else {
+                String name = new File(args[i]).getName();
+                models.put(name.contains(".") ? name.substring(0, name.lastIndexOf('.')) : name, args[i]);
+            }
+        }
+        if(models.isEmpty()){
+            LogPrint.printNoteError("No serialised model given");
+            System.exit(1);
+        }
+        if(iterations < 1){
+            LogPrint.printNote("Inference server: iterations must be greater than 0, parameter was set to "+iterations+", will be set to default: 100");
+            iterations = 100;
+        }
+        if(maxBatch < 1){
+            LogPrint.printNote("Inference server: batch must be greater than 0, parameter was set to "+maxBatch+", will be set to default: 256");
+            maxBatch = 256;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+#!/usr/bin/env bash
+#
+# Launcher for the Topic Mapping Pipeline.
+#
+#   ./topicmapping.sh project.json [--resume]     run a project (TopicMapping)
+#   ./topicmapping.sh batch [args...]             run several projects (TopicMappingBatch)
+#   ./topicmapping.sh server [args...]            run the inference server (TopicMappingServer)
+#   ./topicmapping.sh jar                         package the compiled classes into build/Topic_Mapping_Pipeline.jar
+#
+# Options, given before the arguments above:
+#   --cds-dump    run normally, then save the classes loaded into a class-data sharing archive (needs the jar:
+#                 class-data sharing does not work with a directory of classes on the class path)
+#   --no-cds      do not use the class-data sharing archive, even if it exists
+#   --quick       tune the JVM for short interactive runs (e.g. only clustering and mapping modules)
+#
+# Environment:
+#   TM_JAR        application jar, defaults to build/Topic_Mapping_Pipeline.jar if it exists,
+#                 otherwise the compiled classes in out/production/Topic_Mapping_Pipeline with lib/*.jar
+#   TM_CDS        class-data sharing archive, defaults to <jar or classes directory>.jsa
+#   JAVA          java executable, defaults to java on the PATH
+#   JAVA_OPTS     additional JVM options, e.g. -Xmx32g
+
+set -e
+
+ROOT="$(cd "$(dirname "$0")" && pwd)"
+JAVA="${JAVA:-java}"
+
+CDS_DUMP=0
+CDS_USE=1
+QUICK=0
+while [ $# -gt 0 ]; do
+    case "$1" in
+        --cds-dump) CDS_DUMP=1; shift ;;
+        --no-cds) CDS_USE=0; shift ;;
+        --quick) QUICK=1; shift ;;
+        *) break ;;
+    esac
+done
+
+# The jar holds the compiled classes, and refers to lib/*.jar (json-simple and fastcsv first, jars further down are
+# only opened if a module needs them), so the class path is a single jar as needed by class-data sharing.
+if [ "$1" = jar ]; then
+    CLASSES="$ROOT/out/production/Topic_Mapping_Pipeline"
+    if [ ! -d "$CLASSES" ]; then
+        echo "No compiled classes in $CLASSES, build the project first" >&2
+        exit 1
+    fi
+    JAR_CLASSPATH="../lib/json-simple-1.1.1.jar ../lib/fastcsv-1.0.2.jar"
+    for jar in "$ROOT"/lib/*.jar; do
+        case "$jar" in
+            */json-simple-1.1.1.jar|*/fastcsv-1.0.2.jar) ;;
+            *) JAR_CLASSPATH="$JAR_CLASSPATH ../lib/$(basename "$jar")" ;;
+        esac
+    done
+    mkdir -p "$ROOT/build"
+    MANIFEST="$(mktemp)"
+    trap 'rm -f "$MANIFEST"' EXIT
+    # manifest lines are limited to 72 bytes, continued on lines starting with a space
+    echo "Class-Path: $JAR_CLASSPATH" | fold -w 70 | sed '2,$s/^/ /' > "$MANIFEST"
+    "${JAR:-jar}" --create --file "$ROOT/build/Topic_Mapping_Pipeline.jar" --manifest "$MANIFEST" -C "$CLASSES" .
+    echo "Built $ROOT/build/Topic_Mapping_Pipeline.jar"
+    exit 0
+fi
+
+MAIN=TopicMapping
+case "$1" in
+    batch) MAIN=TopicMappingBatch; shift ;;
+    server) MAIN=TopicMappingServer; shift ;;
+esac
+
+# The class path must be identical when dumping and using the archive, so it is always built the same way.
+if [ -z "$TM_JAR" ] && [ -f "$ROOT/build/Topic_Mapping_Pipeline.jar" ]; then
+    TM_JAR="$ROOT/build/Topic_Mapping_Pipeline.jar"
+fi
+if [ -n "$TM_JAR" ]; then
+    CLASSPATH="$TM_JAR"
+    APP="$TM_JAR"
+else
+    APP="$ROOT/out/production/Topic_Mapping_Pipeline"
+    # application classes and json-simple first: jars further down are only opened if a module needs them
+    CLASSPATH="$APP:$ROOT/lib/json-simple-1.1.1.jar:$ROOT/lib/fastcsv-1.0.2.jar"
+    for jar in "$ROOT"/lib/*.jar; do
+        case "$jar" in
+            */json-simple-1.1.1.jar|*/fastcsv-1.0.2.jar) ;;
+            *) CLASSPATH="$CLASSPATH:$jar" ;;
+        esac
+    done
+fi
+TM_CDS="${TM_CDS:-${APP%.jar}.jsa}"
+
+OPTS=()
+if [ "$QUICK" = 1 ]; then
+    # the C1 compiler and serial collector start faster, but slow down long modelling runs
+    OPTS+=(-XX:TieredStopAtLevel=1 -XX:+UseSerialGC)
+fi
+
+if [ -z "$TM_JAR" ]; then
+    if [ "$CDS_DUMP" = 1 ]; then
+        echo "--cds-dump needs the application jar: class-data sharing cannot use the directory $APP," >&2
+        echo "package it first with: $0 jar" >&2
+        exit 1
+    fi
+    # without a jar, no archive can match the class path
+    CDS_USE=0
+fi
+
+JAVA_VERSION="$("$JAVA" -version 2>&1 | sed -n 's/.*version "\([0-9]*\).*/\1/p' | head -n 1)"
+if [ "$CDS_DUMP" = 1 ]; then
+    if [ "${JAVA_VERSION:-0}" -ge 13 ]; then
+        # dynamic archive of the classes loaded during this run
+        OPTS+=(-XX:ArchiveClassesAtExit="$TM_CDS")
+    else
+        # Java 11/12: record the classes loaded, then dump a static archive once the run completes
+        CLASS_LIST="${TM_CDS%.jsa}.classlist"
+        "$JAVA" "${OPTS[@]}" $JAVA_OPTS -XX:DumpLoadedClassList="$CLASS_LIST" -cp "$CLASSPATH" $MAIN "$@"
+        exec "$JAVA" -Xshare:dump -XX:SharedClassListFile="$CLASS_LIST" -XX:SharedArchiveFile="$TM_CDS" -cp "$CLASSPATH"
+    fi
+elif [ "$CDS_USE" = 1 ] && [ -f "$TM_CDS" ]; then
+    STALE=""
+    for file in "$APP" "$ROOT"/lib/*.jar; do
+        if [ "$file" -nt "$TM_CDS" ]; then STALE="$file"; break; fi
+    done
+    if [ -n "$STALE" ]; then
+        echo "Class-data sharing archive $TM_CDS is older than $STALE, ignoring it (rebuild with --cds-dump)" >&2
+    else
+        # -Xshare:auto falls back to normal class loading if the archive does not match this JVM
+        OPTS+=(-XX:SharedArchiveFile="$TM_CDS" -Xshare:auto)
+    fi
+fi
+
+exec "$JAVA" "${OPTS[@]}" $JAVA_OPTS -cp "$CLASSPATH" $MAIN "$@"